@@ -0,0 +1,89 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to start a factory: classpath discovery, client creation and the creation of the
+ * indices, templates and pipelines found in {@code /bench}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BootstrapBenchmark {
+
+    /**
+     * Time the stub waits before answering, to mimic the network and the cluster.
+     */
+    @Param({"0", "5"})
+    public int latencyMillis;
+
+    private ElasticsearchStub stub;
+
+    @Setup
+    public void startStub() throws IOException {
+        stub = new ElasticsearchStub();
+        stub.recordRequests(false);
+        stub.storeDocuments(false);
+        stub.latency(Duration.ofMillis(latencyMillis));
+    }
+
+    @TearDown
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Benchmark
+    public Object bootstrap() throws Exception {
+        // Starts from an empty cluster each time
+        stub.reset();
+        ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+        factory.setEsNodes(List.of(stub.host()));
+        factory.setUsername("elastic");
+        factory.setPassword("changeme");
+        factory.setClasspathRoot("/bench");
+        factory.afterPropertiesSet();
+        Object client = factory.getObject();
+        factory.destroy();
+        return client;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import fr.pilato.elasticsearch.tools.util.SettingsFinder;
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.FactoryDiscovery;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the bootstrap scales with the number of definitions found in the classpath, using
+ * the roots generated by {@link SyntheticClasspath}. Each root only has one kind of
+ * definition, so {@code bootstrap} gives the time of one init phase, and {@code discovery}
+ * the time to find the definitions only, with the discovery code the factory runs when
+ * autoscan is on (see {@link FactoryDiscovery}).
+ * <p>
+ * Run with {@code -prof gc} to get the allocations per bootstrap. The {@code requests} sent to
+ * the stub and the {@code bootstraps} run during each iteration are reported next to the time,
+ * their ratio giving the number of requests per bootstrap.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BootstrapScalabilityBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int definitions;
+
+    @Param({"indices", "index_templates", "pipelines"})
+    public SyntheticClasspath.Kind kind;
+
+    /**
+     * Time the stub waits before answering each request.
+     */
+    @Param({"0", "1"})
+    public int latencyMillis;
+
+    /**
+     * Counters reported by JMH with the results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long requests;
+        public long bootstraps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requests = 0;
+            bootstraps = 0;
+        }
+    }
+
+    private ElasticsearchStub stub;
+    private String classpathRoot;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        stub = new ElasticsearchStub();
+        stub.recordRequests(false);
+        stub.storeDocuments(false);
+        stub.latency(Duration.ofMillis(latencyMillis));
+        classpathRoot = SyntheticClasspath.root(kind, definitions);
+        List<String> found = discovery();
+        if (found.size() != definitions) {
+            throw new IllegalStateException("Expected " + definitions + " definitions in " + classpathRoot
+                    + ". Did the build generate the synthetic classpath?");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public List<String> discovery() {
+        return switch (kind) {
+            case indices -> FactoryDiscovery.indices(classpathRoot);
+            case index_templates -> FactoryDiscovery.resources(classpathRoot, SettingsFinder.Defaults.IndexTemplatesDir);
+            case pipelines -> FactoryDiscovery.resources(classpathRoot, SettingsFinder.Defaults.PipelinesDir);
+        };
+    }
+
+    @Benchmark
+    public Object bootstrap(Counters counters) throws Exception {
+        // Starts from an empty cluster each time
+        stub.reset();
+        long requestsAtStart = stub.requestCount();
+        ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+        factory.setEsNodes(List.of(stub.host()));
+        factory.setUsername("elastic");
+        factory.setPassword("changeme");
+        factory.setClasspathRoot(classpathRoot);
+        factory.afterPropertiesSet();
+        Object client = factory.getObject();
+        factory.destroy();
+        counters.requests += stub.requestCount() - requestsAtStart;
+        counters.bootstraps++;
+        return client;
+    }
+}
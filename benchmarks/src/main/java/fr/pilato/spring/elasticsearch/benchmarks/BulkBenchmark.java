@@ -0,0 +1,88 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk requests sent by a client created by the factory. The score is in bulk requests
+ * per second: multiply by {@code batchSize} to get the documents per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int batchSize;
+
+    private ElasticsearchStub stub;
+    private ElasticsearchClientFactoryBean factory;
+    private ElasticsearchClient client;
+    private List<Payloads.Tweet> tweets;
+
+    @Setup
+    public void setup() throws Exception {
+        stub = new ElasticsearchStub();
+        stub.recordRequests(false);
+        stub.storeDocuments(false);
+        factory = new ElasticsearchClientFactoryBean();
+        factory.setEsNodes(List.of(stub.host()));
+        factory.setUsername("elastic");
+        factory.setPassword("changeme");
+        factory.setAutoscan(false);
+        factory.afterPropertiesSet();
+        client = factory.getObject();
+        tweets = Payloads.tweets(batchSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.destroy();
+        stub.close();
+    }
+
+    @Benchmark
+    public BulkResponse bulk() throws IOException {
+        return client.bulk(Payloads.bulkRequest(tweets));
+    }
+}
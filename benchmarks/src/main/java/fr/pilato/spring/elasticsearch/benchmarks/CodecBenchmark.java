@@ -0,0 +1,143 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import fr.pilato.spring.elasticsearch.codec.CodecJsonpMapper;
+import fr.pilato.spring.elasticsearch.codec.DocumentCodec;
+import fr.pilato.spring.elasticsearch.codec.ElasticsearchDocument;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Documents read and written by Jackson databind or by the codecs generated for the classes
+ * annotated with {@link ElasticsearchDocument}. Both document classes have the same fields.
+ * The {@code first*} benchmarks use a new mapper each time, like an application starting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @ElasticsearchDocument
+    public record CodecTweet(String user, String message, String date, int retweets) {
+    }
+
+    /**
+     * Number of hits in the search response and of documents written.
+     */
+    @Param({"10", "1000"})
+    public int documents;
+
+    private List<DocumentCodec<?>> codecs;
+    private JacksonJsonpMapper jacksonMapper;
+    private CodecJsonpMapper codecMapper;
+    private List<Payloads.Tweet> tweets;
+    private List<CodecTweet> codecTweets;
+    private byte[] searchResponse;
+    private byte[] document;
+    private JsonpDeserializer<SearchResponse<Payloads.Tweet>> jacksonDeserializer;
+    private JsonpDeserializer<SearchResponse<CodecTweet>> codecDeserializer;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() {
+        codecs = DocumentCodec.load(CodecBenchmark.class.getClassLoader());
+        jacksonMapper = new JacksonJsonpMapper();
+        codecMapper = new CodecJsonpMapper(codecs);
+        tweets = Payloads.tweets(documents);
+        codecTweets = new ArrayList<>(tweets.size());
+        for (Payloads.Tweet tweet : tweets) {
+            codecTweets.add(new CodecTweet(tweet.user(), tweet.message(), tweet.date(), tweet.retweets()));
+        }
+        searchResponse = Payloads.searchResponse(tweets, jacksonMapper);
+        document = Payloads.serialize(tweets.get(0), jacksonMapper).getBytes(StandardCharsets.UTF_8);
+        jacksonDeserializer = SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(Payloads.Tweet.class));
+        codecDeserializer = SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(CodecTweet.class));
+    }
+
+    @Benchmark
+    public SearchResponse<Payloads.Tweet> readJackson() {
+        return read(searchResponse, jacksonDeserializer, jacksonMapper);
+    }
+
+    @Benchmark
+    public SearchResponse<CodecTweet> readCodec() {
+        return read(searchResponse, codecDeserializer, codecMapper);
+    }
+
+    @Benchmark
+    public int writeJackson() throws IOException {
+        return write(tweets, jacksonMapper);
+    }
+
+    @Benchmark
+    public int writeCodec() throws IOException {
+        return write(codecTweets, codecMapper);
+    }
+
+    @Benchmark
+    public Payloads.Tweet firstReadJackson() {
+        return read(document, JsonpDeserializer.of(Payloads.Tweet.class), new JacksonJsonpMapper());
+    }
+
+    @Benchmark
+    public CodecTweet firstReadCodec() {
+        return read(document, JsonpDeserializer.of(CodecTweet.class), new CodecJsonpMapper(codecs));
+    }
+
+    private int write(List<?> values, JsonpMapper mapper) throws IOException {
+        out.reset();
+        for (Object value : values) {
+            Payloads.write(value, mapper, out);
+        }
+        return out.size();
+    }
+
+    private static <T> T read(byte[] json, JsonpDeserializer<T> deserializer, JsonpMapper mapper) {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(json))) {
+            return deserializer.deserialize(parser, mapper);
+        }
+    }
+}
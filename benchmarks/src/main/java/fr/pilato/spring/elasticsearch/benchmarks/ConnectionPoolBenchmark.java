@@ -0,0 +1,98 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads sharing one client, with more or less connections in the pool. When the
+ * pool is smaller than the number of threads, the requests wait for a connection.
+ * Change the number of threads with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+
+    /**
+     * Connections per node. The low level client defaults to 10.
+     */
+    @Param({"1", "4", "10", "32"})
+    public int maxConnections;
+
+    @Param({"1"})
+    public int latencyMillis;
+
+    private ElasticsearchStub stub;
+    private RestClient lowLevelClient;
+    private ElasticsearchClient client;
+
+    @Setup
+    public void setup() throws IOException {
+        stub = new ElasticsearchStub();
+        stub.recordRequests(false);
+        stub.storeDocuments(false);
+        stub.latency(Duration.ofMillis(latencyMillis));
+        lowLevelClient = RestClient.builder(stub.host())
+                .setHttpClientConfigCallback(hcb -> hcb
+                        .setMaxConnPerRoute(maxConnections)
+                        .setMaxConnTotal(maxConnections))
+                .build();
+        client = new ElasticsearchClient(new RestClientTransport(lowLevelClient, new JacksonJsonpMapper()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        lowLevelClient.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public SearchResponse<Map> search() throws IOException {
+        return client.search(sr -> sr.index("twitter"), Map.class);
+    }
+}
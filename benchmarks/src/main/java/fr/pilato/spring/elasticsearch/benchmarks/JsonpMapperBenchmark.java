@@ -0,0 +1,112 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of typical search and bulk payloads with the
+ * {@link JacksonJsonpMapper} used by the factory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonpMapperBenchmark {
+
+    /**
+     * Number of hits in the search response and of operations in the bulk request.
+     */
+    @Param({"10", "100", "1000"})
+    public int documents;
+
+    private JacksonJsonpMapper mapper;
+    private SearchRequest searchRequest;
+    private BulkRequest bulkRequest;
+    private byte[] searchResponse;
+    private byte[] bulkResponse;
+    private JsonpDeserializer<SearchResponse<Payloads.Tweet>> searchDeserializer;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() {
+        mapper = new JacksonJsonpMapper();
+        List<Payloads.Tweet> tweets = Payloads.tweets(documents);
+        searchRequest = Payloads.searchRequest();
+        bulkRequest = Payloads.bulkRequest(tweets);
+        searchResponse = Payloads.searchResponse(tweets, mapper);
+        bulkResponse = Payloads.bulkResponse(documents);
+        searchDeserializer = SearchResponse.createSearchResponseDeserializer(
+                JsonpDeserializer.of(Payloads.Tweet.class));
+    }
+
+    @Benchmark
+    public int serializeSearchRequest() throws IOException {
+        out.reset();
+        Payloads.write(searchRequest, mapper, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int serializeBulkRequest() throws IOException {
+        out.reset();
+        Payloads.write(bulkRequest, mapper, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public SearchResponse<Payloads.Tweet> deserializeSearchResponse() {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(searchResponse))) {
+            return searchDeserializer.deserialize(parser, mapper);
+        }
+    }
+
+    @Benchmark
+    public BulkResponse deserializeBulkResponse() {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(bulkResponse))) {
+            return BulkResponse._DESERIALIZER.deserialize(parser, mapper);
+        }
+    }
+}
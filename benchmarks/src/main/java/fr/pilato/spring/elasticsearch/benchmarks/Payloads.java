@@ -0,0 +1,151 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.NdJsonpSerializable;
+import jakarta.json.stream.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Typical documents, requests and responses used by the benchmarks.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    public record Tweet(String user, String message, String date, int retweets) {
+    }
+
+    static List<Tweet> tweets(int count) {
+        List<Tweet> tweets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tweets.add(new Tweet("user" + (i % 100),
+                    "Trying out Elasticsearch, so far so good? This is the tweet number " + i,
+                    "2023-11-" + String.format("%02d", 1 + i % 28) + "T10:00:00Z",
+                    i % 1000));
+        }
+        return tweets;
+    }
+
+    static SearchRequest searchRequest() {
+        return SearchRequest.of(sr -> sr
+                .index("twitter")
+                .size(20)
+                .query(q -> q.bool(b -> b
+                        .must(m -> m.match(ma -> ma.field("message").query("elasticsearch")))
+                        .filter(f -> f.term(t -> t.field("user").value("user1")))
+                        .filter(f -> f.range(r -> r.field("date").gte(JsonData.of("now-1y"))))))
+                .aggregations("users", a -> a.terms(t -> t.field("user").size(10)))
+                .sort(s -> s.field(fs -> fs.field("date"))));
+    }
+
+    static BulkRequest bulkRequest(List<Tweet> tweets) {
+        List<BulkOperation> operations = new ArrayList<>(tweets.size());
+        for (int i = 0; i < tweets.size(); i++) {
+            Tweet tweet = tweets.get(i);
+            String id = Integer.toString(i);
+            operations.add(BulkOperation.of(o -> o.index(io -> io.index("twitter").id(id).document(tweet))));
+        }
+        return BulkRequest.of(b -> b.operations(operations));
+    }
+
+    /**
+     * A search response with the given number of hits, as sent by Elasticsearch.
+     */
+    static byte[] searchResponse(List<Tweet> tweets, JsonpMapper mapper) {
+        StringBuilder json = new StringBuilder("""
+                {"took":5,"timed_out":false,"_shards":{"total":1,"successful":1,"skipped":0,"failed":0},\
+                "hits":{"total":{"value":""").append(tweets.size()).append("""
+                ,"relation":"eq"},"max_score":1.0,"hits":[""");
+        for (int i = 0; i < tweets.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"_index\":\"twitter\",\"_id\":\"").append(i).append("\",\"_score\":1.0,\"_source\":");
+            json.append(serialize(tweets.get(i), mapper)).append('}');
+        }
+        json.append("""
+                ]},"aggregations":{"sterms#users":{"doc_count_error_upper_bound":0,"sum_other_doc_count":0,\
+                "buckets":[{"key":"user1","doc_count":10},{"key":"user2","doc_count":5}]}}}""");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A bulk response acknowledging the given number of operations.
+     */
+    static byte[] bulkResponse(int count) {
+        StringBuilder json = new StringBuilder("{\"took\":12,\"errors\":false,\"items\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":{\"_index\":\"twitter\",\"_id\":\"").append(i)
+                    .append("\",\"_version\":1,\"result\":\"created\",")
+                    .append("\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+                    .append("\"_seq_no\":").append(i).append(",\"_primary_term\":1,\"status\":201}}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String serialize(Object value, JsonpMapper mapper) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+            mapper.serialize(value, generator);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the request like the transport does: one line per value for the ndjson requests.
+     */
+    static void write(Object request, JsonpMapper mapper, OutputStream out) throws IOException {
+        if (request instanceof NdJsonpSerializable ndJson) {
+            Iterator<?> values = ndJson._serializables();
+            while (values.hasNext()) {
+                Object value = values.next();
+                if (value instanceof NdJsonpSerializable && value != request) {
+                    write(value, mapper, out);
+                } else {
+                    try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+                        mapper.serialize(value, generator);
+                    }
+                    out.write('\n');
+                }
+            }
+        } else {
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+                mapper.serialize(request, generator);
+            }
+        }
+    }
+}
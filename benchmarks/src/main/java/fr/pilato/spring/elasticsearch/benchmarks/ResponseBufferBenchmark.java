@@ -0,0 +1,157 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.request.RequestTemplate;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import fr.pilato.spring.elasticsearch.transport.BufferPool;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Responses read in a new array for each response, like the low level client does, or in
+ * arrays reused from a {@link BufferPool}. Run it with {@code -prof gc} to compare the
+ * allocation rate ({@code gc.alloc.rate.norm}) and not only the throughput. The arrays
+ * {@code reused}, {@code allocated} and {@code dropped} by the pool during each iteration
+ * are reported with the results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ResponseBufferBenchmark {
+
+    @Param({"heap", "pooled"})
+    public String buffers;
+
+    /**
+     * Hits per response.
+     */
+    @Param({"10", "1000"})
+    public int hits;
+
+    /**
+     * Pool counters reported by JMH with the results. The pool is shared by the threads, so the
+     * first thread ending an iteration takes what the pool counted since the previous one.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PoolCounters {
+        public long reused;
+        public long allocated;
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            reused = 0;
+            allocated = 0;
+            dropped = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect(ResponseBufferBenchmark benchmark) {
+            BufferPool.Stats stats = benchmark.drainStats();
+            reused = stats.reused();
+            allocated = stats.allocated();
+            dropped = stats.dropped();
+        }
+    }
+
+    private ElasticsearchStub stub;
+    private ElasticsearchClientFactoryBean factory;
+    private ElasticsearchClient client;
+    private BufferPool pool;
+    private RequestTemplate template;
+    private BufferPool.Stats lastStats = new BufferPool.Stats(0, 0, 0, 0);
+
+    @Setup
+    public void setup() throws Exception {
+        stub = new ElasticsearchStub();
+        stub.recordRequests(false);
+        factory = new ElasticsearchClientFactoryBean();
+        factory.setEsNodes(List.of(stub.host()));
+        factory.setUsername("elastic");
+        factory.setPassword("changeme");
+        factory.setAutoscan(false);
+        if (buffers.equals("pooled")) {
+            pool = new BufferPool.Builder().build();
+            factory.setBufferPool(pool);
+        }
+        factory.afterPropertiesSet();
+        client = factory.getObject();
+        client.bulk(Payloads.bulkRequest(Payloads.tweets(hits)));
+        template = RequestTemplate.of("POST", "/twitter/_search", "{\"size\":{{size}}}");
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.destroy();
+        stub.close();
+    }
+
+    /**
+     * @return what the pool counted since the previous call
+     */
+    synchronized BufferPool.Stats drainStats() {
+        if (pool == null) {
+            return lastStats;
+        }
+        BufferPool.Stats stats = pool.stats();
+        BufferPool.Stats drained = new BufferPool.Stats(stats.reused() - lastStats.reused(),
+                stats.allocated() - lastStats.allocated(), stats.released() - lastStats.released(),
+                stats.dropped() - lastStats.dropped());
+        lastStats = stats;
+        return drained;
+    }
+
+    @Benchmark
+    public SearchResponse<Map> search(PoolCounters counters) throws IOException {
+        return client.search(sr -> sr.index("twitter").size(hits), Map.class);
+    }
+
+    @Benchmark
+    public SearchResponse<Map> template(PoolCounters counters) throws IOException {
+        return template.search(client, Map.of("size", hits), Map.class);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates classpath roots with many definitions, to see how the bootstrap scales.
+ * It runs during the build and writes in {@code target/classes/synthetic}:
+ * <ul>
+ *   <li>{@code indices-N}: N indices with their {@code _settings.json},</li>
+ *   <li>{@code index_templates-N}: N index templates,</li>
+ *   <li>{@code pipelines-N}: N ingest pipelines.</li>
+ * </ul>
+ * So each root exercises one phase of the bootstrap only.
+ */
+public final class SyntheticClasspath {
+
+    static final String ROOT = "/synthetic";
+
+    enum Kind {
+        indices, index_templates, pipelines
+    }
+
+    private SyntheticClasspath() {
+    }
+
+    static String root(Kind kind, int definitions) {
+        return ROOT + "/" + kind + "-" + definitions;
+    }
+
+    /**
+     * @param args the output directory then the number of definitions, like {@code target/classes/synthetic 10 100}
+     */
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            int definitions = Integer.parseInt(args[i]);
+            for (Kind kind : Kind.values()) {
+                generate(output.resolve(kind + "-" + definitions), kind, definitions);
+            }
+        }
+    }
+
+    static void generate(Path root, Kind kind, int definitions) throws IOException {
+        for (int i = 0; i < definitions; i++) {
+            String name = String.format("synthetic-%05d", i);
+            switch (kind) {
+                case indices -> write(root.resolve(name).resolve("_settings.json"), """
+                        {
+                          "settings": { "number_of_shards": 1, "number_of_replicas": 0 },
+                          "mappings": {
+                            "properties": {
+                              "name": { "type": "text" },
+                              "tag": { "type": "keyword" },
+                              "date": { "type": "date" },
+                              "count": { "type": "long" }
+                            }
+                          }
+                        }
+                        """);
+                case index_templates -> write(root.resolve("_index_templates").resolve(name + ".json"), """
+                        {
+                          "index_patterns": ["%s-*"],
+                          "template": {
+                            "settings": { "number_of_shards": 1 },
+                            "mappings": { "properties": { "date": { "type": "date" } } }
+                          },
+                          "priority": %d
+                        }
+                        """.formatted(name, i));
+                case pipelines -> write(root.resolve("_pipelines").resolve(name + ".json"), """
+                        {
+                          "description": "%s",
+                          "processors": [
+                            { "set": { "field": "pipeline", "value": "%s" } },
+                            { "lowercase": { "field": "tag", "ignore_missing": true } }
+                          ]
+                        }
+                        """.formatted(name, name));
+            }
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
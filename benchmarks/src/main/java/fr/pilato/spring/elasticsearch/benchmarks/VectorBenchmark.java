@@ -0,0 +1,170 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import fr.pilato.spring.elasticsearch.request.RequestTemplate;
+import fr.pilato.spring.elasticsearch.vector.VectorModule;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embeddings written and read as {@code List<Float>} (boxed) or as {@code float[]} and
+ * {@code byte[]}, for the documents and for the kNN query vector. Run it with {@code -prof gc}
+ * to compare the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class VectorBenchmark {
+
+    public record BoxedDocument(String title, List<Float> embedding) {
+    }
+
+    public record FloatDocument(String title, float[] embedding) {
+    }
+
+    public record ByteDocument(String title, byte[] embedding) {
+    }
+
+    @Param({"128", "768"})
+    public int dimensions;
+
+    private JacksonJsonpMapper mapper;
+    private JacksonJsonpMapper vectorMapper;
+    private BoxedDocument boxedDocument;
+    private FloatDocument floatDocument;
+    private ByteDocument byteDocument;
+    private byte[] floatJson;
+    private byte[] byteJson;
+    private SearchRequest knnRequest;
+    private RequestTemplate knnTemplate;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() {
+        mapper = new JacksonJsonpMapper();
+        vectorMapper = new JacksonJsonpMapper();
+        vectorMapper.objectMapper().registerModule(new VectorModule());
+
+        Random random = new Random(0);
+        float[] floats = new float[dimensions];
+        byte[] bytes = new byte[dimensions];
+        List<Float> boxed = new ArrayList<>(dimensions);
+        for (int i = 0; i < dimensions; i++) {
+            floats[i] = random.nextFloat() * 2 - 1;
+            bytes[i] = (byte) (random.nextInt(256) - 128);
+            boxed.add(floats[i]);
+        }
+        boxedDocument = new BoxedDocument("A document", boxed);
+        floatDocument = new FloatDocument("A document", floats);
+        byteDocument = new ByteDocument("A document", bytes);
+        floatJson = Payloads.serialize(floatDocument, mapper).getBytes(StandardCharsets.UTF_8);
+        byteJson = Payloads.serialize(byteDocument, vectorMapper).getBytes(StandardCharsets.UTF_8);
+
+        knnRequest = SearchRequest.of(s -> s
+                .index("products")
+                .knn(k -> k.field("embedding").queryVector(boxed).k(10).numCandidates(100)));
+        knnTemplate = RequestTemplate.of("POST", "/products/_search",
+                "{\"knn\":{\"field\":\"embedding\",\"query_vector\":{{vector}},\"k\":10,\"num_candidates\":100}}");
+    }
+
+    @Benchmark
+    public int writeBoxedDocument() throws IOException {
+        return write(boxedDocument, mapper);
+    }
+
+    @Benchmark
+    public int writeFloatDocument() throws IOException {
+        return write(floatDocument, mapper);
+    }
+
+    @Benchmark
+    public int writeByteDocument() throws IOException {
+        return write(byteDocument, vectorMapper);
+    }
+
+    @Benchmark
+    public BoxedDocument readBoxedDocument() {
+        return read(floatJson, BoxedDocument.class, mapper);
+    }
+
+    @Benchmark
+    public FloatDocument readFloatDocument() {
+        return read(floatJson, FloatDocument.class, mapper);
+    }
+
+    @Benchmark
+    public ByteDocument readByteDocument() {
+        return read(byteJson, ByteDocument.class, vectorMapper);
+    }
+
+    @Benchmark
+    public int writeBoxedKnnQuery() throws IOException {
+        return write(knnRequest, mapper);
+    }
+
+    @Benchmark
+    public int writeFloatKnnQuery() {
+        return knnTemplate.render(Map.of("vector", floatDocument.embedding()), mapper).length;
+    }
+
+    @Benchmark
+    public int writeByteKnnQuery() {
+        return knnTemplate.render(Map.of("vector", byteDocument.embedding()), mapper).length;
+    }
+
+    private int write(Object value, JsonpMapper jsonpMapper) throws IOException {
+        out.reset();
+        Payloads.write(value, jsonpMapper, out);
+        return out.size();
+    }
+
+    private static <T> T read(byte[] json, Class<T> type, JsonpMapper jsonpMapper) {
+        try (JsonParser parser = jsonpMapper.jsonProvider().createParser(new ByteArrayInputStream(json))) {
+            return jsonpMapper.deserialize(parser, type);
+        }
+    }
+}
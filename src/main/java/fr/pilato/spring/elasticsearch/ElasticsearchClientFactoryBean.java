@@ -20,17 +20,38 @@
 package fr.pilato.spring.elasticsearch;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.HealthStatus;
+import co.elastic.clients.elasticsearch.indices.get_index_template.IndexTemplateItem;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import fr.pilato.elasticsearch.tools.util.ResourceList;
 import fr.pilato.elasticsearch.tools.util.SettingsFinder;
+import fr.pilato.elasticsearch.tools.util.SettingsReader;
+import fr.pilato.spring.elasticsearch.admin.BulkLoadSession;
+import fr.pilato.spring.elasticsearch.admin.IndexMigrator;
+import fr.pilato.spring.elasticsearch.cache.QueryCache;
+import fr.pilato.spring.elasticsearch.codec.CodecJsonpMapper;
+import fr.pilato.spring.elasticsearch.codec.DocumentCodec;
+import fr.pilato.spring.elasticsearch.metrics.TransportMetrics;
+import fr.pilato.spring.elasticsearch.slowlog.SlowRequestLog;
+import fr.pilato.spring.elasticsearch.tracing.TransportTracing;
+import fr.pilato.spring.elasticsearch.transport.BufferPool;
+import fr.pilato.spring.elasticsearch.transport.ClasspathResourceEntity;
+import fr.pilato.spring.elasticsearch.transport.PooledResponseConsumerFactory;
+import fr.pilato.spring.elasticsearch.transport.SharedRestClient;
+import fr.pilato.spring.elasticsearch.transport.WriteNotifyingTransport;
+import fr.pilato.spring.elasticsearch.vector.VectorModule;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.slf4j.Logger;
@@ -39,6 +60,7 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
@@ -49,14 +71,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchAliasUpdater.manageAliases;
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchAliasUpdater.manageAliasesWithJsonInElasticsearch;
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchComponentTemplateUpdater.createComponentTemplate;
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexLifecycleUpdater.createIndexLifecycle;
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexTemplateUpdater.createIndexTemplate;
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.createIndex;
 import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchIndexUpdater.updateSettings;
-import static fr.pilato.elasticsearch.tools.updaters.ElasticsearchPipelineUpdater.createPipeline;
 import static fr.pilato.elasticsearch.tools.util.ResourceList.findIndexNames;
 
 /**
@@ -93,10 +108,13 @@ import static fr.pilato.elasticsearch.tools.util.ResourceList.findIndexNames;
  * <ul>
  *   <li>component templates: {@code /es/_component_templates/*.json}
  *   <li>index templates: {@code /es/_index_templates/*.json}
+ *   <li>data streams: {@code /es/_data_streams/*.json}
  *   <li>indices: {@code /es/INDEXNAME/_settings.json}
  *   <li>aliases: {@code /es/_aliases.json}
  *   <li>index lifecycles policies: {@code /es/_index_lifecycles/*.json}
  *   <li>ingest pipelines: {@code /es/_pipelines/*.json}
+ *   <li>stored scripts: {@code /es/_scripts/*.json}
+ *   <li>search templates: {@code /es/_search_templates/*.json}
  * </ul>
  *
  * <p>You can force the manual creation of the above components but this is
@@ -159,6 +177,16 @@ public class ElasticsearchClientFactoryBean
 
     private static final Logger logger = LoggerFactory.getLogger(ElasticsearchClientFactoryBean.class);
 
+    /**
+     * The response size limit of the low level client.
+     */
+    private static final int DEFAULT_RESPONSE_BUFFER_LIMIT = 100 * 1024 * 1024;
+
+    static final String SCRIPTS_DIR = "_scripts";
+    static final String SEARCH_TEMPLATES_DIR = "_search_templates";
+    static final String DATA_STREAMS_DIR = "_data_streams";
+    static final String INDEX_SETTINGS_FILE = "_settings";
+
     /**
      * Define the username:password to use.
      * @deprecated Now deprecated with username and password settings.
@@ -207,6 +235,28 @@ public class ElasticsearchClientFactoryBean
 
     private SSLContext sslContext;
 
+    private QueryCache queryCache;
+
+    private IndexMigrator indexMigrator;
+
+    private TransportMetrics transportMetrics;
+
+    private TransportTracing transportTracing;
+
+    private SlowRequestLog slowRequestLog;
+
+    private Integer responseBufferLimit;
+
+    private BufferPool bufferPool;
+
+    private boolean byteVectors;
+
+    private boolean documentCodecs = true;
+
+    private SharedRestClient sharedRestClient;
+
+    private final List<BulkLoadSession> bulkLoadSessions = new ArrayList<>();
+
     public RestClient getLowLevelClient() {
         return lowLevelClient;
     }
@@ -389,30 +439,222 @@ public class ElasticsearchClientFactoryBean
         this.sslContext = sslContext;
     }
 
+    /**
+     * Define a query cache which will be invalidated by the writes done with the client.
+     * Use {@link QueryCache#search} and {@link QueryCache#count} to read through the cache.
+     * @param queryCache    the query cache
+     * @see QueryCache
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Maximum size of a response. A larger response fails with a
+     * {@link org.apache.http.ContentTooLongException}. Defaults to 100mb, like the low level client.
+     * @param responseBufferLimit   the size in bytes
+     */
+    public void setResponseBufferLimit(int responseBufferLimit) {
+        Assert.isTrue(responseBufferLimit > 0, "responseBufferLimit must be positive.");
+        this.responseBufferLimit = responseBufferLimit;
+    }
+
+    /**
+     * Read the responses in arrays reused from a pool instead of a new array for each response.
+     * The request bodies written by {@link fr.pilato.spring.elasticsearch.request.RequestTemplate}
+     * use the same pool.
+     * @param bufferPool    the pool
+     * @see BufferPool
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Write the {@code byte[]} fields of the documents as arrays of numbers, as expected by the
+     * {@code dense_vector} fields of {@code byte} elements, instead of base64 strings.
+     * Defaults to false.
+     * @param byteVectors   true to write byte arrays as vectors
+     * @see VectorModule
+     */
+    public void setByteVectors(boolean byteVectors) {
+        this.byteVectors = byteVectors;
+    }
+
+    /**
+     * Use a low level client shared with other factories instead of starting one. The nodes,
+     * credentials and SSL context of this factory are then ignored, and the shared client is
+     * closed when the last factory using it is destroyed. The metrics, tracing and slow log
+     * options must then be set on the shared client.
+     * @param sharedRestClient  the shared client
+     * @see SharedRestClient
+     */
+    public void setSharedRestClient(SharedRestClient sharedRestClient) {
+        this.sharedRestClient = sharedRestClient;
+    }
+
+    /**
+     * Read and write the documents with the codecs generated for the classes annotated with
+     * {@link fr.pilato.spring.elasticsearch.codec.ElasticsearchDocument}. Defaults to true.
+     * @param documentCodecs    false to always use Jackson databind
+     * @see CodecJsonpMapper
+     */
+    public void setDocumentCodecs(boolean documentCodecs) {
+        this.documentCodecs = documentCodecs;
+    }
+
+    /**
+     * Publish Micrometer metrics for the requests sent to Elasticsearch and for the connection pool.
+     * Needs micrometer-core in the classpath.
+     * @param transportMetrics  the metrics options
+     * @see TransportMetrics
+     */
+    public void setTransportMetrics(TransportMetrics transportMetrics) {
+        this.transportMetrics = transportMetrics;
+    }
+
+    /**
+     * Create an OpenTelemetry span for every request sent to Elasticsearch and send the
+     * trace context to the cluster. Needs opentelemetry-api in the classpath.
+     * @param transportTracing  the tracing options
+     * @see TransportTracing
+     */
+    public void setTransportTracing(TransportTracing transportTracing) {
+        this.transportTracing = transportTracing;
+    }
+
+    /**
+     * Log the requests which take more than a given time, with the time spent by Elasticsearch
+     * and the time seen by the client.
+     * @param slowRequestLog  the slow log options
+     * @see SlowRequestLog
+     */
+    public void setSlowRequestLog(SlowRequestLog slowRequestLog) {
+        this.slowRequestLog = slowRequestLog;
+    }
+
+    /**
+     * Manage the indices as versioned indices behind aliases. When the mapping of an index
+     * can not be updated, a new version of the index is created, the documents are copied
+     * and the alias is moved to the new index. With {@link #setForceIndex(boolean)}, a new
+     * version is created instead of removing the index.
+     * @param indexMigrator the migration options
+     * @see IndexMigrator
+     */
+    public void setIndexMigrator(IndexMigrator indexMigrator) {
+        this.indexMigrator = indexMigrator;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
-        logger.info("Starting Elasticsearch Low Level client");
-        lowLevelClient = buildElasticsearchLowLevelClient();
+        TransportMetrics metrics = transportMetrics;
+        TransportTracing tracing = transportTracing;
+        SlowRequestLog slowLog = slowRequestLog;
+        if (sharedRestClient != null) {
+            // The HTTP interceptors are only installed when the low level client is built
+            Assert.state(metrics == null && tracing == null && slowLog == null,
+                    "The metrics, tracing and slow log options must be set on the shared client, not on the factory.");
+            metrics = sharedRestClient.transportMetrics();
+            tracing = sharedRestClient.transportTracing();
+            slowLog = sharedRestClient.slowRequestLog();
+            lowLevelClient = sharedRestClient.acquire();
+        } else {
+            logger.info("Starting Elasticsearch Low Level client");
+            lowLevelClient = buildElasticsearchLowLevelClient();
+        }
 
         logger.info("Starting Elasticsearch client");
         // Create the transport with a Jackson mapper
-        ElasticsearchTransport transport = new RestClientTransport(lowLevelClient, new JacksonJsonpMapper());
+        JacksonJsonpMapper mapper = buildMapper();
+        if (byteVectors) {
+            mapper.objectMapper().registerModule(new VectorModule());
+        }
+        ElasticsearchTransport transport = new RestClientTransport(lowLevelClient, mapper, buildTransportOptions());
+        // Let the caches know about the writes
+        WriteNotifyingTransport notifyingTransport = new WriteNotifyingTransport(transport);
+        if (queryCache != null) {
+            notifyingTransport.addListener(queryCache);
+        }
+        transport = notifyingTransport;
+        if (metrics != null) {
+            transport = metrics.instrument(transport);
+        }
+        if (slowLog != null) {
+            transport = slowLog.instrument(transport);
+        }
+        if (tracing != null) {
+            transport = tracing.instrument(transport);
+        }
         // And create the API client
         client = new ElasticsearchClient(transport);
+        if (queryCache != null) {
+            queryCache.attach(client);
+        }
 
         // Automagically initialize the cluster/indices
         initLifecycles();
+        initScripts();
         initPipelines();
         initTemplates();
+        initDataStreams();
         initSettings();
         initAliases();
     }
 
+    /**
+     * Start a bulk load session for some indices: their refresh interval and replicas
+     * are relaxed until the session is closed. If still open, the session is closed
+     * when the factory is destroyed.
+     * <pre>
+     * {@code
+     * try (BulkLoadSession session = factory.startBulkLoad("twitter")) {
+     *     // Send the bulk requests
+     * }
+     * }
+     * </pre>
+     * @param indices   the indices to load
+     * @return the session
+     * @see BulkLoadSession
+     */
+    public BulkLoadSession startBulkLoad(String... indices) throws IOException {
+        return startBulkLoad(new BulkLoadSession.Builder().indices(indices));
+    }
+
+    /**
+     * Start a bulk load session. If still open, the session is closed
+     * when the factory is destroyed.
+     * @param builder   the session definition
+     * @return the session
+     * @see BulkLoadSession
+     */
+    public synchronized BulkLoadSession startBulkLoad(BulkLoadSession.Builder builder) throws IOException {
+        Assert.state(client != null, "The factory must be initialized before starting a bulk load session.");
+        bulkLoadSessions.removeIf(BulkLoadSession::isClosed);
+        BulkLoadSession session = builder.start(client);
+        bulkLoadSessions.add(session);
+        return session;
+    }
+
     @Override
     public void destroy() {
+        synchronized (this) {
+            for (BulkLoadSession session : bulkLoadSessions) {
+                try {
+                    if (!session.isClosed()) {
+                        logger.info("Closing bulk load session for {}", session.indices());
+                        session.close();
+                    }
+                } catch (final Exception e) {
+                    logger.error("Error closing bulk load session for {}: ", session.indices(), e);
+                }
+            }
+            bulkLoadSessions.clear();
+        }
         try {
-            logger.info("Closing Elasticsearch Low Level client");
-            if (lowLevelClient != null) {
+            if (sharedRestClient != null) {
+                sharedRestClient.release(lowLevelClient);
+            } else if (lowLevelClient != null) {
+                logger.info("Closing Elasticsearch Low Level client");
                 lowLevelClient.close();
             }
         } catch (final Exception e) {
@@ -501,7 +743,13 @@ public class ElasticsearchClientFactoryBean
             // Let's initialize indexes and mappings if needed
             for (String index : indices) {
                 logger.debug("Initializing index {}", index);
-                createIndex(lowLevelClient, classpathRoot, index, forceIndex);
+                if (indexMigrator != null) {
+                    String settings = SettingsReader.readFileFromClasspath(classpathRoot + "/" + index + "/"
+                            + INDEX_SETTINGS_FILE + SettingsFinder.Defaults.JsonFileExtension);
+                    indexMigrator.migrate(client, index, settings, forceIndex);
+                } else {
+                    createIndex(index);
+                }
                 if (mergeSettings) {
                     updateSettings(lowLevelClient, classpathRoot, index);
                 }
@@ -512,6 +760,32 @@ public class ElasticsearchClientFactoryBean
         }
     }
 
+    /**
+     * Creates an index with its settings file if it does not exist yet, or if it must be recreated.
+     * The settings file is streamed from the classpath and never parsed.
+     */
+    private void createIndex(String index) throws IOException {
+        boolean exists = lowLevelClient.performRequest(new Request("HEAD", "/" + index))
+                .getStatusLine().getStatusCode() == 200;
+        if (exists && forceIndex) {
+            logger.debug("Index {} already exists. Force is set, so we remove it.", index);
+            lowLevelClient.performRequest(new Request("DELETE", "/" + index));
+            exists = false;
+        }
+        if (exists) {
+            logger.debug("Index {} already exists", index);
+            return;
+        }
+        Request request = new Request("PUT", "/" + index);
+        ClasspathResourceEntity entity = ClasspathResourceEntity.of(classpathRoot + "/" + index + "/"
+                + INDEX_SETTINGS_FILE + SettingsFinder.Defaults.JsonFileExtension);
+        if (entity != null && entity.getContentLength() != 0) {
+            request.setEntity(entity);
+        }
+        lowLevelClient.performRequest(request);
+        logger.debug("Index {} created", index);
+    }
+
     /**
      * It creates or updates:
      * <ul>
@@ -528,7 +802,7 @@ public class ElasticsearchClientFactoryBean
                 Assert.hasText(componentTemplate, "Can not read component template in ["
                         + componentTemplate
                         + "]. Check that component template is not empty.");
-                createComponentTemplate(lowLevelClient, classpathRoot, componentTemplate);
+                putResource("/_component_template/" + componentTemplate, SettingsFinder.Defaults.ComponentTemplatesDir, componentTemplate);
             }
         }
         logger.debug("Initializing index templates");
@@ -539,11 +813,103 @@ public class ElasticsearchClientFactoryBean
                 Assert.hasText(indexTemplate, "Can not read component template in ["
                         + indexTemplate
                         + "]. Check that component template is not empty.");
-                createIndexTemplate(lowLevelClient, classpathRoot, indexTemplate);
+                putResource("/_index_template/" + indexTemplate, SettingsFinder.Defaults.IndexTemplatesDir, indexTemplate);
+            }
+        }
+    }
+
+    /**
+     * It creates the data streams if needed. Each data stream must match an index template
+     * which enables data streams.
+     */
+    private void initDataStreams() throws Exception {
+        logger.debug("Initializing data streams");
+        String[] dataStreams = discoverFromClasspath(autoscan, null, classpathRoot, DATA_STREAMS_DIR);
+        if (dataStreams != null && dataStreams.length > 0) {
+            List<IndexTemplateItem> indexTemplates = client.indices().getIndexTemplate().indexTemplates();
+            for (String dataStream : dataStreams) {
+                logger.debug("Initializing data stream {}", dataStream);
+                IndexTemplateItem indexTemplate = findIndexTemplate(indexTemplates, dataStream);
+                Assert.state(indexTemplate != null, "Can not find any index template for data stream ["
+                        + dataStream
+                        + "]. Check that an index template matches the data stream name.");
+                Assert.state(indexTemplate.indexTemplate().dataStream() != null, "Index template ["
+                        + indexTemplate.name()
+                        + "] used by data stream [" + dataStream + "] does not enable data streams. Check that it contains \"data_stream\": {}.");
+
+                if (client.indices().exists(er -> er.index(dataStream)).value()) {
+                    try {
+                        client.indices().getDataStream(gdsr -> gdsr.name(dataStream));
+                        logger.debug("Data stream {} already exists", dataStream);
+                    } catch (ElasticsearchException e) {
+                        throw new IllegalStateException("[" + dataStream + "] already exists but is not a data stream.", e);
+                    }
+                } else {
+                    client.indices().createDataStream(cdsr -> cdsr.name(dataStream));
+                }
             }
         }
     }
 
+    /**
+     * Finds the index template Elasticsearch uses for a new index: the one with the highest
+     * priority among the templates matching the name.
+     */
+    static IndexTemplateItem findIndexTemplate(List<IndexTemplateItem> indexTemplates, String name) {
+        IndexTemplateItem found = null;
+        for (IndexTemplateItem indexTemplate : indexTemplates) {
+            boolean matches = indexTemplate.indexTemplate().indexPatterns().stream()
+                    .anyMatch(pattern -> PatternMatchUtils.simpleMatch(pattern, name));
+            if (matches && (found == null || priority(indexTemplate) > priority(found))) {
+                found = indexTemplate;
+            }
+        }
+        return found;
+    }
+
+    private static long priority(IndexTemplateItem indexTemplate) {
+        Long priority = indexTemplate.indexTemplate().priority();
+        return priority == null ? 0 : priority;
+    }
+
+    /**
+     * It creates or updates the stored scripts and the search templates.
+     * They are created before the pipelines which can use them.
+     */
+    private void initScripts() throws Exception {
+        logger.debug("Initializing stored scripts");
+        String[] scripts = discoverFromClasspath(autoscan, null, classpathRoot, SCRIPTS_DIR);
+        if (scripts != null) {
+            for (String script : scripts) {
+                logger.debug("Initializing stored script {}", script);
+                putResource("/_scripts/" + script, SCRIPTS_DIR, script);
+            }
+        }
+        logger.debug("Initializing search templates");
+        String[] searchTemplates = discoverFromClasspath(autoscan, null, classpathRoot, SEARCH_TEMPLATES_DIR);
+        if (searchTemplates != null) {
+            for (String searchTemplate : searchTemplates) {
+                logger.debug("Initializing search template {}", searchTemplate);
+                putResource("/_scripts/" + searchTemplate, SEARCH_TEMPLATES_DIR, searchTemplate);
+            }
+        }
+    }
+
+    /**
+     * Sends a definition file found in the classpath. The file is streamed from the classpath
+     * to the HTTP connection and never loaded in memory.
+     */
+    private void putResource(String endpoint, String dir, String name) throws IOException {
+        String file = classpathRoot + "/" + dir + "/" + name + SettingsFinder.Defaults.JsonFileExtension;
+        ClasspathResourceEntity entity = ClasspathResourceEntity.of(file);
+        Assert.isTrue(entity != null && entity.getContentLength() != 0, "Can not read ["
+                + file
+                + "]. Check that the file exists and is not empty.");
+        Request request = new Request("PUT", endpoint);
+        request.setEntity(entity);
+        lowLevelClient.performRequest(request);
+    }
+
     /**
      * It creates or updates the index pipelines
      */
@@ -556,7 +922,7 @@ public class ElasticsearchClientFactoryBean
                 Assert.hasText(pipeline, "Can not read pipeline in ["
                         + pipeline
                         + "]. Check that pipeline is not empty.");
-                createPipeline(lowLevelClient, classpathRoot, pipeline);
+                putResource("/_ingest/pipeline/" + pipeline, SettingsFinder.Defaults.PipelinesDir, pipeline);
             }
         }
     }
@@ -573,7 +939,7 @@ public class ElasticsearchClientFactoryBean
                 Assert.hasText(lifecycle, "Can not read lifecycle in ["
                         + lifecycle
                         + "]. Check that lifecycle is not empty.");
-                createIndexLifecycle(lowLevelClient, classpathRoot, lifecycle);
+                putResource("/_ilm/policy/" + lifecycle, SettingsFinder.Defaults.IndexLifecyclesDir, lifecycle);
             }
         }
     }
@@ -593,21 +959,30 @@ public class ElasticsearchClientFactoryBean
 
         if (aliases != null && aliases.length > 0) {
             logger.debug("Resources are manually provided so we won't do any automatic discovery.");
-            String request = "{\"actions\":[";
+            StringBuilder actions = new StringBuilder("{\"actions\":[");
             boolean first = true;
 			for (String aliasIndex : aliases) {
 			    if (!first) {
-                    request += ",";
+                    actions.append(',');
                 }
 			    first = false;
                 Tuple<String, String> aliasIndexSplitted = computeAlias(aliasIndex);
                 logger.debug("add alias {} on index {}", aliasIndexSplitted.v2(), aliasIndexSplitted.v1());
-                request += "{\"add\":{\"index\":\"" + aliasIndexSplitted.v1() +"\",\"alias\":\"" + aliasIndexSplitted.v2() +"\"}}";
+                actions.append("{\"add\":{\"index\":\"").append(aliasIndexSplitted.v1())
+                        .append("\",\"alias\":\"").append(aliasIndexSplitted.v2()).append("\"}}");
 			}
-            request += "]}";
-            manageAliasesWithJsonInElasticsearch(lowLevelClient, request);
+            actions.append("]}");
+            Request request = new Request("POST", "/_aliases");
+            request.setJsonEntity(actions.toString());
+            lowLevelClient.performRequest(request);
         } else {
-		    manageAliases(lowLevelClient, classpathRoot);
+            ClasspathResourceEntity entity = ClasspathResourceEntity.of(classpathRoot + "/"
+                    + SettingsFinder.Defaults.AliasesFile + SettingsFinder.Defaults.JsonFileExtension);
+            if (entity != null) {
+                Request request = new Request("POST", "/_aliases");
+                request.setEntity(entity);
+                lowLevelClient.performRequest(request);
+            }
         }
     }
 
@@ -624,6 +999,37 @@ public class ElasticsearchClientFactoryBean
         return new Tuple<>(index, alias);
     }
 
+    /**
+     * A Jackson mapper, which uses the generated document codecs if any.
+     */
+    private JacksonJsonpMapper buildMapper() {
+        if (documentCodecs) {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            List<DocumentCodec<?>> codecs = DocumentCodec.load(classLoader != null ? classLoader : getClass().getClassLoader());
+            if (!codecs.isEmpty()) {
+                logger.debug("Using the document codecs of {}", codecs.stream().map(codec -> codec.type().getName()).toList());
+                return new CodecJsonpMapper(codecs);
+            }
+        }
+        return new JacksonJsonpMapper();
+    }
+
+    /**
+     * The default options of the transport, or null to keep the ones of the low level client.
+     */
+    private RestClientOptions buildTransportOptions() {
+        if (responseBufferLimit == null && bufferPool == null) {
+            return null;
+        }
+        int limit = responseBufferLimit != null ? responseBufferLimit : DEFAULT_RESPONSE_BUFFER_LIMIT;
+        HttpAsyncResponseConsumerFactory consumerFactory = bufferPool != null ?
+                new PooledResponseConsumerFactory(bufferPool, limit) :
+                new HttpAsyncResponseConsumerFactory.HeapBufferedResponseConsumerFactory(limit);
+        return new RestClientOptions(RequestOptions.DEFAULT.toBuilder()
+                .setHttpAsyncResponseConsumerFactory(consumerFactory)
+                .build());
+    }
+
 	private RestClient buildElasticsearchLowLevelClient() {
         RestClientBuilder rcb = RestClient.builder(esNodes.toArray(new HttpHost[]{}));
 
@@ -641,6 +1047,18 @@ public class ElasticsearchClientFactoryBean
             if (sslContext != null) {
                 hcb.setSSLContext(sslContext);
             }
+            if (queryCache != null) {
+                queryCache.instrument(hcb);
+            }
+            if (transportMetrics != null) {
+                transportMetrics.instrument(hcb, sslContext);
+            }
+            if (transportTracing != null) {
+                transportTracing.instrument(hcb);
+            }
+            if (slowRequestLog != null) {
+                slowRequestLog.instrument(hcb);
+            }
             return hcb;
         });
 
@@ -0,0 +1,319 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.admin;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.HealthStatus;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.indices.GetIndicesSettingsResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bulk load session relaxes the settings of some indices to speed up a large indexing job
+ * and restores them when the session is closed.
+ * <p>
+ * When the session starts, the current settings are kept and the indices are updated with
+ * {@code refresh_interval: -1} and {@code number_of_replicas: 0} (and optionally with
+ * {@code translog.durability: async}). When the session is closed, even if the indexing failed,
+ * the previous settings are restored, the indices are refreshed and we wait for the cluster
+ * to be green (by default) for these indices.
+ * </p>
+ * <pre>
+ * {@code
+ * try (BulkLoadSession session = factory.startBulkLoad("products")) {
+ *     // Send the bulk requests
+ * }
+ * }
+ * </pre>
+ * <p>
+ * The sessions started with {@link fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean#startBulkLoad(String...)}
+ * are closed when the factory is destroyed if they are still open. Only one session should be
+ * open at a time for a given index.
+ * </p>
+ */
+public class BulkLoadSession implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkLoadSession.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private record Snapshot(String refreshInterval, String numberOfReplicas, String translogDurability) {
+    }
+
+    private final ElasticsearchClient client;
+    private final RestClient restClient;
+    private final List<String> indices;
+    private final boolean asyncTranslog;
+    private final HealthStatus waitForStatus;
+    private final Duration healthTimeout;
+    private final Duration healthPollTimeout;
+    private final Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+    private boolean closed;
+
+    private BulkLoadSession(ElasticsearchClient client, Builder builder) throws IOException {
+        RestClientTransport transport = DelegatingTransport.unwrap(client._transport(), RestClientTransport.class);
+        Assert.state(transport != null, "Bulk load sessions need a client using a RestClientTransport.");
+        this.client = client;
+        this.restClient = transport.restClient();
+        this.indices = List.copyOf(builder.indices);
+        this.asyncTranslog = builder.asyncTranslog;
+        this.waitForStatus = builder.waitForStatus;
+        this.healthTimeout = builder.healthTimeout;
+        this.healthPollTimeout = builder.healthPollTimeout;
+
+        snapshot();
+        try {
+            relax();
+        } catch (IOException | RuntimeException e) {
+            // Do not leave half updated indices behind us
+            try {
+                close();
+            } catch (Exception suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the indices as they were given to the session
+     */
+    public List<String> indices() {
+        return indices;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Restores the settings, refreshes the indices and waits for the expected health status.
+     * Calling it again does nothing.
+     * @throws IOException if the settings can not be restored
+     * @throws IllegalStateException if the indices do not reach the expected health status in time
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        IOException failure = null;
+        for (Map.Entry<String, Snapshot> snapshot : snapshots.entrySet()) {
+            try {
+                restore(snapshot.getKey(), snapshot.getValue());
+            } catch (IOException | RuntimeException e) {
+                logger.error("Can not restore the settings of index [{}]: {}", snapshot.getKey(), snapshot.getValue(), e);
+                if (failure == null) {
+                    failure = new IOException("Can not restore the settings of index [" + snapshot.getKey() + "]", e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (snapshots.isEmpty()) {
+            return;
+        }
+
+        List<String> concreteIndices = new ArrayList<>(snapshots.keySet());
+        client.indices().refresh(rr -> rr.index(concreteIndices));
+        waitForHealth(concreteIndices);
+        logger.debug("Bulk load session ended for indices {}", concreteIndices);
+    }
+
+    /**
+     * Each request only waits for {@code healthPollTimeout} on the server side, so it does not
+     * hit the socket timeout of the client, and we send them until {@code healthTimeout}.
+     */
+    private void waitForHealth(List<String> concreteIndices) throws IOException {
+        long deadline = System.nanoTime() + healthTimeout.toNanos();
+        while (true) {
+            long wait = Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()),
+                    healthPollTimeout.toMillis()));
+            Request request = new Request("GET", "/_cluster/health/" + String.join(",", concreteIndices));
+            request.addParameter("wait_for_status", waitForStatus.jsonValue());
+            request.addParameter("timeout", wait + "ms");
+            // Elasticsearch answers with a 408 when the status is not reached in time
+            request.addParameter("ignore", "408");
+            JsonNode health;
+            try (InputStream content = restClient.performRequest(request).getEntity().getContent()) {
+                health = mapper.readTree(content);
+            }
+            if (!health.path("timed_out").asBoolean()) {
+                return;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new IllegalStateException("Indices " + concreteIndices + " did not reach the " + waitForStatus.jsonValue()
+                        + " status within " + healthTimeout + ". Current status is " + health.path("status").asText() + ".");
+            }
+            logger.trace("Indices {} are {}. Waiting for them to be {}.", concreteIndices, health.path("status").asText(),
+                    waitForStatus.jsonValue());
+        }
+    }
+
+    private void snapshot() throws IOException {
+        GetIndicesSettingsResponse response = client.indices().getSettings(gisr -> gisr.index(indices));
+        for (Map.Entry<String, IndexState> index : response.result().entrySet()) {
+            IndexSettings settings = index.getValue().settings() == null ? null : index.getValue().settings().index();
+            if (settings == null) {
+                snapshots.put(index.getKey(), new Snapshot(null, null, null));
+                continue;
+            }
+            Time refreshInterval = settings.refreshInterval();
+            snapshots.put(index.getKey(), new Snapshot(
+                    refreshInterval == null ? null : refreshInterval.isTime() ? refreshInterval.time() : String.valueOf(refreshInterval.offset()),
+                    settings.numberOfReplicas(),
+                    settings.translog() == null || settings.translog().durability() == null ? null : settings.translog().durability().jsonValue()));
+        }
+        logger.debug("Starting a bulk load session for indices {} with current settings {}", snapshots.keySet(), snapshots);
+    }
+
+    private void relax() throws IOException {
+        String settings = "{\"index\":{\"refresh_interval\":\"-1\",\"number_of_replicas\":0";
+        if (asyncTranslog) {
+            settings += ",\"translog.durability\":\"async\"";
+        }
+        settings += "}}";
+        putSettings(String.join(",", snapshots.keySet()), settings);
+    }
+
+    private void restore(String index, Snapshot snapshot) throws IOException {
+        String settings = "{\"index\":{\"refresh_interval\":" + value(snapshot.refreshInterval()) +
+                ",\"number_of_replicas\":" + value(snapshot.numberOfReplicas());
+        if (asyncTranslog) {
+            settings += ",\"translog.durability\":" + value(snapshot.translogDurability());
+        }
+        settings += "}}";
+        putSettings(index, settings);
+    }
+
+    private void putSettings(String index, String settings) throws IOException {
+        if (index.isEmpty()) {
+            return;
+        }
+        logger.trace("Updating settings of [{}] with {}", index, settings);
+        Request request = new Request("PUT", "/" + index + "/_settings");
+        request.setJsonEntity(settings);
+        restClient.performRequest(request);
+    }
+
+    /**
+     * A null value resets the setting to its default value
+     */
+    private static String value(String value) {
+        return value == null ? "null" : "\"" + value + "\"";
+    }
+
+    /**
+     * Builder for {@link BulkLoadSession}.
+     */
+    public static class Builder {
+        private final List<String> indices = new ArrayList<>();
+        private boolean asyncTranslog;
+        private HealthStatus waitForStatus = HealthStatus.Green;
+        private Duration healthTimeout = Duration.ofMinutes(5);
+        private Duration healthPollTimeout = Duration.ofSeconds(10);
+
+        /**
+         * @param indices the indices, aliases or patterns to load
+         * @return this builder
+         */
+        public Builder indices(String... indices) {
+            this.indices.addAll(Arrays.asList(indices));
+            return this;
+        }
+
+        /**
+         * @param asyncTranslog true to also use an async translog during the session. An acknowledged
+         *                      write can then be lost if a node crashes. Defaults to false.
+         * @return this builder
+         */
+        public Builder asyncTranslog(boolean asyncTranslog) {
+            this.asyncTranslog = asyncTranslog;
+            return this;
+        }
+
+        /**
+         * @param waitForStatus the health status to wait for when the session ends. Defaults to green.
+         * @return this builder
+         */
+        public Builder waitForStatus(HealthStatus waitForStatus) {
+            this.waitForStatus = waitForStatus;
+            return this;
+        }
+
+        /**
+         * @param healthTimeout how long we wait for the health status when the session ends. Defaults to 5 minutes.
+         * @return this builder
+         */
+        public Builder healthTimeout(Duration healthTimeout) {
+            this.healthTimeout = healthTimeout;
+            return this;
+        }
+
+        /**
+         * @param healthPollTimeout how long each cluster health request waits on the server side. It must be
+         *                          lower than the socket timeout of the client (30 seconds by default).
+         *                          Defaults to 10 seconds.
+         * @return this builder
+         */
+        public Builder healthPollTimeout(Duration healthPollTimeout) {
+            this.healthPollTimeout = healthPollTimeout;
+            return this;
+        }
+
+        /**
+         * Snapshots the current settings and relaxes them.
+         * @param client the client built by the factory
+         * @return the session
+         */
+        public BulkLoadSession start(ElasticsearchClient client) throws IOException {
+            Assert.isTrue(!indices.isEmpty(), "At least one index must be provided.");
+            Assert.notNull(waitForStatus, "waitForStatus must not be null.");
+            Assert.notNull(healthTimeout, "healthTimeout must not be null.");
+            Assert.notNull(healthPollTimeout, "healthPollTimeout must not be null.");
+            return new BulkLoadSession(client, this);
+        }
+    }
+}
@@ -0,0 +1,542 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.admin;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.HealthStatus;
+import co.elastic.clients.elasticsearch._types.Slices;
+import co.elastic.clients.elasticsearch._types.SlicesCalculation;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.ReindexResponse;
+import co.elastic.clients.elasticsearch.indices.Alias;
+import co.elastic.clients.elasticsearch.indices.AliasDefinition;
+import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import jakarta.json.stream.JsonGenerator;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Migrates an index to a new mapping without downtime.
+ * <p>
+ * The index is managed as a versioned index {@code <index>-vN} behind an alias {@code <index>}.
+ * When the mapping can be merged with the existing one, it is updated in place. Otherwise:
+ * </p>
+ * <ol>
+ *   <li>{@code <index>-vN+1} is created with the new settings and mappings,</li>
+ *   <li>the documents are copied with a sliced reindex (which can be throttled),</li>
+ *   <li>the documents modified during the copy are copied again, using the {@code catchUpField},</li>
+ *   <li>the settings of the new index are restored and we wait for its replicas,</li>
+ *   <li>writes are blocked on the old index and the documents modified since the previous catch up
+ *   are copied,</li>
+ *   <li>the alias (and the other aliases of the old index) are atomically moved to the new index,</li>
+ *   <li>the old index is kept (read only) or deleted.</li>
+ * </ol>
+ * <p>
+ * Documents are copied with external versioning so a copy never overwrites a more recent version.
+ * Documents deleted during the migration are not deleted from the new index. If any document can not
+ * be copied (for example because the new mapping rejects it), the migration is aborted and the alias
+ * is not moved.
+ * </p>
+ * <p>
+ * Without a {@code catchUpField}, the last copy is a full copy done while the writes are blocked on
+ * the old index, so writes fail for as long as the first copy took. This must be explicitly allowed with
+ * {@link Builder#blockWritesDuringFullCopy(boolean)}.
+ * </p>
+ * <p>
+ * An existing index which is not behind an alias is migrated to {@code <index>-v1} at the first
+ * incompatible change. As the alias needs its name, it is cloned to {@code <index>-v0} when the
+ * old index must be kept.
+ * </p>
+ * <pre>
+ * {@code
+ * factory.setIndexMigrator(new IndexMigrator.Builder()
+ *         .requestsPerSecond(5000f)
+ *         .catchUpField("updated_at")
+ *         .oldIndexPolicy(IndexMigrator.OldIndexPolicy.DELETE)
+ *         .build());
+ * }
+ * </pre>
+ */
+public class IndexMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexMigrator.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * What to do with the old index once the alias has been moved.
+     */
+    public enum OldIndexPolicy {
+        /**
+         * The old index is kept with a write block.
+         */
+        KEEP,
+        /**
+         * The old index is deleted.
+         */
+        DELETE
+    }
+
+    private final int slices;
+    private final Float requestsPerSecond;
+    private final String catchUpField;
+    private final Duration catchUpMargin;
+    private final OldIndexPolicy oldIndexPolicy;
+    private final HealthStatus waitForStatus;
+    private final Duration pollInterval;
+
+    private IndexMigrator(Builder builder) {
+        this.slices = builder.slices;
+        this.requestsPerSecond = builder.requestsPerSecond;
+        this.catchUpField = builder.catchUpField;
+        this.catchUpMargin = builder.catchUpMargin;
+        this.oldIndexPolicy = builder.oldIndexPolicy;
+        this.waitForStatus = builder.waitForStatus;
+        this.pollInterval = builder.pollInterval;
+    }
+
+    /**
+     * Creates or migrates an index.
+     * @param client   the client
+     * @param index    the index name, which is the alias name
+     * @param settings the index settings and mappings as json, or null
+     * @param force    true to migrate to a new version even if the mapping can be merged
+     * @return the concrete index behind the alias
+     */
+    public String migrate(ElasticsearchClient client, String index, String settings, boolean force) throws IOException {
+        String json = settings == null ? "{}" : settings;
+        CreateIndexRequest desired = CreateIndexRequest.of(cir -> cir.index(index).withJson(new StringReader(json)));
+
+        boolean legacy = false;
+        String current = null;
+        if (client.indices().existsAlias(ear -> ear.name(index)).value()) {
+            current = writeIndex(client.indices().getAlias(gar -> gar.name(index)), index);
+        } else if (client.indices().exists(er -> er.index(index)).value()) {
+            current = index;
+            legacy = true;
+        }
+
+        if (current == null) {
+            String first = versionedName(index, 1);
+            logger.debug("Creating index {} behind alias {}", first, index);
+            createIndex(client, first, desired);
+            List<Action> actions = new ArrayList<>();
+            actions.add(Action.of(a -> a.add(aa -> aa.index(first).alias(index).isWriteIndex(true))));
+            addDesiredAliases(actions, desired, first);
+            client.indices().updateAliases(uar -> uar.actions(actions));
+            return first;
+        }
+
+        if (!force && desired.mappings() != null) {
+            try {
+                String target = current;
+                client.indices().putMapping(pmr -> pmr.index(target).withJson(new StringReader(json(client, desired))));
+                logger.debug("Mapping of index {} updated in place", current);
+                return current;
+            } catch (ElasticsearchException e) {
+                if (e.status() != 400) {
+                    throw e;
+                }
+                logger.info("Mapping of index [{}] can not be updated: {}. Migrating to a new index.", index, e.getMessage());
+            }
+        } else if (!force) {
+            return current;
+        }
+
+        return migrate(client, index, current, legacy, desired);
+    }
+
+    private String migrate(ElasticsearchClient client, String index, String current, boolean legacy,
+                           CreateIndexRequest desired) throws IOException {
+        RestClient restClient = restClient(client);
+        String next = versionedName(index, version(index, current) + 1);
+        if (client.indices().exists(er -> er.index(next)).value()) {
+            logger.warn("Index [{}] exists but is not used by alias [{}]. Probably a failed migration. Removing it.", next, index);
+            client.indices().delete(dir -> dir.index(next));
+        }
+
+        logger.info("Migrating index [{}] from [{}] to [{}]", index, current, next);
+        createIndex(client, next, desired);
+        boolean blocked = false;
+        String kept = null;
+        try {
+            BulkLoadSession session = new BulkLoadSession.Builder()
+                    .indices(next)
+                    .waitForStatus(waitForStatus)
+                    .start(client);
+            long start = System.currentTimeMillis();
+            long catchUpStart = start;
+            try (session) {
+                reindex(client, restClient, current, next, null);
+
+                if (catchUpField != null) {
+                    // Copy what has been modified while we were copying
+                    catchUpStart = System.currentTimeMillis();
+                    reindex(client, restClient, current, next, catchUpQuery(start));
+                }
+            }
+            // The replicas of the new index are recovered before we block the writes
+
+            // No more writes on the old index, then copy the last modifications
+            blockWrites(restClient, current, true);
+            blocked = true;
+            reindex(client, restClient, current, next, catchUpQuery(catchUpStart));
+
+            if (legacy && oldIndexPolicy == OldIndexPolicy.KEEP) {
+                // The alias needs the name of the index
+                kept = versionedName(index, 0);
+                String target = kept;
+                client.indices().clone(cr -> cr.index(current).target(target));
+            }
+
+            // Move all the aliases at once
+            List<Action> actions = new ArrayList<>();
+            if (legacy) {
+                actions.add(Action.of(a -> a.removeIndex(ria -> ria.index(current))));
+            } else {
+                actions.add(Action.of(a -> a.remove(ra -> ra.index(current).alias(index))));
+            }
+            actions.add(Action.of(a -> a.add(aa -> aa.index(next).alias(index).isWriteIndex(true))));
+            moveAliases(client, actions, index, current, next, legacy);
+            addDesiredAliases(actions, desired, next);
+            client.indices().updateAliases(uar -> uar.actions(actions));
+            logger.info("Alias [{}] now points to [{}]", index, next);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Migration of index [{}] to [{}] failed. Reverting.", index, next);
+            try {
+                if (blocked) {
+                    blockWrites(restClient, current, false);
+                }
+                client.indices().delete(dir -> dir.index(next));
+                if (kept != null) {
+                    String clone = kept;
+                    client.indices().delete(dir -> dir.index(clone));
+                }
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        if (!legacy && oldIndexPolicy == OldIndexPolicy.DELETE) {
+            client.indices().delete(dir -> dir.index(current));
+        } else if (kept != null) {
+            logger.info("Old index [{}] kept as [{}]", current, kept);
+        }
+        return next;
+    }
+
+    private void createIndex(ElasticsearchClient client, String name, CreateIndexRequest desired) throws IOException {
+        client.indices().create(cir -> {
+            cir.index(name);
+            if (desired.settings() != null) {
+                cir.settings(desired.settings());
+            }
+            if (desired.mappings() != null) {
+                cir.mappings(desired.mappings());
+            }
+            return cir;
+        });
+    }
+
+    private Query catchUpQuery(long since) {
+        if (catchUpField == null) {
+            return null;
+        }
+        long from = since - catchUpMargin.toMillis();
+        return Query.of(q -> q.range(r -> r.field(catchUpField).gte(JsonData.of(from)).format("epoch_millis")));
+    }
+
+    private void reindex(ElasticsearchClient client, RestClient restClient, String source, String dest,
+                         Query query) throws IOException {
+        ReindexResponse response = client.reindex(rr -> rr
+                .source(s -> {
+                    s.index(source);
+                    if (query != null) {
+                        s.query(query);
+                    }
+                    return s;
+                })
+                .dest(d -> d.index(dest).versionType(VersionType.External))
+                .conflicts(Conflicts.Proceed)
+                .slices(slices > 0 ? Slices.of(s -> s.value(slices)) : Slices.of(s -> s.computed(SlicesCalculation.Auto)))
+                .requestsPerSecond(requestsPerSecond)
+                .waitForCompletion(false));
+        waitForTask(restClient, response.task());
+    }
+
+    private void waitForTask(RestClient restClient, String taskId) throws IOException {
+        while (true) {
+            // The reindex status is read as json as its failures are not typed by the client
+            JsonNode task;
+            try (InputStream content = restClient.performRequest(new Request("GET", "/_tasks/" + taskId))
+                    .getEntity().getContent()) {
+                task = mapper.readTree(content);
+            }
+            if (task.path("completed").asBoolean()) {
+                checkReindex(taskId, task);
+                logger.debug("Reindex task [{}] completed", taskId);
+                return;
+            }
+            try {
+                Thread.sleep(pollInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for reindex task [" + taskId + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Checks that all the documents have been copied.
+     * @param taskId    the reindex task id
+     * @param task      the task, as returned by the get task API
+     * @throws IllegalStateException if the reindex failed or did not copy all the documents
+     */
+    static void checkReindex(String taskId, JsonNode task) {
+        if (task.hasNonNull("error")) {
+            throw new IllegalStateException("Reindex task [" + taskId + "] failed: " +
+                    task.get("error").path("reason").asText());
+        }
+        JsonNode response = task.path("response");
+        JsonNode failures = response.path("failures");
+        if (!failures.isEmpty()) {
+            JsonNode first = failures.get(0);
+            throw new IllegalStateException("Reindex task [" + taskId + "] could not copy " + failures.size() +
+                    " documents. First failure on [" + first.path("id").asText() + "]: " +
+                    first.path("cause").path("reason").asText());
+        }
+        if (response.hasNonNull("canceled")) {
+            throw new IllegalStateException("Reindex task [" + taskId + "] was cancelled: " + response.get("canceled").asText());
+        }
+        // With conflicts=proceed, the documents already copied with the same version are version conflicts
+        long total = response.path("total").asLong();
+        long copied = response.path("created").asLong() + response.path("updated").asLong() +
+                response.path("version_conflicts").asLong() + response.path("noops").asLong();
+        if (copied != total) {
+            throw new IllegalStateException("Reindex task [" + taskId + "] copied " + copied + " documents out of " + total);
+        }
+    }
+
+    private void moveAliases(ElasticsearchClient client, List<Action> actions, String index, String current,
+                             String next, boolean legacy) throws IOException {
+        GetAliasResponse aliases = client.indices().getAlias(gar -> gar.index(current));
+        if (aliases.result().get(current) == null) {
+            return;
+        }
+        for (Map.Entry<String, AliasDefinition> alias : aliases.result().get(current).aliases().entrySet()) {
+            String name = alias.getKey();
+            if (name.equals(index)) {
+                continue;
+            }
+            AliasDefinition definition = alias.getValue();
+            if (!legacy) {
+                actions.add(Action.of(a -> a.remove(ra -> ra.index(current).alias(name))));
+            }
+            actions.add(Action.of(a -> a.add(aa -> aa.index(next).alias(name)
+                    .filter(definition.filter())
+                    .indexRouting(definition.indexRouting())
+                    .searchRouting(definition.searchRouting())
+                    .isWriteIndex(definition.isWriteIndex())
+                    .isHidden(definition.isHidden()))));
+        }
+    }
+
+    private void addDesiredAliases(List<Action> actions, CreateIndexRequest desired, String target) {
+        for (Map.Entry<String, Alias> alias : desired.aliases().entrySet()) {
+            Alias definition = alias.getValue();
+            actions.add(Action.of(a -> a.add(aa -> aa.index(target).alias(alias.getKey())
+                    .filter(definition.filter())
+                    .indexRouting(definition.indexRouting())
+                    .routing(definition.routing())
+                    .searchRouting(definition.searchRouting())
+                    .isWriteIndex(definition.isWriteIndex())
+                    .isHidden(definition.isHidden()))));
+        }
+    }
+
+    private static void blockWrites(RestClient restClient, String index, boolean block) throws IOException {
+        Request request = new Request("PUT", "/" + index + "/_settings");
+        request.setJsonEntity("{\"index.blocks.write\":" + (block ? "true" : "null") + "}");
+        restClient.performRequest(request);
+    }
+
+    private static String writeIndex(GetAliasResponse response, String alias) {
+        List<String> indices = new ArrayList<>(response.result().keySet());
+        if (indices.size() == 1) {
+            return indices.get(0);
+        }
+        for (String index : indices) {
+            AliasDefinition definition = response.result().get(index).aliases().get(alias);
+            if (definition != null && Boolean.TRUE.equals(definition.isWriteIndex())) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("Alias [" + alias + "] points to " + indices + " without any write index.");
+    }
+
+    static String versionedName(String index, int version) {
+        return index + "-v" + version;
+    }
+
+    static int version(String index, String concreteIndex) {
+        Matcher matcher = Pattern.compile(Pattern.quote(index) + "-v(\\d+)").matcher(concreteIndex);
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    private static String json(ElasticsearchClient client, CreateIndexRequest desired) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = client._jsonpMapper().jsonProvider().createGenerator(writer)) {
+            desired.mappings().serialize(generator, client._jsonpMapper());
+        }
+        return writer.toString();
+    }
+
+    private static RestClient restClient(ElasticsearchClient client) {
+        RestClientTransport transport = DelegatingTransport.unwrap(client._transport(), RestClientTransport.class);
+        Assert.state(transport != null, "Index migrations need a client using a RestClientTransport.");
+        return transport.restClient();
+    }
+
+    /**
+     * Builder for {@link IndexMigrator}.
+     */
+    public static class Builder {
+        private int slices;
+        private Float requestsPerSecond;
+        private String catchUpField;
+        private Duration catchUpMargin = Duration.ofMinutes(1);
+        private OldIndexPolicy oldIndexPolicy = OldIndexPolicy.KEEP;
+        private HealthStatus waitForStatus = HealthStatus.Green;
+        private Duration pollInterval = Duration.ofSeconds(1);
+        private boolean blockWritesDuringFullCopy;
+
+        /**
+         * @param slices the number of slices used to reindex. Defaults to auto (one slice per shard).
+         * @return this builder
+         */
+        public Builder slices(int slices) {
+            this.slices = slices;
+            return this;
+        }
+
+        /**
+         * @param requestsPerSecond throttles the reindex. Defaults to no throttling.
+         * @return this builder
+         */
+        public Builder requestsPerSecond(Float requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param catchUpField a date field updated on each write, in epoch milliseconds or in a date format.
+         *                     Only the documents modified since the previous copy are copied again.
+         *                     Required unless {@link #blockWritesDuringFullCopy(boolean)} is set.
+         * @return this builder
+         */
+        public Builder catchUpField(String catchUpField) {
+            this.catchUpField = catchUpField;
+            return this;
+        }
+
+        /**
+         * @param catchUpMargin how much before the previous copy we look at the {@code catchUpField}, to
+         *                      support clock differences between the writers. Defaults to 1 minute.
+         * @return this builder
+         */
+        public Builder catchUpMargin(Duration catchUpMargin) {
+            this.catchUpMargin = catchUpMargin;
+            return this;
+        }
+
+        /**
+         * @param oldIndexPolicy what to do with the old index. Defaults to {@link OldIndexPolicy#KEEP}.
+         * @return this builder
+         */
+        public Builder oldIndexPolicy(OldIndexPolicy oldIndexPolicy) {
+            this.oldIndexPolicy = oldIndexPolicy;
+            return this;
+        }
+
+        /**
+         * @param waitForStatus the health status of the new index to wait for before moving the alias. Defaults to green.
+         * @return this builder
+         */
+        public Builder waitForStatus(HealthStatus waitForStatus) {
+            this.waitForStatus = waitForStatus;
+            return this;
+        }
+
+        /**
+         * @param pollInterval how often we check if the reindex is done. Defaults to 1 second.
+         * @return this builder
+         */
+        public Builder pollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        /**
+         * @param blockWritesDuringFullCopy true to migrate without a {@code catchUpField}. The last copy is then
+         *                                  a full copy while writes are blocked on the old index: writes fail for
+         *                                  as long as the copy takes. Defaults to false.
+         * @return this builder
+         */
+        public Builder blockWritesDuringFullCopy(boolean blockWritesDuringFullCopy) {
+            this.blockWritesDuringFullCopy = blockWritesDuringFullCopy;
+            return this;
+        }
+
+        public IndexMigrator build() {
+            Assert.isTrue(catchUpField != null || blockWritesDuringFullCopy,
+                    "catchUpField must be set, or blockWritesDuringFullCopy allowed, to migrate indices.");
+            Assert.notNull(catchUpMargin, "catchUpMargin must not be null.");
+            Assert.notNull(oldIndexPolicy, "oldIndexPolicy must not be null.");
+            Assert.notNull(waitForStatus, "waitForStatus must not be null.");
+            Assert.notNull(pollInterval, "pollInterval must not be null.");
+            return new IndexMigrator(this);
+        }
+    }
+}
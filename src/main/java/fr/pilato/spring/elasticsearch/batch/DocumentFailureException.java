@@ -0,0 +1,60 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.batch;
+
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetError;
+
+/**
+ * A document of a {@code _mget} response which could not be fetched, for example because its
+ * index does not exist. The other documents of the same request might have been fetched.
+ */
+public class DocumentFailureException extends RuntimeException {
+
+    private final String index;
+    private final String id;
+    private final ErrorCause error;
+
+    /**
+     * @param failure the failure of the document, as returned by Elasticsearch
+     */
+    public DocumentFailureException(MultiGetError failure) {
+        super("Can not get document [" + failure.index() + "/" + failure.id() + "]: [" +
+                failure.error().type() + "] " + failure.error().reason());
+        this.index = failure.index();
+        this.id = failure.id();
+        this.error = failure.error();
+    }
+
+    public String index() {
+        return index;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the error returned by Elasticsearch
+     */
+    public ErrorCause error() {
+        return error;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.batch;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetOperation;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Coalesces get by id calls made concurrently into {@code _mget} requests.
+ * <p>
+ * Instead of sending one request per document, the calls made within a short time window
+ * (or until {@code maxBatchSize} documents are requested) are sent as one single {@code _mget}
+ * request. Each caller gets its own future completed with its {@link GetResult}:
+ * </p>
+ * <pre>
+ * {@code
+ * MultiGetBatcher<Product> products = new MultiGetBatcher<>(client, Product.class, Duration.ofMillis(2), 100);
+ * CompletableFuture<GetResult<Product>> product = products.get("products", "42");
+ * }
+ * </pre>
+ * <p>
+ * A document which does not exist is returned as a result with {@code found=false}. A document
+ * which can not be fetched (for example if the index does not exist) completes the future with a
+ * {@link DocumentFailureException} without impacting the other documents of the batch. When the
+ * whole request fails, all the futures of the batch complete with the exception thrown by the client.
+ * </p>
+ * @param <T> the document class
+ */
+public class MultiGetBatcher<T> implements AutoCloseable {
+
+    private record DocumentId(String index, String id) {
+    }
+
+    private final ElasticsearchAsyncClient asyncClient;
+    private final Class<T> documentClass;
+    private final RequestBatcher<Boolean, DocumentId, GetResult<T>> batcher;
+
+    /**
+     * @param client        the client built by the factory
+     * @param documentClass the document class
+     * @param window        how long we wait for other calls before sending the {@code _mget} request
+     * @param maxBatchSize  the maximum number of documents per {@code _mget} request
+     */
+    public MultiGetBatcher(ElasticsearchClient client, Class<T> documentClass, Duration window, int maxBatchSize) {
+        this.asyncClient = new ElasticsearchAsyncClient(client._transport(), client._transportOptions());
+        this.documentClass = documentClass;
+        this.batcher = new RequestBatcher<>("mget", window, maxBatchSize, this::dispatch);
+    }
+
+    /**
+     * Gets a document by its id.
+     * @param index the index name
+     * @param id    the document id
+     * @return a future completed with the document
+     */
+    public CompletableFuture<GetResult<T>> get(String index, String id) {
+        // All the documents go in the same _mget request whatever their index
+        return batcher.submit(Boolean.TRUE, new DocumentId(index, id));
+    }
+
+    /**
+     * Sends the pending requests and stops accepting new ones.
+     */
+    @Override
+    public void close() {
+        batcher.close();
+    }
+
+    private void dispatch(Boolean ignored, List<RequestBatcher.Pending<DocumentId, GetResult<T>>> batch) {
+        List<MultiGetOperation> docs = batch.stream()
+                .map(pending -> MultiGetOperation.of(d -> d.index(pending.request().index()).id(pending.request().id())))
+                .toList();
+
+        asyncClient.mget(MgetRequest.of(m -> m.docs(docs)), documentClass).whenComplete((response, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                batch.forEach(pending -> pending.future().completeExceptionally(cause));
+                return;
+            }
+            // Items are returned in the same order as the requested documents
+            List<MultiGetResponseItem<T>> items = response.docs();
+            if (items.size() != batch.size()) {
+                IllegalStateException mismatch = new IllegalStateException("The _mget response has [" + items.size()
+                        + "] documents for [" + batch.size() + "] requested documents");
+                batch.forEach(pending -> pending.future().completeExceptionally(mismatch));
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                MultiGetResponseItem<T> item = items.get(i);
+                if (item.isResult()) {
+                    batch.get(i).future().complete(item.result());
+                } else {
+                    batch.get(i).future().completeExceptionally(new DocumentFailureException(item.failure()));
+                }
+            }
+        });
+    }
+}
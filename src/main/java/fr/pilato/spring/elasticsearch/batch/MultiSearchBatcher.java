@@ -0,0 +1,149 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.batch;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.MsearchRequest;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultisearchBody;
+import co.elastic.clients.elasticsearch.core.msearch.MultisearchHeader;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
+import co.elastic.clients.util.ObjectBuilder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Coalesces searches made concurrently into {@code _msearch} requests.
+ * <p>
+ * Searches are grouped by index: the searches on the same index made within a short time window
+ * (or until {@code maxBatchSize} searches are collected) are sent as one single {@code _msearch}
+ * request on this index. Each caller gets its own future completed with its search response:
+ * </p>
+ * <pre>
+ * {@code
+ * MultiSearchBatcher<Product> searches = new MultiSearchBatcher<>(client, Product.class, Duration.ofMillis(1), 50, 8);
+ * CompletableFuture<MultiSearchItem<Product>> response = searches.search("products",
+ *         b -> b.query(q -> q.term(t -> t.field("category").value("shoes"))));
+ * }
+ * </pre>
+ * <p>
+ * A failing search completes its own future with an {@link ElasticsearchException} and does not
+ * impact the other searches of the batch.
+ * </p>
+ * @param <T> the document class
+ */
+public class MultiSearchBatcher<T> implements AutoCloseable {
+
+    private static final MultisearchHeader EMPTY_HEADER = MultisearchHeader.of(h -> h);
+
+    private final ElasticsearchAsyncClient asyncClient;
+    private final Class<T> documentClass;
+    private final Long maxConcurrentSearches;
+    private final RequestBatcher<String, MultisearchBody, MultiSearchItem<T>> batcher;
+
+    /**
+     * @param client                the client built by the factory
+     * @param documentClass         the document class
+     * @param window                how long we wait for other searches before sending the {@code _msearch} request
+     * @param maxBatchSize          the maximum number of searches per {@code _msearch} request
+     * @param maxConcurrentSearches the maximum number of searches of a batch that Elasticsearch runs concurrently.
+     *                              Use 0 to keep the Elasticsearch default.
+     */
+    public MultiSearchBatcher(ElasticsearchClient client, Class<T> documentClass, Duration window,
+                              int maxBatchSize, int maxConcurrentSearches) {
+        this.asyncClient = new ElasticsearchAsyncClient(client._transport(), client._transportOptions());
+        this.documentClass = documentClass;
+        this.maxConcurrentSearches = maxConcurrentSearches > 0 ? (long) maxConcurrentSearches : null;
+        this.batcher = new RequestBatcher<>("msearch", window, maxBatchSize, this::dispatch);
+    }
+
+    /**
+     * Runs a search on an index.
+     * @param index the index name (or alias)
+     * @param body  the search
+     * @return a future completed with the search response
+     */
+    public CompletableFuture<MultiSearchItem<T>> search(String index, MultisearchBody body) {
+        return batcher.submit(index, body);
+    }
+
+    /**
+     * Runs a search on an index.
+     * @param index the index name (or alias)
+     * @param fn    the search builder
+     * @return a future completed with the search response
+     */
+    public CompletableFuture<MultiSearchItem<T>> search(String index,
+                                                        Function<MultisearchBody.Builder, ObjectBuilder<MultisearchBody>> fn) {
+        return search(index, MultisearchBody.of(fn));
+    }
+
+    /**
+     * Sends the pending searches and stops accepting new ones.
+     */
+    @Override
+    public void close() {
+        batcher.close();
+    }
+
+    private void dispatch(String index, List<RequestBatcher.Pending<MultisearchBody, MultiSearchItem<T>>> batch) {
+        List<RequestItem> searches = batch.stream()
+                .map(pending -> RequestItem.of(r -> r.header(EMPTY_HEADER).body(pending.request())))
+                .toList();
+        MsearchRequest request = MsearchRequest.of(m -> {
+            m.index(index).searches(searches);
+            if (maxConcurrentSearches != null) {
+                m.maxConcurrentSearches(maxConcurrentSearches);
+            }
+            return m;
+        });
+
+        asyncClient.msearch(request, documentClass).whenComplete((response, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                batch.forEach(pending -> pending.future().completeExceptionally(cause));
+                return;
+            }
+            // Responses are returned in the same order as the searches
+            List<MultiSearchResponseItem<T>> responses = response.responses();
+            if (responses.size() != batch.size()) {
+                IllegalStateException mismatch = new IllegalStateException("The _msearch response has [" + responses.size()
+                        + "] responses for [" + batch.size() + "] searches");
+                batch.forEach(pending -> pending.future().completeExceptionally(mismatch));
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                MultiSearchResponseItem<T> item = responses.get(i);
+                if (item.isResult()) {
+                    batch.get(i).future().complete(item.result());
+                } else {
+                    batch.get(i).future().completeExceptionally(new ElasticsearchException("msearch", item.failure()));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects requests submitted concurrently and sends them in batches.
+ * <p>
+ * Requests are grouped by key. A batch is sent when it reaches {@code maxBatchSize} requests
+ * or when {@code window} has elapsed since its first request, whichever comes first.
+ * Each caller gets its own future which is completed by the {@link Dispatcher}.
+ * </p>
+ * <p>
+ * The dispatcher is called either from the thread which filled the batch or from the internal
+ * scheduler thread, so it must not block: it should send the batch asynchronously.
+ * </p>
+ * @param <K> the batch key type
+ * @param <Q> the request type
+ * @param <R> the response type
+ */
+public class RequestBatcher<K, Q, R> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestBatcher.class);
+
+    /**
+     * Sends a batch of requests.
+     * @param <K> the batch key type
+     * @param <Q> the request type
+     * @param <R> the response type
+     */
+    @FunctionalInterface
+    public interface Dispatcher<K, Q, R> {
+        /**
+         * Sends the batch. Every future of the batch must eventually be completed, normally or exceptionally.
+         * If this method throws an exception, all the futures are completed with it.
+         * @param key   the batch key
+         * @param batch the requests to send
+         */
+        void dispatch(K key, List<Pending<Q, R>> batch);
+    }
+
+    /**
+     * A request waiting for its response.
+     * @param request the request
+     * @param future  the future to complete with the response
+     * @param <Q>     the request type
+     * @param <R>     the response type
+     */
+    public record Pending<Q, R>(Q request, CompletableFuture<R> future) {
+    }
+
+    private final String name;
+    private final Dispatcher<K, Q, R> dispatcher;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Map<K, List<Pending<Q, R>>> batches = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * @param name         a name used for the scheduler thread and the logs
+     * @param window       how long we wait for other requests after the first one of a batch
+     * @param maxBatchSize the maximum number of requests in a batch
+     * @param dispatcher   sends the batches
+     */
+    public RequestBatcher(String name, Duration window, int maxBatchSize, Dispatcher<K, Q, R> dispatcher) {
+        Assert.notNull(window, "window must not be null.");
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive.");
+        this.name = name;
+        this.dispatcher = dispatcher;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a request to the current batch for this key.
+     * @param key     the batch key
+     * @param request the request
+     * @return a future completed with the response of this request
+     */
+    public CompletableFuture<R> submit(K key, Q request) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        List<Pending<Q, R>> full = null;
+        synchronized (batches) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException(name + " batcher is closed"));
+                return future;
+            }
+            List<Pending<Q, R>> batch = batches.get(key);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.put(key, batch);
+                List<Pending<Q, R>> scheduled = batch;
+                scheduler.schedule(() -> flush(key, scheduled), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            batch.add(new Pending<>(request, future));
+            if (batch.size() >= maxBatchSize) {
+                batches.remove(key);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            send(key, full);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the pending batches and stops accepting new requests.
+     */
+    @Override
+    public void close() {
+        Map<K, List<Pending<Q, R>>> remaining;
+        synchronized (batches) {
+            closed = true;
+            remaining = new HashMap<>(batches);
+            batches.clear();
+        }
+        remaining.forEach(this::send);
+        scheduler.shutdown();
+    }
+
+    private void flush(K key, List<Pending<Q, R>> batch) {
+        synchronized (batches) {
+            // The batch might have been sent already because it was full
+            if (batches.get(key) != batch) {
+                return;
+            }
+            batches.remove(key);
+        }
+        send(key, batch);
+    }
+
+    private void send(K key, List<Pending<Q, R>> batch) {
+        logger.trace("Sending a batch of {} requests for [{}] in {}", batch.size(), key, name);
+        try {
+            dispatcher.dispatch(key, batch);
+        } catch (Exception e) {
+            logger.debug("Can not send a batch of {} requests in {}: {}", batch.size(), name, e.getMessage());
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        }
+    }
+}
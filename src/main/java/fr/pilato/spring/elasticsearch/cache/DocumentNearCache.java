@@ -0,0 +1,286 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.cache;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import fr.pilato.spring.elasticsearch.batch.DocumentFailureException;
+import fr.pilato.spring.elasticsearch.transport.WriteListener;
+import fr.pilato.spring.elasticsearch.transport.WriteNotifyingTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A near cache for documents read by id.
+ * <p>
+ * Documents are kept locally with their {@code _seq_no} and {@code _primary_term}. Within the
+ * {@code staleness} bound, a document is served from the cache without any network call. After
+ * that, the cached documents are revalidated with a {@code _mget} request which does not fetch the
+ * {@code _source}: only the documents which have been modified since are fetched again.
+ * </p>
+ * <pre>
+ * {@code
+ * try (DocumentNearCache<Country> countries = new DocumentNearCache<>(client, Country.class, Duration.ofSeconds(10), 10_000)) {
+ *     Country france = countries.get("countries", "FR");
+ *     Map<String, Country> europe = countries.get("countries", List.of("FR", "DE", "IT"));
+ * }
+ * }
+ * </pre>
+ * <p>
+ * When the client has been built by the factory, the writes made with this client evict the
+ * written documents from the cache. The writes made by other clients are seen at the next
+ * revalidation, so at most {@code staleness} after. Closing the cache stops listening to the writes.
+ * </p>
+ * <p>
+ * The cached documents are shared between the callers, so they must not be modified.
+ * </p>
+ * @param <T> the document class
+ */
+public class DocumentNearCache<T> implements WriteListener, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentNearCache.class);
+
+    /**
+     * Cache statistics.
+     * @param hits          number of documents served from the cache without any network call
+     * @param revalidations number of documents served from the cache after a version check
+     * @param misses        number of documents fetched from Elasticsearch
+     * @param entries       current number of entries
+     */
+    public record Stats(long hits, long revalidations, long misses, int entries) {
+    }
+
+    private record DocumentId(String index, String id) {
+    }
+
+    private record Entry<T>(T source, boolean found, Long seqNo, Long primaryTerm, long freshUntil) {
+        boolean sameVersion(GetResult<?> result) {
+            return found == result.found() &&
+                    Objects.equals(seqNo, result.seqNo()) && Objects.equals(primaryTerm, result.primaryTerm());
+        }
+    }
+
+    private final ElasticsearchClient client;
+    private final Class<T> documentClass;
+    private final long stalenessNanos;
+    private final int maxEntries;
+    private final WriteNotifyingTransport transport;
+
+    private final LinkedHashMap<DocumentId, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong writes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param client        the client built by the factory
+     * @param documentClass the document class
+     * @param staleness     how long a document is served without checking its version
+     * @param maxEntries    the maximum number of documents kept in the cache
+     */
+    public DocumentNearCache(ElasticsearchClient client, Class<T> documentClass, Duration staleness, int maxEntries) {
+        Assert.notNull(staleness, "staleness must not be null.");
+        Assert.isTrue(maxEntries > 0, "maxEntries must be positive.");
+        this.client = client;
+        this.documentClass = documentClass;
+        this.stalenessNanos = staleness.toNanos();
+        this.maxEntries = maxEntries;
+
+        this.transport = WriteNotifyingTransport.find(client._transport());
+        if (transport != null) {
+            transport.addListener(this);
+        } else {
+            logger.warn("The client has not been built by the factory. The writes will only be seen after [{}].", staleness);
+        }
+    }
+
+    /**
+     * Gets a document by its id.
+     * @param index the index name
+     * @param id    the document id
+     * @return the document or null if it does not exist
+     * @throws DocumentFailureException if the document can not be fetched
+     */
+    public T get(String index, String id) throws IOException {
+        return get(index, List.of(id)).get(id);
+    }
+
+    /**
+     * Gets documents by their ids.
+     * @param index the index name
+     * @param ids   the document ids
+     * @return the existing documents by id, in the same order as the ids
+     * @throws DocumentFailureException if one of the documents can not be fetched
+     */
+    public Map<String, T> get(String index, Collection<String> ids) throws IOException {
+        long writesBefore = writes.get();
+        long now = System.nanoTime();
+        Map<String, Entry<T>> resolved = new HashMap<>();
+        Map<String, Entry<T>> stale = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        synchronized (entries) {
+            for (String id : ids) {
+                Entry<T> entry = entries.get(new DocumentId(index, id));
+                if (entry == null) {
+                    missing.add(id);
+                } else if (entry.freshUntil() - now > 0) {
+                    hits.increment();
+                    resolved.put(id, entry);
+                } else {
+                    stale.put(id, entry);
+                }
+            }
+        }
+
+        if (!stale.isEmpty()) {
+            // Only check the versions of the cached documents
+            List<MultiGetResponseItem<Void>> items = mget(index, stale.keySet(), false, Void.class);
+            for (MultiGetResponseItem<Void> item : items) {
+                GetResult<Void> result = result(item);
+                Entry<T> entry = stale.get(result.id());
+                if (entry.sameVersion(result)) {
+                    revalidations.increment();
+                    entry = new Entry<>(entry.source(), entry.found(), entry.seqNo(), entry.primaryTerm(), 0);
+                    resolved.put(result.id(), store(index, result.id(), entry, writesBefore));
+                } else {
+                    missing.add(result.id());
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<MultiGetResponseItem<T>> items = mget(index, missing, true, documentClass);
+            for (MultiGetResponseItem<T> item : items) {
+                GetResult<T> result = result(item);
+                misses.increment();
+                Entry<T> entry = new Entry<>(result.source(), result.found(), result.seqNo(), result.primaryTerm(), 0);
+                resolved.put(result.id(), store(index, result.id(), entry, writesBefore));
+            }
+        }
+
+        Map<String, T> documents = new LinkedHashMap<>();
+        for (String id : ids) {
+            Entry<T> entry = resolved.get(id);
+            if (entry != null && entry.found()) {
+                documents.put(id, entry.source());
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Removes all the documents.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Stops listening to the writes of the client and removes all the documents.
+     */
+    @Override
+    public void close() {
+        if (transport != null) {
+            transport.removeListener(this);
+        }
+        clear();
+    }
+
+    /**
+     * @return the statistics of the cache
+     */
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.sum(), revalidations.sum(), misses.sum(), entries.size());
+        }
+    }
+
+    @Override
+    public void onWrite(String index, String id) {
+        writes.incrementAndGet();
+        synchronized (entries) {
+            if (index == null) {
+                entries.clear();
+            } else if (id != null) {
+                entries.remove(new DocumentId(index, id));
+            } else {
+                entries.keySet().removeIf(key -> key.index().equals(index) ||
+                        PatternMatchUtils.simpleMatch(index, key.index()) ||
+                        PatternMatchUtils.simpleMatch(key.index(), index));
+            }
+        }
+    }
+
+    private <R> List<MultiGetResponseItem<R>> mget(String index, Collection<String> ids, boolean source,
+                                                   Class<R> resultClass) throws IOException {
+        MgetRequest request = MgetRequest.of(m -> m
+                .index(index)
+                .ids(new ArrayList<>(ids))
+                .source(s -> s.fetch(source)));
+        return client.mget(request, resultClass).docs();
+    }
+
+    private static <R> GetResult<R> result(MultiGetResponseItem<R> item) {
+        if (item.isFailure()) {
+            throw new DocumentFailureException(item.failure());
+        }
+        return item.result();
+    }
+
+    private Entry<T> store(String index, String id, Entry<T> entry, long writesBefore) {
+        synchronized (entries) {
+            // Checked under the lock: a concurrent write either is seen here or evicts the entry after
+            long now = System.nanoTime();
+            long freshUntil = writes.get() == writesBefore ? now + stalenessNanos : now;
+            Entry<T> stored = new Entry<>(entry.source(), entry.found(), entry.seqNo(), entry.primaryTerm(), freshUntil);
+            entries.put(new DocumentId(index, id), stored);
+
+            // Evict the least recently used entries
+            Iterator<DocumentId> lru = entries.keySet().iterator();
+            while (entries.size() > maxEntries && lru.hasNext()) {
+                lru.next();
+                lru.remove();
+            }
+            return stored;
+        }
+    }
+}
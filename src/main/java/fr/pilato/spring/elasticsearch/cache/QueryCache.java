@@ -0,0 +1,538 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.cache;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.CountRequest;
+import co.elastic.clients.elasticsearch.core.CountResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpSerializable;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+import fr.pilato.spring.elasticsearch.transport.CallRegistry;
+import fr.pilato.spring.elasticsearch.transport.WriteListener;
+import jakarta.json.stream.JsonGenerator;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A client side cache for search and count responses.
+ * <p>
+ * Responses are cached by request (see {@link RequestKeys}) and document class, in a LRU cache
+ * bounded by a number of entries and by an estimated size in bytes. Each entry expires after a
+ * time to live which can be defined per index.
+ * </p>
+ * <p>
+ * When the cache is given to the factory with
+ * {@link fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean#setQueryCache(QueryCache)},
+ * every write made through the factory's client (index, bulk, delete, update by query...) on an
+ * index evicts the entries reading this index. As Elasticsearch only makes the changes visible after
+ * a refresh, the responses read within {@code refreshInterval} after a write on the same index are
+ * not cached.
+ * </p>
+ * <pre>
+ * {@code
+ * QueryCache cache = new QueryCache.Builder()
+ *         .maxEntries(1000)
+ *         .defaultTtl(Duration.ofSeconds(30))
+ *         .ttl("dashboards", Duration.ofMinutes(5))
+ *         .build();
+ * factory.setQueryCache(cache);
+ * factory.afterPropertiesSet();
+ * SearchResponse<Void> response = cache.search(SearchRequest.of(s -> s.index("dashboards").size(0)
+ *         .aggregations("by_day", a -> a.dateHistogram(h -> h.field("date").calendarInterval(CalendarInterval.Day)))),
+ *         Void.class);
+ * }
+ * </pre>
+ * <p>
+ * Writes made by other clients are not seen: they are only visible once the entries expire.
+ * Writes are matched with the entries by index name or pattern, so when writing to an alias
+ * and reading from the concrete index (or the opposite), rely on the time to live.
+ * </p>
+ * <p>
+ * The size of an entry is the {@code Content-Length} of its HTTP response. When it is not known, for
+ * example with a shared low level client which the factory does not instrument, the response is
+ * serialized again to count its bytes.
+ * </p>
+ * <p>
+ * The cached responses are shared between the callers, so they must not be modified.
+ * </p>
+ */
+public class QueryCache implements WriteListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryCache.class);
+
+    private static final String ALL = "*";
+
+    /**
+     * Header used to find the cached call of an HTTP request. It is never sent to Elasticsearch.
+     */
+    static final String CALL_HEADER = "X-Spring-Elasticsearch-Cache";
+
+    /**
+     * Cache statistics.
+     * @param hits      number of responses served from the cache
+     * @param misses    number of responses fetched from Elasticsearch
+     * @param evictions number of entries removed because of the size limits or a write
+     * @param entries   current number of entries
+     * @param bytes     current estimated size of the entries in bytes
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {
+    }
+
+    private record Entry(Object value, List<String> targets, long bytes, long expiresAt) {
+    }
+
+    /**
+     * Runs a request with the client given to the cache.
+     */
+    @FunctionalInterface
+    private interface Fetch<V> {
+        V fetch(ElasticsearchClient client) throws IOException;
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long defaultTtlNanos;
+    private final Map<String, Long> ttlNanos;
+    private final long refreshIntervalNanos;
+    private final long writesRetentionNanos;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysByTarget = new HashMap<>();
+    private long bytes;
+
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final AtomicLong nextWritesPruning = new AtomicLong(System.nanoTime());
+    private final SingleFlight<String, Object> flights = new SingleFlight<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // The Content-Length of the response of each call
+    private final CallRegistry<AtomicLong> calls = new CallRegistry<>(CALL_HEADER);
+    private volatile boolean instrumented;
+
+    private volatile ElasticsearchClient client;
+    private volatile JsonpMapper mapper;
+
+    private QueryCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.maxBytes = builder.maxBytes;
+        this.defaultTtlNanos = builder.defaultTtl.toNanos();
+        this.ttlNanos = new HashMap<>();
+        builder.ttls.forEach((index, ttl) -> ttlNanos.put(index, ttl.toNanos()));
+        this.refreshIntervalNanos = builder.refreshInterval.toNanos();
+        // A write older than any time to live can not prevent a response from being cached
+        long retention = Math.max(defaultTtlNanos, refreshIntervalNanos);
+        for (long ttl : ttlNanos.values()) {
+            retention = Math.max(retention, ttl);
+        }
+        this.writesRetentionNanos = retention;
+    }
+
+    /**
+     * Define the client used to run the requests. This is done by the factory.
+     * @param client the client
+     */
+    public void attach(ElasticsearchClient client) {
+        this.client = client;
+        this.mapper = client._transport().jsonpMapper();
+    }
+
+    /**
+     * Instruments the HTTP client to read the size of the responses. This is done by the factory.
+     * @param builder the HTTP client builder
+     */
+    public void instrument(HttpAsyncClientBuilder builder) {
+        instrumented = true;
+        builder.addInterceptorLast((HttpRequestInterceptor) calls::attach);
+        builder.addInterceptorFirst((HttpResponse response, HttpContext context) -> {
+            AtomicLong length = calls.find(context);
+            if (length != null && response.getEntity() != null) {
+                length.set(response.getEntity().getContentLength());
+            }
+        });
+    }
+
+    /**
+     * Runs a search request, or gets its response from the cache.
+     * @param request       the search request
+     * @param documentClass the class of the documents
+     * @return the response, which must not be modified
+     * @param <T> the document class
+     * @throws IOException if the request fails
+     */
+    public <T> SearchResponse<T> search(SearchRequest request, Class<T> documentClass) throws IOException {
+        return cached(documentClass.getName(), SearchRequest._ENDPOINT, request, request.index(),
+                c -> c.search(request, documentClass));
+    }
+
+    /**
+     * Runs a count request, or gets its response from the cache.
+     * @param request       the count request
+     * @return the response
+     * @throws IOException if the request fails
+     */
+    public CountResponse count(CountRequest request) throws IOException {
+        return cached("", CountRequest._ENDPOINT, request, request.index(), c -> c.count(request));
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            keysByTarget.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @return the statistics of the cache
+     */
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes);
+        }
+    }
+
+    /**
+     * Entries are evicted by index, so a bulk request only calls {@link #onWrite(String, String)}
+     * once per index.
+     */
+    @Override
+    public boolean documentWrites() {
+        return false;
+    }
+
+    @Override
+    public void onWrite(String index, String id) {
+        String written = index == null ? ALL : index;
+        long now = System.nanoTime();
+        lastWrites.put(written, now);
+        pruneWrites(now);
+        synchronized (entries) {
+            Set<String> stale = new HashSet<>();
+            keysByTarget.forEach((target, keys) -> {
+                if (overlaps(target, written)) {
+                    stale.addAll(keys);
+                }
+            });
+            for (String key : stale) {
+                if (entries.containsKey(key)) {
+                    remove(key);
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R, V> V cached(String prefix, Endpoint<R, ?, ?> endpoint, R request, List<String> indices,
+                            Fetch<V> fetch) throws IOException {
+        String key = prefix + " " + RequestKeys.key(endpoint, request, mapper());
+        Entry entry = lookup(key);
+        if (entry != null) {
+            hits.increment();
+            return (V) entry.value();
+        }
+        misses.increment();
+        // Concurrent misses for the same request only send one request
+        return (V) flights.execute(key, () -> {
+            long start = System.nanoTime();
+            AtomicLong length = new AtomicLong(-1);
+            V value = instrumented ? fetch(fetch, length) : fetch.fetch(client());
+            store(key, indices.isEmpty() ? List.of(ALL) : indices, value, length.get(), start);
+            return value;
+        });
+    }
+
+    /**
+     * Runs a request with the header which lets the HTTP interceptor read the size of its response.
+     */
+    private <V> V fetch(Fetch<V> fetch, AtomicLong length) throws IOException {
+        String callId = calls.register(length);
+        try {
+            ElasticsearchClient c = client();
+            TransportOptions options = c._transportOptions() != null ? c._transportOptions() : c._transport().options();
+            return fetch.fetch(c.withTransportOptions(calls.withCall(options, callId).build()));
+        } finally {
+            calls.unregister(callId);
+        }
+    }
+
+    private Entry lookup(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() - System.nanoTime() < 0) {
+                remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void store(String key, List<String> targets, Object value, long contentLength, long start) {
+        long size = contentLength >= 0 ? contentLength : estimateSize(value);
+        if (size > maxBytes) {
+            logger.trace("Not caching [{}] as it is bigger than the cache", key);
+            return;
+        }
+        long ttl = ttl(targets);
+
+        synchronized (entries) {
+            // Checked under the lock: a concurrent write either is seen here or evicts the entry after
+            if (writtenSince(targets, start - refreshIntervalNanos)) {
+                logger.trace("Not caching [{}] as the indices have been written recently", key);
+                return;
+            }
+            remove(key);
+            entries.put(key, new Entry(value, targets, size, System.nanoTime() + ttl));
+            for (String target : targets) {
+                keysByTarget.computeIfAbsent(target, t -> new HashSet<>()).add(key);
+            }
+            bytes += size;
+
+            // Evict the least recently used entries
+            Iterator<Map.Entry<String, Entry>> lru = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && lru.hasNext()) {
+                Map.Entry<String, Entry> eldest = lru.next();
+                lru.remove();
+                bytes -= eldest.getValue().bytes();
+                evictions.increment();
+                unindex(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    /**
+     * The shortest time to live of the targets, each target using the default one if it has none.
+     */
+    private long ttl(List<String> targets) {
+        long ttl = Long.MAX_VALUE;
+        for (String target : targets) {
+            ttl = Math.min(ttl, ttlNanos.getOrDefault(target, defaultTtlNanos));
+        }
+        return ttl;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes();
+            unindex(key, entry);
+        }
+    }
+
+    private void unindex(String key, Entry entry) {
+        for (String target : entry.targets()) {
+            Set<String> keys = keysByTarget.get(target);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTarget.remove(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the writes older than the longest time to live, at most once per time to live.
+     */
+    private void pruneWrites(long now) {
+        long next = nextWritesPruning.get();
+        if (now - next < 0 || !nextWritesPruning.compareAndSet(next, now + writesRetentionNanos)) {
+            return;
+        }
+        lastWrites.values().removeIf(time -> now - time > writesRetentionNanos);
+    }
+
+    private boolean writtenSince(List<String> targets, long since) {
+        for (Map.Entry<String, Long> write : lastWrites.entrySet()) {
+            if (write.getValue() - since > 0) {
+                for (String target : targets) {
+                    if (overlaps(target, write.getKey())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean overlaps(String target, String written) {
+        return ALL.equals(target) || ALL.equals(written) ||
+                PatternMatchUtils.simpleMatch(target, written) || PatternMatchUtils.simpleMatch(written, target);
+    }
+
+    private long estimateSize(Object value) {
+        if (value instanceof JsonpSerializable serializable) {
+            CountingWriter writer = new CountingWriter();
+            try (JsonGenerator generator = mapper().jsonProvider().createGenerator(writer)) {
+                serializable.serialize(generator, mapper());
+            }
+            return writer.count;
+        }
+        return 1024;
+    }
+
+    private ElasticsearchClient client() {
+        Assert.state(client != null, "The query cache must be given to the factory before being used.");
+        return client;
+    }
+
+    private JsonpMapper mapper() {
+        client();
+        return mapper;
+    }
+
+    /**
+     * Counts the UTF-8 bytes of the characters written.
+     */
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(buffer[i]);
+            }
+        }
+
+        @Override
+        public void write(int c) {
+            if (c < 0x80) {
+                count++;
+            } else if (c < 0x800 || Character.isSurrogate((char) c)) {
+                // A surrogate pair is 4 bytes
+                count += 2;
+            } else {
+                count += 3;
+            }
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Builder for {@link QueryCache}.
+     */
+    public static class Builder {
+        private int maxEntries = 10_000;
+        private long maxBytes = 64 * 1024 * 1024;
+        private Duration defaultTtl = Duration.ofMinutes(1);
+        private final Map<String, Duration> ttls = new HashMap<>();
+        private Duration refreshInterval = Duration.ofSeconds(1);
+
+        /**
+         * @param maxEntries the maximum number of entries. Defaults to 10000.
+         * @return this builder
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxBytes the maximum estimated size of the entries. Defaults to 64mb.
+         * @return this builder
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param defaultTtl the time to live of the entries. Defaults to 1 minute.
+         * @return this builder
+         */
+        public Builder defaultTtl(Duration defaultTtl) {
+            this.defaultTtl = defaultTtl;
+            return this;
+        }
+
+        /**
+         * @param index the index name, as used in the requests
+         * @param ttl   the time to live of the entries reading this index
+         * @return this builder
+         */
+        public Builder ttl(String index, Duration ttl) {
+            this.ttls.put(index, ttl);
+            return this;
+        }
+
+        /**
+         * @param refreshInterval the refresh interval of the indices. Responses read within this interval
+         *                        after a write are not cached. Defaults to 1s like Elasticsearch.
+         * @return this builder
+         */
+        public Builder refreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        public QueryCache build() {
+            Assert.isTrue(maxEntries > 0, "maxEntries must be positive.");
+            Assert.isTrue(maxBytes > 0, "maxBytes must be positive.");
+            Assert.notNull(defaultTtl, "defaultTtl must not be null.");
+            Assert.notNull(refreshInterval, "refreshInterval must not be null.");
+            return new QueryCache(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.cache;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.CountRequest;
+import co.elastic.clients.elasticsearch.core.CountResponse;
+import co.elastic.clients.elasticsearch.core.GetRequest;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpMapper;
+
+import java.io.IOException;
+
+/**
+ * Deduplicates identical read requests running at the same time.
+ * <p>
+ * When many threads run the exact same search or get at the same moment, only the first one
+ * sends the request to Elasticsearch. The other ones wait for its response and get the same
+ * response object. Requests are considered identical when they have the same
+ * {@link RequestKeys#key key} and the same document class.
+ * </p>
+ * <pre>
+ * {@code
+ * ReadCoalescer reads = new ReadCoalescer(client);
+ * SearchResponse<Product> response = reads.search(SearchRequest.of(s -> s.index("products")
+ *         .query(q -> q.term(t -> t.field("id").value("popular")))), Product.class);
+ * }
+ * </pre>
+ * <p>
+ * Nothing is cached: once the response has been received, the next request is sent again to
+ * Elasticsearch. See {@link QueryCache} to keep the responses for some time.
+ * </p>
+ */
+public class ReadCoalescer {
+
+    private final ElasticsearchClient client;
+    private final JsonpMapper mapper;
+    private final SingleFlight<String, Object> flights = new SingleFlight<>();
+
+    /**
+     * @param client the client built by the factory
+     */
+    public ReadCoalescer(ElasticsearchClient client) {
+        this.client = client;
+        this.mapper = client._transport().jsonpMapper();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> SearchResponse<T> search(SearchRequest request, Class<T> documentClass) throws IOException {
+        String key = documentClass.getName() + " " + RequestKeys.key(SearchRequest._ENDPOINT, request, mapper);
+        return (SearchResponse<T>) flights.execute(key, () -> client.search(request, documentClass));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> GetResponse<T> get(GetRequest request, Class<T> documentClass) throws IOException {
+        String key = documentClass.getName() + " " + RequestKeys.key(GetRequest._ENDPOINT, request, mapper);
+        return (GetResponse<T>) flights.execute(key, () -> client.get(request, documentClass));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> MgetResponse<T> mget(MgetRequest request, Class<T> documentClass) throws IOException {
+        String key = documentClass.getName() + " " + RequestKeys.key(MgetRequest._ENDPOINT, request, mapper);
+        return (MgetResponse<T>) flights.execute(key, () -> client.mget(request, documentClass));
+    }
+
+    public CountResponse count(CountRequest request) throws IOException {
+        String key = RequestKeys.key(CountRequest._ENDPOINT, request, mapper);
+        return (CountResponse) flights.execute(key, () -> client.count(request));
+    }
+
+    /**
+     * @return the number of requests currently sent to Elasticsearch
+     */
+    public int inFlight() {
+        return flights.inFlight();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.cache;
+
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpSerializable;
+import co.elastic.clients.transport.Endpoint;
+import jakarta.json.stream.JsonGenerator;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes a key identifying a request: two requests having the same key would send the same
+ * HTTP request to Elasticsearch.
+ * <p>
+ * The key is made of the HTTP method, the path, the sorted query parameters and the serialized body.
+ * </p>
+ */
+public class RequestKeys {
+
+    private RequestKeys() {
+        // Utility class
+    }
+
+    /**
+     * @param endpoint the endpoint, like {@code SearchRequest._ENDPOINT}
+     * @param request  the request
+     * @param mapper   the mapper used to serialize the body
+     * @param <R>      the request type
+     * @return the key
+     */
+    public static <R> String key(Endpoint<R, ?, ?> endpoint, R request, JsonpMapper mapper) {
+        StringWriter writer = new StringWriter();
+        writer.append(endpoint.method(request)).append(' ').append(endpoint.requestUrl(request));
+
+        Map<String, String> params = endpoint.queryParameters(request);
+        if (!params.isEmpty()) {
+            char separator = '?';
+            for (Map.Entry<String, String> param : new TreeMap<>(params).entrySet()) {
+                writer.append(separator).append(param.getKey()).append('=').append(param.getValue());
+                separator = '&';
+            }
+        }
+
+        if (request instanceof JsonpSerializable body) {
+            writer.append('\n');
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+                body.serialize(generator, mapper);
+            }
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.cache;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes sure that only one call is running at a time for a given key.
+ * <p>
+ * The first caller for a key executes the call. The callers asking for the same key while this
+ * call is running do not execute anything: they wait for the result of the running call.
+ * Once the call is done, the key is released so the next caller executes a new call. Nothing
+ * is cached after the call, so a result is only shared by the callers which asked for it while
+ * it was running. A caller which joins a running call gets a result computed by a call started
+ * before its own, so it might not see a change made just before it asked.
+ * </p>
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * A call which can throw an {@link IOException}, like the Elasticsearch client calls.
+     * @param <V> the value type
+     */
+    @FunctionalInterface
+    public interface IOCall<V> {
+        V call() throws IOException;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Executes the call in the current thread unless the same call is already running.
+     * @param key  the key identifying the call
+     * @param call the call
+     * @return the result of the call
+     * @throws IOException if the call failed
+     */
+    public V execute(K key, IOCall<V> call) throws IOException {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, promise);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            V value = call.call();
+            inFlight.remove(key, promise);
+            promise.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Executes the asynchronous call unless the same call is already running.
+     * @param key  the key identifying the call
+     * @param call the call
+     * @return a future completed with the result of the call
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, promise);
+        if (running != null) {
+            // Callers must not be able to complete the shared future
+            return running.copy();
+        }
+
+        try {
+            call.get().whenComplete((value, e) -> {
+                inFlight.remove(key, promise);
+                if (e != null) {
+                    promise.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                } else {
+                    promise.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise.copy();
+    }
+
+    /**
+     * @return the number of calls currently running
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> running) throws IOException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
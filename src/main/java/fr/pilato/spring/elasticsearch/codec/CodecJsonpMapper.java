@@ -0,0 +1,127 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.codec;
+
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.util.Assert;
+import jakarta.json.stream.JsonGenerator;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link JacksonJsonpMapper} which reads and writes the documents with their generated
+ * {@link DocumentCodec} when there is one, and with Jackson otherwise.
+ * <p>
+ * The factory uses it when codecs are found in the classpath.
+ * </p>
+ * <p>
+ * The codecs only honor the serialization inclusion of the object mapper for null values
+ * ({@code ALWAYS} or {@code NON_NULL}). An object mapper with another inclusion or with a
+ * property naming strategy is rejected, as the codecs would write different documents.
+ * </p>
+ */
+public class CodecJsonpMapper extends JacksonJsonpMapper {
+
+    private final Map<Class<?>, DocumentCodec<?>> codecs;
+
+    /**
+     * @param codecs the codecs
+     */
+    public CodecJsonpMapper(Collection<DocumentCodec<?>> codecs) {
+        this.codecs = new HashMap<>();
+        for (DocumentCodec<?> codec : codecs) {
+            this.codecs.put(codec.type(), codec);
+        }
+    }
+
+    /**
+     * @param objectMapper the object mapper used for the classes without codec
+     * @param codecs       the codecs
+     */
+    public CodecJsonpMapper(ObjectMapper objectMapper, Collection<DocumentCodec<?>> codecs) {
+        this(checked(objectMapper), new HashMap<>());
+        for (DocumentCodec<?> codec : codecs) {
+            this.codecs.put(codec.type(), codec);
+        }
+    }
+
+    private CodecJsonpMapper(ObjectMapper objectMapper, Map<Class<?>, DocumentCodec<?>> codecs) {
+        super(objectMapper);
+        this.codecs = codecs;
+    }
+
+    private static ObjectMapper checked(ObjectMapper objectMapper) {
+        JsonInclude.Include inclusion = objectMapper.getSerializationConfig().getDefaultPropertyInclusion().getValueInclusion();
+        Assert.isTrue(inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS
+                        || inclusion == JsonInclude.Include.NON_NULL || inclusion == JsonInclude.Include.NON_ABSENT,
+                "The document codecs do not support the " + inclusion + " serialization inclusion.");
+        Assert.isNull(objectMapper.getPropertyNamingStrategy(),
+                "The document codecs do not support property naming strategies.");
+        return objectMapper;
+    }
+
+    /**
+     * @param type the document class
+     * @return the codec of this class or null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> DocumentCodec<T> codec(Class<T> type) {
+        return (DocumentCodec<T>) codecs.get(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void serialize(T value, JsonGenerator generator) {
+        DocumentCodec<T> codec = value == null ? null : (DocumentCodec<T>) codecs.get(value.getClass());
+        if (codec != null) {
+            codec.serialize(value, generator, this);
+        } else {
+            super.serialize(value, generator);
+        }
+    }
+
+    /**
+     * Used for every value which is not one of the client classes, whatever the deserialize
+     * method called by the client.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> JsonpDeserializer<T> getDefaultDeserializer(Type type) {
+        if (type instanceof Class<?> documentClass) {
+            DocumentCodec<T> codec = (DocumentCodec<T>) codecs.get(documentClass);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return super.getDefaultDeserializer(type);
+    }
+
+    @Override
+    public <T> JsonpMapper withAttribute(String name, T value) {
+        return new CodecJsonpMapper(objectMapper(), codecs).addAttribute(name, value);
+    }
+}
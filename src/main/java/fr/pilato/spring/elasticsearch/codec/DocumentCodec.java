@@ -0,0 +1,227 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.codec;
+
+import co.elastic.clients.json.JsonpDeserializerBase;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpSerializer;
+import co.elastic.clients.json.jackson.JacksonJsonpGenerator;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpParser;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParsingException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Reads and writes a document class without reflection. The implementations are generated
+ * for the classes annotated with {@link ElasticsearchDocument} and listed in
+ * {@code META-INF/services/fr.pilato.spring.elasticsearch.codec.DocumentCodec}.
+ * <p>
+ * The static methods are used by the generated code.
+ * </p>
+ * @param <T> the document class
+ */
+public abstract class DocumentCodec<T> extends JsonpDeserializerBase<T> implements JsonpSerializer<T> {
+
+    private final Class<T> type;
+
+    protected DocumentCodec(Class<T> type) {
+        super(EnumSet.of(JsonParser.Event.START_OBJECT, JsonParser.Event.VALUE_NULL));
+        this.type = type;
+    }
+
+    @Override
+    public final T deserialize(JsonParser parser, JsonpMapper mapper, JsonParser.Event event) {
+        return event == JsonParser.Event.VALUE_NULL ? null : read(parser, mapper);
+    }
+
+    /**
+     * Reads the fields of a document, after its {@code START_OBJECT} event.
+     * @param parser    the parser
+     * @param mapper    the mapper, for the fields which are not read by the codec
+     * @return the document
+     */
+    protected abstract T read(JsonParser parser, JsonpMapper mapper);
+
+    /**
+     * @return the document class
+     */
+    public Class<T> type() {
+        return type;
+    }
+
+    /**
+     * Finds the generated codecs.
+     * @param classLoader the class loader where the codecs are searched
+     * @return the codecs, may be empty
+     */
+    @SuppressWarnings("rawtypes")
+    public static List<DocumentCodec<?>> load(ClassLoader classLoader) {
+        List<DocumentCodec<?>> codecs = new ArrayList<>();
+        for (DocumentCodec codec : ServiceLoader.load(DocumentCodec.class, classLoader)) {
+            codecs.add(codec);
+        }
+        return codecs;
+    }
+
+    /**
+     * Whether the null fields are written. Like Jackson databind, this depends on the serialization
+     * inclusion of the object mapper: the default mapper of the client does not write them.
+     * @param mapper the mapper
+     * @return true if the null fields are written
+     */
+    protected static boolean writeNulls(JsonpMapper mapper) {
+        if (mapper instanceof JacksonJsonpMapper jackson) {
+            JsonInclude.Include inclusion = jackson.objectMapper().getSerializationConfig()
+                    .getDefaultPropertyInclusion().getValueInclusion();
+            return inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the next value.
+     * @return true if it is null
+     */
+    protected static boolean nextIsNull(JsonParser parser) {
+        return parser.next() == JsonParser.Event.VALUE_NULL;
+    }
+
+    /**
+     * Reads the next value as a boolean.
+     * @return the value or null
+     */
+    protected static Boolean readBoolean(JsonParser parser) {
+        JsonParser.Event event = parser.next();
+        return switch (event) {
+            case VALUE_NULL -> null;
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_STRING -> Boolean.valueOf(parser.getString());
+            default -> throw new JsonParsingException("Expected a boolean but got [" + event + "]", parser.getLocation());
+        };
+    }
+
+    /**
+     * Reads the current value as a float.
+     */
+    protected static float floatValue(JsonParser parser) {
+        if (parser instanceof JacksonJsonpParser jacksonParser) {
+            try {
+                return jacksonParser.jacksonParser().getFloatValue();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return parser.getBigDecimal().floatValue();
+    }
+
+    /**
+     * Reads the current value as a double.
+     */
+    protected static double doubleValue(JsonParser parser) {
+        if (parser instanceof JacksonJsonpParser jacksonParser) {
+            try {
+                return jacksonParser.jacksonParser().getDoubleValue();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return parser.getBigDecimal().doubleValue();
+    }
+
+    /**
+     * Reads the current array of numbers.
+     */
+    protected static float[] floatArrayValue(JsonParser parser) {
+        float[] values = new float[16];
+        int size = 0;
+        while (parser.next() != JsonParser.Event.END_ARRAY) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = floatValue(parser);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Reads the current array of strings.
+     */
+    protected static List<String> stringListValue(JsonParser parser) {
+        List<String> values = new ArrayList<>();
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+            values.add(event == JsonParser.Event.VALUE_NULL ? null : parser.getString());
+        }
+        return values;
+    }
+
+    /**
+     * Writes a float as is, like Jackson does, instead of the longer representation of the
+     * same value as a double.
+     */
+    protected static void writeFloat(JsonGenerator generator, float value) {
+        if (generator instanceof JacksonJsonpGenerator jacksonGenerator) {
+            try {
+                jacksonGenerator.jacksonGenerator().writeNumber(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            generator.write(Double.parseDouble(Float.toString(value)));
+        }
+    }
+
+    /**
+     * Writes an array of floats.
+     */
+    protected static void writeFloats(JsonGenerator generator, float[] values) {
+        generator.writeStartArray();
+        for (float value : values) {
+            writeFloat(generator, value);
+        }
+        generator.writeEnd();
+    }
+
+    /**
+     * Writes a list of strings.
+     */
+    protected static void writeStrings(JsonGenerator generator, List<String> values) {
+        generator.writeStartArray();
+        for (String value : values) {
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                generator.write(value);
+            }
+        }
+        generator.writeEnd();
+    }
+}
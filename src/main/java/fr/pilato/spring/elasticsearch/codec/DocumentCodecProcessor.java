@@ -0,0 +1,623 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.codec;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates the {@link DocumentCodec} of the classes annotated with {@link ElasticsearchDocument}
+ * and lists them in {@code META-INF/services}, where the factory finds them.
+ * <p>
+ * It is declared in the library jar, so it runs when the application is compiled. With Java 23
+ * and later, annotation processing must be enabled with {@code -proc:full} or by declaring
+ * this processor in the compiler configuration.
+ * </p>
+ */
+@SupportedAnnotationTypes("fr.pilato.spring.elasticsearch.codec.ElasticsearchDocument")
+public class DocumentCodecProcessor extends AbstractProcessor {
+
+    static final String SERVICES = "META-INF/services/fr.pilato.spring.elasticsearch.codec.DocumentCodec";
+
+    private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+    private static final String JSON_IGNORE = "com.fasterxml.jackson.annotation.JsonIgnore";
+    private static final String JACKSON_PACKAGE = "com.fasterxml.jackson.";
+
+    /**
+     * How a property is read and written.
+     */
+    private enum Kind {
+        STRING, BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE,
+        BOXED_BOOLEAN, BOXED_BYTE, BOXED_SHORT, BOXED_INT, BOXED_LONG, BOXED_FLOAT, BOXED_DOUBLE,
+        FLOAT_ARRAY, STRING_LIST, OBJECT
+    }
+
+    /**
+     * @param json      the name in the JSON document
+     * @param type      the Java type, as written in the source
+     * @param kind      how it is read and written
+     * @param getter    the expression reading it from {@code document}
+     * @param setter    the method or field setting it, null for a record
+     */
+    private record Property(String json, String type, Kind kind, String getter, String setter, boolean field) {
+    }
+
+    /**
+     * Reported on the element which can not have a codec.
+     */
+    private static class UnsupportedDocumentException extends Exception {
+        private final Element element;
+
+        UnsupportedDocumentException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private final Set<String> codecs = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ElasticsearchDocument.class)) {
+            try {
+                codecs.add(generate(element));
+            } catch (UnsupportedDocumentException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Can not write the codec: " + e.getMessage(), element);
+            }
+        }
+        if (roundEnv.processingOver() && !codecs.isEmpty()) {
+            writeServices();
+        }
+        return true;
+    }
+
+    private String generate(Element element) throws UnsupportedDocumentException, IOException {
+        if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.RECORD) {
+            throw new UnsupportedDocumentException("@ElasticsearchDocument can only be used on a class or a record.", element);
+        }
+        TypeElement type = (TypeElement) element;
+        if (type.getModifiers().contains(Modifier.PRIVATE) || type.getModifiers().contains(Modifier.ABSTRACT)
+                || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)
+                && type.getKind() != ElementKind.RECORD
+                || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            throw new UnsupportedDocumentException("@ElasticsearchDocument needs a concrete top level or static nested class.", type);
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new UnsupportedDocumentException("@ElasticsearchDocument can not be used on a generic class.", type);
+        }
+
+        boolean isRecord = type.getKind() == ElementKind.RECORD;
+        checkJacksonAnnotations(type, isRecord);
+        List<Property> properties = isRecord ? recordProperties(type) : beanProperties(type);
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String simpleName = packageName.isEmpty() ? typeName : typeName.substring(packageName.length() + 1);
+        String codecName = simpleName.replace('.', '_') + "_Codec";
+        String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+            writer.write(source(packageName, typeName, codecName, isRecord, properties));
+        }
+        return qualifiedCodecName;
+    }
+
+    private List<Property> recordProperties(TypeElement type) throws UnsupportedDocumentException {
+        List<Property> properties = new ArrayList<>();
+        for (RecordComponentElement component : type.getRecordComponents()) {
+            // Annotations of a record component are found on the component or on its field
+            VariableElement field = findField(type, component.getSimpleName().toString());
+            if (ignored(component) || field != null && ignored(field)) {
+                throw new UnsupportedDocumentException("A record component can not be ignored.", component);
+            }
+            String json = jsonName(component, field, component.getSimpleName().toString());
+            properties.add(new Property(json, typeName(component.asType()), kind(component.asType(), component),
+                    "document." + component.getSimpleName() + "()", null, false));
+        }
+        return properties;
+    }
+
+    private List<Property> beanProperties(TypeElement type) throws UnsupportedDocumentException {
+        boolean hasConstructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+                .anyMatch(c -> c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC));
+        if (!hasConstructor) {
+            throw new UnsupportedDocumentException("@ElasticsearchDocument needs a public no-arg constructor.", type);
+        }
+        List<ExecutableElement> methods = new ArrayList<>();
+        List<VariableElement> fields = new ArrayList<>();
+        for (TypeElement current = type; current != null && !current.getQualifiedName().contentEquals("java.lang.Object");
+             current = superclass(current)) {
+            methods.addAll(ElementFilter.methodsIn(current.getEnclosedElements()));
+            // Fields of the superclasses first, like Jackson
+            fields.addAll(0, ElementFilter.fieldsIn(current.getEnclosedElements()));
+        }
+
+        List<Property> properties = new ArrayList<>();
+        Set<String> fieldGetters = new HashSet<>();
+        for (VariableElement field : fields) {
+            Set<Modifier> modifiers = field.getModifiers();
+            String name = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            // Jackson ignores the getters of an ignored field too
+            fieldGetters.add("get" + capitalized);
+            fieldGetters.add("is" + capitalized);
+            if (ignored(field)) {
+                continue;
+            }
+            TypeMirror fieldType = field.asType();
+            String getter = findMethod(methods, "get" + capitalized, null);
+            if (getter == null && fieldType.getKind() == TypeKind.BOOLEAN) {
+                getter = findMethod(methods, "is" + capitalized, null);
+            }
+            String setter = findMethod(methods, "set" + capitalized, fieldType);
+            boolean publicField = modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.FINAL);
+            if ((getter == null || setter == null) && !publicField) {
+                throw new UnsupportedDocumentException("@ElasticsearchDocument needs a public getter and setter for ["
+                        + name + "].", field);
+            }
+            String json = jsonName(field, null, name);
+            boolean useField = getter == null || setter == null;
+            properties.add(new Property(json, typeName(fieldType), kind(fieldType, field),
+                    useField ? "document." + name : "document." + getter + "()",
+                    useField ? name : setter, useField));
+        }
+        checkGetters(methods, fieldGetters);
+        return properties;
+    }
+
+    /**
+     * Fails on the public getters without a field, like a computed {@code getFullName()}, or with a
+     * transient field: Jackson writes them, but the codec only writes the fields.
+     */
+    private void checkGetters(List<ExecutableElement> methods, Set<String> fieldGetters) throws UnsupportedDocumentException {
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            boolean getter = name.startsWith("get") && name.length() > 3 && method.getReturnType().getKind() != TypeKind.VOID
+                    || name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN;
+            if (getter && method.getParameters().isEmpty() && method.getModifiers().contains(Modifier.PUBLIC)
+                    && !method.getModifiers().contains(Modifier.STATIC) && !fieldGetters.contains(name)) {
+                throw new UnsupportedDocumentException("@ElasticsearchDocument only writes the fields, but Jackson would"
+                        + " also write the getter [" + name + "]. Remove it or remove @ElasticsearchDocument to use"
+                        + " Jackson databind for this class.", method);
+            }
+        }
+    }
+
+    /**
+     * Fails on the Jackson annotations which are not honored by the codecs, like {@code @JsonInclude}
+     * or {@code @JsonFormat}, as the codec would silently write a different document than Jackson.
+     * {@code @JsonProperty} (only with a name) and {@code @JsonIgnore} are supported on the fields,
+     * and on the record components, which give them to their accessor and constructor parameter.
+     */
+    private void checkJacksonAnnotations(TypeElement type, boolean isRecord) throws UnsupportedDocumentException {
+        for (TypeElement current = type; current != null && !current.getQualifiedName().contentEquals("java.lang.Object");
+             current = superclass(current)) {
+            checkElementAnnotations(current, false);
+            for (Element enclosed : current.getEnclosedElements()) {
+                if (enclosed.getKind().isClass() || enclosed.getKind().isInterface()) {
+                    continue;
+                }
+                boolean property = enclosed.getKind() == ElementKind.FIELD
+                        || enclosed.getKind() == ElementKind.RECORD_COMPONENT || isRecord;
+                checkElementAnnotations(enclosed, property);
+                if (enclosed instanceof ExecutableElement executable) {
+                    for (VariableElement parameter : executable.getParameters()) {
+                        checkElementAnnotations(parameter, isRecord);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkElementAnnotations(Element element, boolean property) throws UnsupportedDocumentException {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            String name = annotation.getQualifiedName().toString();
+            if (!name.startsWith(JACKSON_PACKAGE)) {
+                continue;
+            }
+            boolean supported = property && (name.equals(JSON_IGNORE) || name.equals(JSON_PROPERTY)
+                    && mirror.getElementValues().keySet().stream().allMatch(e -> e.getSimpleName().contentEquals("value")));
+            if (!supported) {
+                throw new UnsupportedDocumentException("@" + annotation.getSimpleName() + " is not supported by"
+                        + " @ElasticsearchDocument. Remove @ElasticsearchDocument to use Jackson databind for this class.",
+                        element);
+            }
+        }
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private VariableElement findField(TypeElement type, String name) {
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getSimpleName().contentEquals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private String findMethod(List<ExecutableElement> methods, String name, TypeMirror parameter) {
+        for (ExecutableElement method : methods) {
+            if (!method.getSimpleName().contentEquals(name) || !method.getModifiers().contains(Modifier.PUBLIC)
+                    || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            if (parameter == null && method.getParameters().isEmpty()
+                    || parameter != null && method.getParameters().size() == 1
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), parameter)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private boolean ignored(Element element) {
+        AnnotationMirror ignore = annotation(element, JSON_IGNORE);
+        if (ignore == null) {
+            return false;
+        }
+        AnnotationValue value = annotationValue(ignore, "value");
+        return value == null || Boolean.TRUE.equals(value.getValue());
+    }
+
+    private String jsonName(Element element, Element other, String defaultName) {
+        for (Element candidate : new Element[]{element, other}) {
+            AnnotationMirror property = candidate == null ? null : annotation(candidate, JSON_PROPERTY);
+            AnnotationValue value = property == null ? null : annotationValue(property, "value");
+            if (value != null && !value.getValue().toString().isEmpty()) {
+                return value.getValue().toString();
+            }
+        }
+        return defaultName;
+    }
+
+    private AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationValue annotationValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Kind kind(TypeMirror type, Element element) throws UnsupportedDocumentException {
+        switch (type.getKind()) {
+            case BOOLEAN: return Kind.BOOLEAN;
+            case BYTE: return Kind.BYTE;
+            case SHORT: return Kind.SHORT;
+            case INT: return Kind.INT;
+            case LONG: return Kind.LONG;
+            case FLOAT: return Kind.FLOAT;
+            case DOUBLE: return Kind.DOUBLE;
+            case ARRAY:
+                return type.toString().equals("float[]") ? Kind.FLOAT_ARRAY : Kind.OBJECT;
+            case DECLARED:
+                break;
+            default:
+                throw new UnsupportedDocumentException("Type [" + type + "] is not supported by @ElasticsearchDocument.", element);
+        }
+        DeclaredType declared = (DeclaredType) type;
+        String name = ((TypeElement) declared.asElement()).getQualifiedName().toString();
+        if (!declared.getTypeArguments().isEmpty()) {
+            if (name.equals("java.util.List") && declared.getTypeArguments().get(0).toString().equals("java.lang.String")) {
+                return Kind.STRING_LIST;
+            }
+            throw new UnsupportedDocumentException("Generic type [" + type + "] is not supported by @ElasticsearchDocument.", element);
+        }
+        return switch (name) {
+            case "java.lang.String" -> Kind.STRING;
+            case "java.lang.Boolean" -> Kind.BOXED_BOOLEAN;
+            case "java.lang.Byte" -> Kind.BOXED_BYTE;
+            case "java.lang.Short" -> Kind.BOXED_SHORT;
+            case "java.lang.Integer" -> Kind.BOXED_INT;
+            case "java.lang.Long" -> Kind.BOXED_LONG;
+            case "java.lang.Float" -> Kind.BOXED_FLOAT;
+            case "java.lang.Double" -> Kind.BOXED_DOUBLE;
+            default -> Kind.OBJECT;
+        };
+    }
+
+    private String typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            // Without the annotations on the type use, which toString() keeps
+            DeclaredType declared = (DeclaredType) type;
+            String name = ((TypeElement) declared.asElement()).getQualifiedName().toString();
+            if (declared.getTypeArguments().isEmpty()) {
+                return name;
+            }
+            List<String> arguments = new ArrayList<>();
+            for (TypeMirror argument : declared.getTypeArguments()) {
+                arguments.add(typeName(argument));
+            }
+            return name + "<" + String.join(", ", arguments) + ">";
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String source(String packageName, String typeName, String codecName, boolean isRecord, List<Property> properties) {
+        StringBuilder java = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            java.append("package ").append(packageName).append(";\n\n");
+        }
+        java.append("@javax.annotation.processing.Generated(\"").append(DocumentCodecProcessor.class.getName()).append("\")\n");
+        java.append("public final class ").append(codecName)
+                .append(" extends fr.pilato.spring.elasticsearch.codec.DocumentCodec<").append(typeName).append("> {\n\n");
+        java.append("    public ").append(codecName).append("() {\n");
+        java.append("        super(").append(typeName).append(".class);\n");
+        java.append("    }\n\n");
+
+        // Serialization
+        java.append("    @Override\n");
+        java.append("    public void serialize(").append(typeName).append(" document, jakarta.json.stream.JsonGenerator generator, ")
+                .append("co.elastic.clients.json.JsonpMapper mapper) {\n");
+        java.append("        boolean nulls = writeNulls(mapper);\n");
+        java.append("        generator.writeStartObject();\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String key = literal(property.json());
+            String value = "value" + i;
+            switch (property.kind()) {
+                case BOOLEAN, BYTE, SHORT, INT, LONG, DOUBLE ->
+                        java.append("        generator.write(").append(key).append(", ").append(property.getter()).append(");\n");
+                case FLOAT -> java.append("        generator.writeKey(").append(key).append(");\n")
+                        .append("        writeFloat(generator, ").append(property.getter()).append(");\n");
+                default -> {
+                    java.append("        ").append(property.type()).append(" ").append(value).append(" = ")
+                            .append(property.getter()).append(";\n");
+                    java.append("        if (").append(value).append(" != null) {\n");
+                    java.append("            ").append(writeValue(property, key, value)).append("\n");
+                    java.append("        } else if (nulls) {\n");
+                    java.append("            generator.writeNull(").append(key).append(");\n");
+                    java.append("        }\n");
+                }
+            }
+        }
+        java.append("        generator.writeEnd();\n");
+        java.append("    }\n\n");
+
+        // Deserialization
+        java.append("    @Override\n");
+        java.append("    protected ").append(typeName).append(" read(jakarta.json.stream.JsonParser parser, ")
+                .append("co.elastic.clients.json.JsonpMapper mapper) {\n");
+        if (isRecord) {
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                java.append("        ").append(property.type()).append(" value").append(i).append(" = ")
+                        .append(defaultValue(property.kind())).append(";\n");
+            }
+        } else {
+            java.append("        ").append(typeName).append(" document = new ").append(typeName).append("();\n");
+        }
+        java.append("        while (parser.next() != jakarta.json.stream.JsonParser.Event.END_OBJECT) {\n");
+        java.append("            switch (parser.getString()) {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            java.append("                case ").append(literal(property.json())).append(" -> {\n");
+            String target = isRecord ? "value" + i : null;
+            java.append(readValue(property, target));
+            java.append("                }\n");
+        }
+        java.append("                default -> co.elastic.clients.json.JsonpUtils.skipValue(parser);\n");
+        java.append("            }\n");
+        java.append("        }\n");
+        if (isRecord) {
+            List<String> arguments = new ArrayList<>();
+            for (int i = 0; i < properties.size(); i++) {
+                arguments.add("value" + i);
+            }
+            java.append("        return new ").append(typeName).append("(").append(String.join(", ", arguments)).append(");\n");
+        } else {
+            java.append("        return document;\n");
+        }
+        java.append("    }\n");
+        java.append("}\n");
+        return java.toString();
+    }
+
+    private static String writeValue(Property property, String key, String value) {
+        return switch (property.kind()) {
+            case STRING -> "generator.write(" + key + ", " + value + ");";
+            case BOXED_BOOLEAN -> "generator.write(" + key + ", " + value + ".booleanValue());";
+            case BOXED_BYTE, BOXED_SHORT, BOXED_INT -> "generator.write(" + key + ", " + value + ".intValue());";
+            case BOXED_LONG -> "generator.write(" + key + ", " + value + ".longValue());";
+            case BOXED_DOUBLE -> "generator.write(" + key + ", " + value + ".doubleValue());";
+            case BOXED_FLOAT -> "generator.writeKey(" + key + ");\n            writeFloat(generator, " + value + ".floatValue());";
+            case FLOAT_ARRAY -> "generator.writeKey(" + key + ");\n            writeFloats(generator, " + value + ");";
+            case STRING_LIST -> "generator.writeKey(" + key + ");\n            writeStrings(generator, " + value + ");";
+            default -> "generator.writeKey(" + key + ");\n            mapper.serialize(" + value + ", generator);";
+        };
+    }
+
+    /**
+     * Reads the value after the key and gives it to the record component variable or to the setter.
+     */
+    private static String readValue(Property property, String variable) {
+        String indent = "                    ";
+        String read = switch (property.kind()) {
+            case BOOLEAN, BOXED_BOOLEAN -> null;
+            case BYTE, BOXED_BYTE -> "(byte) parser.getInt()";
+            case SHORT, BOXED_SHORT -> "(short) parser.getInt()";
+            case INT, BOXED_INT -> "parser.getInt()";
+            case LONG, BOXED_LONG -> "parser.getLong()";
+            case FLOAT, BOXED_FLOAT -> "floatValue(parser)";
+            case DOUBLE, BOXED_DOUBLE -> "doubleValue(parser)";
+            case STRING -> "parser.getString()";
+            case FLOAT_ARRAY -> "floatArrayValue(parser)";
+            case STRING_LIST -> "stringListValue(parser)";
+            case OBJECT -> null;
+        };
+        boolean primitive = switch (property.kind()) {
+            case BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE -> true;
+            default -> false;
+        };
+        String value;
+        String guard = null;
+        if (property.kind() == Kind.OBJECT) {
+            value = "mapper.deserialize(parser, " + property.type() + ".class)";
+        } else if (read == null) {
+            // Booleans are read with their event
+            if (primitive) {
+                StringBuilder code = new StringBuilder();
+                code.append(indent).append("Boolean value = readBoolean(parser);\n");
+                code.append(indent).append("if (value != null) {\n");
+                code.append(indent).append("    ").append(assign(property, variable, "value")).append("\n");
+                code.append(indent).append("}\n");
+                return code.toString();
+            }
+            value = "readBoolean(parser)";
+        } else if (primitive) {
+            guard = "!nextIsNull(parser)";
+            value = read;
+        } else {
+            value = "nextIsNull(parser) ? null : " + boxed(property.kind(), read);
+        }
+        if (guard != null) {
+            return indent + "if (" + guard + ") {\n" + indent + "    " + assign(property, variable, value) + "\n" + indent + "}\n";
+        }
+        return indent + assign(property, variable, value) + "\n";
+    }
+
+    private static String boxed(Kind kind, String read) {
+        return switch (kind) {
+            case BOXED_BYTE -> "Byte.valueOf(" + read + ")";
+            case BOXED_SHORT -> "Short.valueOf(" + read + ")";
+            case BOXED_INT -> "Integer.valueOf(" + read + ")";
+            case BOXED_LONG -> "Long.valueOf(" + read + ")";
+            case BOXED_FLOAT -> "Float.valueOf(" + read + ")";
+            case BOXED_DOUBLE -> "Double.valueOf(" + read + ")";
+            default -> read;
+        };
+    }
+
+    private static String assign(Property property, String variable, String value) {
+        if (variable != null) {
+            return variable + " = " + value + ";";
+        }
+        if (property.field()) {
+            return "document." + property.setter() + " = " + value + ";";
+        }
+        return "document." + property.setter() + "(" + value + ");";
+    }
+
+    private static String defaultValue(Kind kind) {
+        return switch (kind) {
+            case BOOLEAN -> "false";
+            case BYTE, SHORT, INT, LONG, FLOAT, DOUBLE -> "0";
+            default -> "null";
+        };
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                default -> literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private void writeServices() {
+        Filer filer = processingEnv.getFiler();
+        Set<String> services = new TreeSet<>(codecs);
+        // Keep the codecs of the classes which have not been compiled again
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+            try (Reader reader = existing.openReader(true); BufferedReader lines = new BufferedReader(reader)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (!line.isBlank() && processingEnv.getElementUtils().getTypeElement(line.trim()) != null) {
+                        services.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // No previous file
+        }
+        try (Writer writer = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES).openWriter()) {
+            for (String service : services) {
+                writer.write(service);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can not write " + SERVICES + ": " + e.getMessage());
+        }
+    }
+}
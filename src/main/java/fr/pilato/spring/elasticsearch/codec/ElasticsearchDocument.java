@@ -0,0 +1,52 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.codec;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@link DocumentCodec} for a document class at compile time.
+ * <p>
+ * The codec reads and writes the documents with the streaming API, without the reflection
+ * used by Jackson, and the factory registers it automatically. It works for records and for
+ * classes with a public no-arg constructor and a public getter and setter for each field. A
+ * public getter without a field fails the compilation, as Jackson would write it.
+ * </p>
+ * <pre>
+ * &#64;ElasticsearchDocument
+ * public record Tweet(String user, String message, &#64;JsonProperty("post_date") String date, int retweets) {
+ * }
+ * </pre>
+ * <p>
+ * The {@code @JsonProperty} and {@code @JsonIgnore} annotations are honored. Fields of
+ * type {@code String}, primitive or boxed numbers and booleans, {@code float[]} and
+ * {@code List<String>} are read and written by the codec. The fields of any other
+ * non generic type are given to the client mapper, so to Jackson.
+ * </p>
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface ElasticsearchDocument {
+}
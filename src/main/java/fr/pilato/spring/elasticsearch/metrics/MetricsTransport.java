@@ -0,0 +1,87 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.metrics;
+
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import fr.pilato.spring.elasticsearch.transport.Endpoints;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures the API calls and gives the endpoint name to the HTTP interceptors.
+ */
+class MetricsTransport extends DelegatingTransport {
+
+    private final TransportMetrics metrics;
+
+    MetricsTransport(ElasticsearchTransport delegate, TransportMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request,
+                                                                  Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                  TransportOptions options) throws IOException {
+        String name = Endpoints.name(endpoint);
+        String callId = metrics.calls().register(name);
+        Timer.Sample sample = metrics.startCall();
+        try {
+            ResponseT response = delegate.performRequest(request, endpoint, withEndpoint(options, callId));
+            metrics.stopCall(sample, name, null);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            metrics.stopCall(sample, name, e);
+            throw e;
+        } finally {
+            metrics.calls().unregister(callId);
+        }
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request,
+                                                                                          Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                                          TransportOptions options) {
+        String name = Endpoints.name(endpoint);
+        String callId = metrics.calls().register(name);
+        Timer.Sample sample = metrics.startCall();
+        CompletableFuture<ResponseT> future;
+        try {
+            future = delegate.performRequestAsync(request, endpoint, withEndpoint(options, callId));
+        } catch (RuntimeException e) {
+            metrics.calls().unregister(callId);
+            throw e;
+        }
+        return future.whenComplete((response, e) -> {
+            metrics.calls().unregister(callId);
+            metrics.stopCall(sample, name, e);
+        });
+    }
+
+    private TransportOptions withEndpoint(TransportOptions options, String callId) {
+        TransportOptions base = options != null ? options : delegate.options();
+        return metrics.calls().withCall(base, callId).build();
+    }
+}
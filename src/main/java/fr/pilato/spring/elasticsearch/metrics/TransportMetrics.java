@@ -0,0 +1,343 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.metrics;
+
+import co.elastic.clients.transport.ElasticsearchTransport;
+import fr.pilato.spring.elasticsearch.transport.CallRegistry;
+import fr.pilato.spring.elasticsearch.transport.Endpoints;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.client.RestClientBuilder;
+import org.springframework.util.Assert;
+
+import javax.net.ssl.SSLContext;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer metrics for the requests sent to Elasticsearch.
+ * <p>
+ * Two levels are measured:
+ * </p>
+ * <ul>
+ *   <li>{@code elasticsearch.client.requests}: the time of an API call as seen by the application,
+ *   including the wait for a connection from the pool and the retries on other nodes. Tagged by
+ *   {@code endpoint} and {@code outcome}.</li>
+ *   <li>{@code elasticsearch.http.requests}: the time between sending one HTTP request to a node and
+ *   receiving the response headers. Tagged by {@code endpoint}, {@code index}, {@code node} and
+ *   {@code status}. The request and response sizes are recorded in
+ *   {@code elasticsearch.http.request.size} and {@code elasticsearch.http.response.size}.</li>
+ * </ul>
+ * <p>
+ * The connection pool is exposed with the {@code elasticsearch.client.pool.leased},
+ * {@code elasticsearch.client.pool.available}, {@code elasticsearch.client.pool.pending} and
+ * {@code elasticsearch.client.pool.max} gauges. The factory creates the pool with the defaults of the
+ * low level client, unless a connection manager is given to the {@link Builder#connectionManager builder}. A growing difference between the two timers
+ * with pending connections means that the time is spent waiting in the client, not in Elasticsearch.
+ * </p>
+ * <p>
+ * All the metrics are tagged with the {@code client} name, which must be different for each
+ * factory publishing to the same registry.
+ * </p>
+ * <pre>
+ * {@code
+ * factory.setTransportMetrics(new TransportMetrics.Builder(meterRegistry).clientName("orders").build());
+ * }
+ * </pre>
+ */
+public class TransportMetrics {
+
+    /**
+     * Header used to find the endpoint of an HTTP request. It is never sent to Elasticsearch.
+     */
+    static final String ENDPOINT_HEADER = "X-Spring-Elasticsearch-Endpoint";
+
+    private static final String CLIENT_TAG = "client";
+
+    private static final String START_ATTRIBUTE = TransportMetrics.class.getName() + ".start";
+    private static final String TAGS_ATTRIBUTE = TransportMetrics.class.getName() + ".tags";
+
+    private static final AtomicInteger POOL_IDS = new AtomicInteger();
+
+    private final MeterRegistry registry;
+    private final Tags clientTags;
+    private final boolean indexTag;
+    private final double[] percentiles;
+    private final boolean histogram;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final CallRegistry<String> calls = new CallRegistry<>(ENDPOINT_HEADER);
+
+    private TransportMetrics(Builder builder) {
+        this.registry = builder.registry;
+        this.clientTags = Tags.of(CLIENT_TAG, builder.clientName);
+        this.indexTag = builder.indexTag;
+        this.percentiles = builder.percentiles;
+        this.histogram = builder.histogram;
+        this.connectionManager = builder.connectionManager;
+        if (connectionManager != null) {
+            registerGauges(connectionManager);
+        }
+    }
+
+    /**
+     * Instruments the HTTP client: adds the interceptors measuring each HTTP request and sets the
+     * connection manager given to the builder, if any. This is done by the factory.
+     * @param builder the HTTP client builder
+     */
+    public void instrument(HttpAsyncClientBuilder builder) {
+        builder.addInterceptorLast(requestInterceptor());
+        builder.addInterceptorFirst(responseInterceptor());
+        if (connectionManager != null) {
+            builder.setConnectionManager(connectionManager);
+        }
+    }
+
+    /**
+     * Instruments an HTTP client which only has the settings of the low level client: when no connection
+     * manager is given to the builder, one is created with the pool limits of the low level client
+     * ({@value RestClientBuilder#DEFAULT_MAX_CONN_TOTAL} connections, {@value RestClientBuilder#DEFAULT_MAX_CONN_PER_ROUTE}
+     * per node) and the SSL context, so the pool gauges are always published. This is done by the factory.
+     * @param builder    the HTTP client builder
+     * @param sslContext the SSL context or null for the default one
+     */
+    public void instrument(HttpAsyncClientBuilder builder, SSLContext sslContext) {
+        instrument(builder);
+        if (connectionManager == null) {
+            PoolingNHttpClientConnectionManager pool = createConnectionManager(sslContext);
+            builder.setConnectionManager(pool);
+            registerGauges(pool);
+        }
+    }
+
+    private static PoolingNHttpClientConnectionManager createConnectionManager(SSLContext sslContext) {
+        try {
+            SSLContext context = sslContext != null ? sslContext : SSLContext.getDefault();
+            Registry<SchemeIOSessionStrategy> strategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(context, SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                    .build();
+            String prefix = "elasticsearch-rest-client-pool-" + POOL_IDS.incrementAndGet() + "-io-";
+            AtomicInteger threadIds = new AtomicInteger();
+            PoolingNHttpClientConnectionManager pool = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT,
+                            runnable -> new Thread(runnable, prefix + threadIds.incrementAndGet())),
+                    strategies);
+            pool.setMaxTotal(RestClientBuilder.DEFAULT_MAX_CONN_TOTAL);
+            pool.setDefaultMaxPerRoute(RestClientBuilder.DEFAULT_MAX_CONN_PER_ROUTE);
+            return pool;
+        } catch (NoSuchAlgorithmException | IOReactorException e) {
+            throw new IllegalStateException("Can not create the connection pool", e);
+        }
+    }
+
+    /**
+     * Wraps the transport to measure the API calls. This is done by the factory.
+     * @param transport the transport
+     * @return the measured transport
+     */
+    public ElasticsearchTransport instrument(ElasticsearchTransport transport) {
+        return new MetricsTransport(transport, this);
+    }
+
+    CallRegistry<String> calls() {
+        return calls;
+    }
+
+    Timer.Sample startCall() {
+        return Timer.start(registry);
+    }
+
+    void stopCall(Timer.Sample sample, String endpoint, Throwable failure) {
+        sample.stop(timer("elasticsearch.client.requests", Tags.of(
+                "endpoint", endpoint,
+                "outcome", failure == null ? "success" : "error")));
+    }
+
+    HttpRequestInterceptor requestInterceptor() {
+        return (HttpRequest request, HttpContext context) -> {
+            String uri = request.getRequestLine().getUri();
+            String endpoint = calls.attach(request, context);
+            if (endpoint == null) {
+                endpoint = Endpoints.nameFromPath(uri);
+            }
+            HttpHost target = (HttpHost) context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
+            Tags tags = Tags.of(
+                    "endpoint", endpoint,
+                    "index", indexTag ? Endpoints.indexFromPath(uri) : Endpoints.NONE,
+                    "node", target == null ? Endpoints.UNKNOWN : target.toHostString());
+            context.setAttribute(TAGS_ATTRIBUTE, tags);
+            context.setAttribute(START_ATTRIBUTE, System.nanoTime());
+
+            if (request instanceof HttpEntityEnclosingRequest enclosing && enclosing.getEntity() != null) {
+                long length = enclosing.getEntity().getContentLength();
+                if (length >= 0) {
+                    summary("elasticsearch.http.request.size", tags).record(length);
+                }
+            }
+        };
+    }
+
+    HttpResponseInterceptor responseInterceptor() {
+        return (HttpResponse response, HttpContext context) -> {
+            Object start = context.getAttribute(START_ATTRIBUTE);
+            Object tags = context.getAttribute(TAGS_ATTRIBUTE);
+            if (!(start instanceof Long startNanos) || !(tags instanceof Tags requestTags)) {
+                return;
+            }
+            Tags responseTags = requestTags.and("status", String.valueOf(response.getStatusLine().getStatusCode()));
+            timer("elasticsearch.http.requests", responseTags)
+                    .record(Duration.ofNanos(System.nanoTime() - startNanos));
+            HttpEntity entity = response.getEntity();
+            if (entity != null && entity.getContentLength() >= 0) {
+                summary("elasticsearch.http.response.size", responseTags).record(entity.getContentLength());
+            }
+        };
+    }
+
+    private void registerGauges(PoolingNHttpClientConnectionManager pool) {
+        gauge(pool, "elasticsearch.client.pool.leased", PoolStats::getLeased);
+        gauge(pool, "elasticsearch.client.pool.available", PoolStats::getAvailable);
+        gauge(pool, "elasticsearch.client.pool.pending", PoolStats::getPending);
+        gauge(pool, "elasticsearch.client.pool.max", PoolStats::getMax);
+    }
+
+    private void gauge(PoolingNHttpClientConnectionManager pool, String name, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder(name, pool, cm -> value.applyAsDouble(cm.getTotalStats()))
+                .tags(clientTags)
+                .strongReference(false)
+                .register(registry);
+    }
+
+    private Timer timer(String name, Tags tags) {
+        Timer.Builder builder = Timer.builder(name).tags(clientTags).tags(tags);
+        if (percentiles.length > 0) {
+            builder.publishPercentiles(percentiles);
+        }
+        return builder.publishPercentileHistogram(histogram).register(registry);
+    }
+
+    private DistributionSummary summary(String name, Tags tags) {
+        return DistributionSummary.builder(name).baseUnit("bytes").tags(clientTags).tags(tags).register(registry);
+    }
+
+    /**
+     * Builder for {@link TransportMetrics}.
+     */
+    public static class Builder {
+        private final MeterRegistry registry;
+        private String clientName = "default";
+        private boolean indexTag = true;
+        private double[] percentiles = {0.5, 0.95, 0.99};
+        private boolean histogram;
+        private PoolingNHttpClientConnectionManager connectionManager;
+
+        /**
+         * @param registry the registry to publish the metrics to
+         */
+        public Builder(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * @param clientName the value of the {@code client} tag. It must be different for each factory
+         *                   publishing to the same registry. Defaults to "default".
+         * @return this builder
+         */
+        public Builder clientName(String clientName) {
+            this.clientName = clientName;
+            return this;
+        }
+
+        /**
+         * @param indexTag false to not tag the HTTP metrics with the index name, when many indices
+         *                 are used. Defaults to true.
+         * @return this builder
+         */
+        public Builder indexTag(boolean indexTag) {
+            this.indexTag = indexTag;
+            return this;
+        }
+
+        /**
+         * @param percentiles the percentiles computed on the client side. Defaults to 0.5, 0.95 and 0.99.
+         * @return this builder
+         */
+        public Builder percentiles(double... percentiles) {
+            this.percentiles = percentiles;
+            return this;
+        }
+
+        /**
+         * @param histogram true to publish histogram buckets, so percentiles can be aggregated by
+         *                  the monitoring system. Defaults to false.
+         * @return this builder
+         */
+        public Builder histogram(boolean histogram) {
+            this.histogram = histogram;
+            return this;
+        }
+
+        /**
+         * A connection manager to use instead of the one created with the defaults of the low level client.
+         * It is needed for the pool gauges of a shared client with an HTTP client callback, as the HTTP
+         * client does not expose the connection manager it creates. It replaces the one the HTTP client
+         * would create: the I/O reactor configuration, thread factory, pool limits and SSL strategies must
+         * be set on it.
+         * @param connectionManager the connection manager used by the HTTP client. Defaults to none.
+         * @return this builder
+         */
+        public Builder connectionManager(PoolingNHttpClientConnectionManager connectionManager) {
+            this.connectionManager = connectionManager;
+            return this;
+        }
+
+        public TransportMetrics build() {
+            Assert.notNull(registry, "registry must not be null.");
+            Assert.hasText(clientName, "clientName must not be empty.");
+            Assert.notNull(percentiles, "percentiles must not be null.");
+            return new TransportMetrics(this);
+        }
+    }
+}
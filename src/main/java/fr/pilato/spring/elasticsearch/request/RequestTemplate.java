@@ -0,0 +1,458 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.request;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpSerializable;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.transport.BufferPool;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import fr.pilato.spring.elasticsearch.transport.PooledResponseConsumerFactory;
+import fr.pilato.spring.elasticsearch.transport.WriteNotifyingTransport;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A request compiled once and executed many times with different parameters.
+ * <p>
+ * The request body is serialized when the template is compiled and kept as UTF-8 byte segments
+ * around the parameter placeholders. Executing the template only encodes the parameters and
+ * sends the bytes with the low level {@link org.elasticsearch.client.RestClient}: the request
+ * object graph is neither rebuilt nor serialized again.
+ * </p>
+ * <p>
+ * A placeholder is written {@code {{name}}}. It can replace a whole JSON string value
+ * ({@code "{{name}}"}) or any other value ({@code "size": {{size}}}). In both cases, the parameter
+ * is written as a JSON value: a {@link String} is written as a JSON string, a {@link Number} or a
+ * {@link Boolean} as is, {@code null} as {@code null}, a {@code float[]} or a {@code byte[]} as an
+ * array of numbers and any other object (including a
+ * {@link co.elastic.clients.elasticsearch._types.query_dsl.Query}) with the client {@link JsonpMapper}.
+ * </p>
+ * <p>
+ * Vectors are written without boxing their components, which makes a template the cheapest way
+ * to send kNN searches, as the {@code query_vector} of the client is a {@code List<Float>}:
+ * </p>
+ * <pre>
+ * {@code
+ * RequestTemplate knn = RequestTemplate.of("POST", "/products/_search",
+ *         "{\"knn\":{\"field\":\"embedding\",\"query_vector\":{{vector}},\"k\":10,\"num_candidates\":100}}");
+ * SearchResponse<Product> similar = knn.search(client, Map.of("vector", embedding), Product.class);
+ * }
+ * </pre>
+ * <pre>
+ * {@code
+ * RequestTemplate byCategory = RequestTemplate.of(SearchRequest._ENDPOINT, SearchRequest.of(s -> s
+ *         .index("products")
+ *         .query(q -> q.term(t -> t.field("category").value("{{category}}")))), client._jsonpMapper());
+ * SearchResponse<Product> books = byCategory.search(client, Map.of("category", "books"), Product.class);
+ * }
+ * </pre>
+ * <p>
+ * The request goes directly to the low level client. The writes are still notified to the query
+ * cache and the near cache from their method and path (see
+ * {@link WriteNotifyingTransport#notifyRequest(String, String)}). Errors are reported as
+ * {@link org.elasticsearch.client.ResponseException}.
+ * </p>
+ */
+public final class RequestTemplate {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.\\-]+");
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private final String method;
+    private final String path;
+    private final Map<String, String> queryParameters;
+    private final byte[][] segments;
+    private final String[] names;
+    private final int length;
+
+    private RequestTemplate(String method, String path, Map<String, String> queryParameters, String body) {
+        this.method = method;
+        this.path = path;
+        this.queryParameters = Map.copyOf(queryParameters);
+        if (body == null) {
+            this.segments = null;
+            this.names = new String[0];
+            this.length = 0;
+            return;
+        }
+
+        List<byte[]> segmentList = new ArrayList<>();
+        List<String> nameList = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inString = false;
+        int i = 0;
+        while (i < body.length()) {
+            char c = body.charAt(i);
+            if (inString) {
+                if (c == '\\' && i + 1 < body.length()) {
+                    current.append(c).append(body.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                if (c == '"') {
+                    inString = false;
+                } else if (body.startsWith("{{", i) && placeholderEnd(body, i + 2, "}}") > 0) {
+                    throw new IllegalArgumentException("Placeholder at position [" + i + "] must be the whole string value.");
+                }
+                current.append(c);
+                i++;
+            } else if (c == '"' && body.startsWith("\"{{", i) && placeholderEnd(body, i + 3, "}}\"") > 0) {
+                int end = placeholderEnd(body, i + 3, "}}\"");
+                segmentList.add(current.toString().getBytes(StandardCharsets.UTF_8));
+                nameList.add(body.substring(i + 3, end));
+                current.setLength(0);
+                i = end + 3;
+            } else if (c == '"') {
+                inString = true;
+                current.append(c);
+                i++;
+            } else if (body.startsWith("{{", i)) {
+                int end = placeholderEnd(body, i + 2, "}}");
+                if (end < 0) {
+                    throw new IllegalArgumentException("Invalid placeholder at position [" + i + "].");
+                }
+                segmentList.add(current.toString().getBytes(StandardCharsets.UTF_8));
+                nameList.add(body.substring(i + 2, end));
+                current.setLength(0);
+                i = end + 2;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        segmentList.add(current.toString().getBytes(StandardCharsets.UTF_8));
+
+        this.segments = segmentList.toArray(new byte[0][]);
+        this.names = nameList.toArray(new String[0]);
+        int total = 0;
+        for (byte[] segment : segments) {
+            total += segment.length;
+        }
+        this.length = total;
+    }
+
+    private static int placeholderEnd(String body, int from, String closing) {
+        int end = body.indexOf(closing, from);
+        if (end < 0 || !NAME.matcher(body.substring(from, end)).matches()) {
+            return -1;
+        }
+        return end;
+    }
+
+    /**
+     * Compiles a request from its JSON body.
+     * @param method the HTTP method
+     * @param path   the request path, like {@code /products/_search}
+     * @param body   the JSON body with placeholders or null if the request has no body
+     * @return the compiled request
+     */
+    public static RequestTemplate of(String method, String path, String body) {
+        return new RequestTemplate(method, path, Map.of(), body);
+    }
+
+    /**
+     * Compiles a request built with the client API. The method, the path and the URL parameters
+     * are the ones the client would use.
+     * @param endpoint the request endpoint, like {@code SearchRequest._ENDPOINT}
+     * @param request  the request with placeholders as string values
+     * @param mapper   the mapper used by the client
+     * @return the compiled request
+     */
+    public static <R> RequestTemplate of(Endpoint<R, ?, ?> endpoint, R request, JsonpMapper mapper) {
+        String body = null;
+        if (endpoint.hasRequestBody() && request instanceof JsonpSerializable serializable) {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+                serializable.serialize(generator, mapper);
+            }
+            body = writer.toString();
+        }
+        return new RequestTemplate(endpoint.method(request), endpoint.requestUrl(request),
+                endpoint.queryParameters(request), body);
+    }
+
+    /**
+     * @return the names of the parameters
+     */
+    public Set<String> parameters() {
+        return new LinkedHashSet<>(List.of(names));
+    }
+
+    /**
+     * Renders the request body.
+     * @param params the parameters
+     * @param mapper the mapper used to write the parameters which are not strings, numbers or booleans
+     * @return the body as UTF-8 bytes or null if the request has no body
+     */
+    public byte[] render(Map<String, ?> params, JsonpMapper mapper) {
+        if (segments == null) {
+            return null;
+        }
+        return write(params, mapper, null).toByteArray();
+    }
+
+    /**
+     * Executes the request.
+     * @param client the client built by the factory
+     * @param params the parameters
+     * @return the low level response
+     */
+    public Response perform(ElasticsearchClient client, Map<String, ?> params) throws IOException {
+        RestClientTransport transport = DelegatingTransport.unwrap(client._transport(), RestClientTransport.class);
+        Assert.state(transport != null, "Request templates need a client using a RestClientTransport.");
+
+        Request request = new Request(method, path);
+        request.addParameters(queryParameters);
+        Buffer body = null;
+        if (segments != null) {
+            // When the factory pools the response buffers, the request body is written in a pooled array too
+            body = write(params, client._jsonpMapper(), PooledResponseConsumerFactory.pool(client._transportOptions()));
+            request.setEntity(new ByteArrayEntity(body.array(), 0, body.size(), ContentType.APPLICATION_JSON));
+        }
+        if (client._transportOptions() instanceof RestClientOptions options) {
+            request.setOptions(options.restClientRequestOptions());
+        }
+        try {
+            return transport.restClient().performRequest(request);
+        } finally {
+            if (body != null) {
+                body.release();
+            }
+            // Like the client requests, a failed write might have written some documents
+            WriteNotifyingTransport notifying = WriteNotifyingTransport.find(client._transport());
+            if (notifying != null) {
+                notifying.notifyRequest(method, path);
+            }
+        }
+    }
+
+    /**
+     * Executes the request and reads the response.
+     * @param client       the client built by the factory
+     * @param params       the parameters
+     * @param deserializer the response deserializer, like {@code CountResponse._DESERIALIZER}
+     * @return the response
+     */
+    public <R> R perform(ElasticsearchClient client, Map<String, ?> params, JsonpDeserializer<R> deserializer) throws IOException {
+        Response response = perform(client, params);
+        JsonpMapper mapper = client._jsonpMapper();
+        try (InputStream content = response.getEntity().getContent();
+             JsonParser parser = mapper.jsonProvider().createParser(content)) {
+            return deserializer.deserialize(parser, mapper);
+        }
+    }
+
+    /**
+     * Executes a search request.
+     * @param client        the client built by the factory
+     * @param params        the parameters
+     * @param documentClass the document class
+     * @return the search response
+     */
+    public <T> SearchResponse<T> search(ElasticsearchClient client, Map<String, ?> params, Class<T> documentClass) throws IOException {
+        return perform(client, params,
+                SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(documentClass)));
+    }
+
+    private Buffer write(Map<String, ?> params, JsonpMapper mapper, BufferPool pool) {
+        int size = length;
+        for (String name : names) {
+            if (!params.containsKey(name)) {
+                throw new IllegalArgumentException("Missing parameter [" + name + "].");
+            }
+            size += estimate(params.get(name));
+        }
+        Buffer out = new Buffer(size, pool);
+        out.writeBytes(segments[0]);
+        for (int i = 0; i < names.length; i++) {
+            writeValue(out, params.get(names[i]), mapper);
+            out.writeBytes(segments[i + 1]);
+        }
+        return out;
+    }
+
+    /**
+     * @return the expected size of a parameter, so the body rarely outgrows its array
+     */
+    private static int estimate(Object value) {
+        if (value instanceof String string) {
+            return string.length() + 2;
+        } else if (value instanceof float[] vector) {
+            return vector.length * 16 + 2;
+        } else if (value instanceof byte[] vector) {
+            return vector.length * 5 + 2;
+        }
+        return 16;
+    }
+
+    private static void writeValue(Buffer out, Object value, JsonpMapper mapper) {
+        if (value == null) {
+            out.writeBytes(NULL);
+        } else if (value instanceof String string) {
+            out.writeBytes(quote(string).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short ||
+                value instanceof Byte || value instanceof Boolean) {
+            out.writeBytes(value.toString().getBytes(StandardCharsets.US_ASCII));
+        } else if (value instanceof float[] vector) {
+            writeVector(out, vector);
+        } else if (value instanceof byte[] vector) {
+            writeVector(out, vector);
+        } else {
+            try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+                mapper.serialize(value, generator);
+            }
+        }
+    }
+
+    private static void writeVector(Buffer out, float[] vector) {
+        // Appending a float to a StringBuilder does not create a String for each component
+        StringBuilder json = new StringBuilder(vector.length * 12 + 2).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (!Float.isFinite(vector[i])) {
+                throw new IllegalArgumentException("Vectors can not contain [" + vector[i] + "].");
+            }
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(vector[i]);
+        }
+        json.append(']');
+        for (int i = 0; i < json.length(); i++) {
+            out.write(json.charAt(i));
+        }
+    }
+
+    private static void writeVector(Buffer out, byte[] vector) {
+        out.write('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            int component = vector[i];
+            if (component < 0) {
+                out.write('-');
+                component = -component;
+            }
+            if (component >= 100) {
+                out.write('0' + component / 100);
+            }
+            if (component >= 10) {
+                out.write('0' + component / 10 % 10);
+            }
+            out.write('0' + component % 10);
+        }
+        out.write(']');
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Gives access to the internal array to avoid a copy when sending the request.
+     * The array comes from the pool when there is one, and so does a larger one when it is full.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        private final BufferPool pool;
+
+        Buffer(int size, BufferPool pool) {
+            super(pool == null ? size : 0);
+            this.pool = pool;
+            if (pool != null) {
+                buf = pool.acquire(size);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            grow(count + 1);
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            grow(count + len);
+            super.write(b, off, len);
+        }
+
+        private void grow(int minSize) {
+            // Without a pool, or on overflow, the stream grows the array itself
+            if (pool == null || minSize <= buf.length || minSize < 0) {
+                return;
+            }
+            byte[] larger = pool.acquire(Math.max(minSize, buf.length * 2));
+            System.arraycopy(buf, 0, larger, 0, count);
+            pool.release(buf);
+            buf = larger;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void release() {
+            if (pool != null) {
+                pool.release(buf);
+                buf = null;
+            }
+        }
+    }
+}
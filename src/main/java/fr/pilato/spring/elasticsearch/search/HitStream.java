@@ -0,0 +1,427 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParser.Event;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the hits of a search response while it is received, without building the whole
+ * {@link co.elastic.clients.elasticsearch.core.SearchResponse}.
+ * <p>
+ * The response is not buffered: the memory used by a stream is bounded by
+ * {@link Builder#bufferSize(int)} and the hit being read, whatever the size of the page.
+ * This is useful for searches returning thousands of hits or large documents.
+ * </p>
+ * <pre>
+ * {@code
+ * try (HitStream<Tweet> hits = new HitStream.Builder<>(client, Tweet.class)
+ *         .request(SearchRequest.of(sr -> sr.index("twitter").size(10000)))
+ *         .open()) {
+ *     hits.forEachRemaining(hit -> ...);
+ * }
+ * }
+ * </pre>
+ * <p>
+ * {@link #took()}, {@link #total()} and {@link #maxScore()} are known as soon as the stream is
+ * opened. Everything after the hits, like the aggregations, is ignored: use a regular search
+ * for them. Errors are reported as {@link org.elasticsearch.client.ResponseException}.
+ * </p>
+ * <p>
+ * A stream is not thread safe: it must be consumed by a single thread. Closing it before the
+ * end cancels the request.
+ * </p>
+ * @param <T> the document class
+ */
+public class HitStream<T> implements Iterator<Hit<T>>, AutoCloseable {
+
+    private final JsonpMapper mapper;
+    private final JsonpDeserializer<Hit<T>> hitDeserializer;
+    private final Cancellable cancellable;
+    private final AtomicReference<StreamingResponseConsumer> consumer;
+    private final JsonParser parser;
+
+    private Long took;
+    private Boolean timedOut;
+    private TotalHits total;
+    private Double maxScore;
+    private String scrollId;
+    private String pitId;
+
+    private Hit<T> next;
+    private boolean done;
+    private boolean closed;
+
+    private HitStream(Builder<T> builder) throws IOException {
+        RestClientTransport transport = DelegatingTransport.unwrap(builder.client._transport(), RestClientTransport.class);
+        Assert.state(transport != null, "Hit streams need a client using a RestClientTransport.");
+        this.mapper = builder.client._jsonpMapper();
+        this.hitDeserializer = Hit.createHitDeserializer(JsonpDeserializer.of(builder.documentClass));
+
+        SearchRequest search = builder.request;
+        Request request = new Request(SearchRequest._ENDPOINT.method(search), SearchRequest._ENDPOINT.requestUrl(search));
+        request.addParameters(SearchRequest._ENDPOINT.queryParameters(search));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(body)) {
+            search.serialize(generator, mapper);
+        }
+        request.setEntity(new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON));
+
+        CompletableFuture<InputStream> content = new CompletableFuture<>();
+        this.consumer = new AtomicReference<>();
+        RequestOptions.Builder options = builder.client._transportOptions() instanceof RestClientOptions clientOptions ?
+                clientOptions.restClientRequestOptions().toBuilder() : RequestOptions.DEFAULT.toBuilder();
+        // A new consumer per attempt, as the low level client may retry on another node
+        options.setHttpAsyncResponseConsumerFactory(() -> {
+            StreamingResponseConsumer attempt = new StreamingResponseConsumer(builder.bufferSize,
+                    builder.errorBufferLimit, content);
+            consumer.set(attempt);
+            return attempt;
+        });
+        request.setOptions(options);
+
+        this.cancellable = transport.restClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                content.completeExceptionally(new IOException("Search response has no body."));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                content.completeExceptionally(exception);
+            }
+        });
+
+        InputStream stream;
+        try {
+            stream = content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancellable.cancel();
+            throw new InterruptedIOException("Interrupted while waiting for the search response.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+        this.parser = mapper.jsonProvider().createParser(stream);
+        try {
+            readHeader();
+        } catch (RuntimeException | IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the time spent by Elasticsearch in milliseconds
+     */
+    public Long took() {
+        return took;
+    }
+
+    /**
+     * @return true if the search timed out
+     */
+    public Boolean timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return the total number of hits, null if not tracked
+     */
+    public TotalHits total() {
+        return total;
+    }
+
+    /**
+     * @return the max score, null if the hits are not scored
+     */
+    public Double maxScore() {
+        return maxScore;
+    }
+
+    /**
+     * @return the scroll id, when the request asked for a scroll
+     */
+    public String scrollId() {
+        return scrollId;
+    }
+
+    /**
+     * @return the point in time id, when the request used a point in time
+     */
+    public String pitId() {
+        return pitId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        try {
+            Event event = parser.next();
+            if (event == Event.END_ARRAY) {
+                // Reads the rest of the response so the connection can be reused
+                while (parser.hasNext()) {
+                    parser.next();
+                }
+                done = true;
+                close();
+                return false;
+            }
+            next = hitDeserializer.deserialize(parser, mapper, event);
+            return true;
+        } catch (RuntimeException e) {
+            close();
+            if (e.getCause() instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Hit<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Hit<T> hit = next;
+        next = null;
+        return hit;
+    }
+
+    /**
+     * @return the remaining documents
+     */
+    public Stream<T> documents() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(Hit::source)
+                .filter(Objects::nonNull)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!done) {
+            // Stops the transfer instead of reading the rest of the response
+            done = true;
+            cancellable.cancel();
+            StreamingResponseConsumer current = consumer.get();
+            if (current != null) {
+                current.shutdown();
+            }
+        }
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (RuntimeException e) {
+                // The input has been shut down
+            }
+        }
+    }
+
+    /**
+     * Reads the response until the first hit.
+     */
+    private void readHeader() throws IOException {
+        expect(parser.next(), Event.START_OBJECT);
+        while (true) {
+            Event event = parser.next();
+            if (event == Event.END_OBJECT) {
+                done = true;
+                return;
+            }
+            String name = parser.getString();
+            switch (name) {
+                case "took" -> {
+                    parser.next();
+                    took = parser.getLong();
+                }
+                case "timed_out" -> timedOut = parser.next() == Event.VALUE_TRUE;
+                case "_scroll_id" -> {
+                    parser.next();
+                    scrollId = parser.getString();
+                }
+                case "pit_id" -> {
+                    parser.next();
+                    pitId = parser.getString();
+                }
+                case "hits" -> {
+                    if (readHitsHeader()) {
+                        return;
+                    }
+                }
+                default -> skip(parser.next());
+            }
+        }
+    }
+
+    /**
+     * @return true when the parser is at the start of the hits array
+     */
+    private boolean readHitsHeader() throws IOException {
+        expect(parser.next(), Event.START_OBJECT);
+        while (true) {
+            Event event = parser.next();
+            if (event == Event.END_OBJECT) {
+                return false;
+            }
+            switch (parser.getString()) {
+                case "total" -> total = TotalHits._DESERIALIZER.deserialize(parser, mapper);
+                case "max_score" -> maxScore = parser.next() == Event.VALUE_NUMBER ?
+                        parser.getBigDecimal().doubleValue() : null;
+                case "hits" -> {
+                    expect(parser.next(), Event.START_ARRAY);
+                    return true;
+                }
+                default -> skip(parser.next());
+            }
+        }
+    }
+
+    private void skip(Event event) {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            Event inner = parser.next();
+            if (inner == Event.START_OBJECT || inner == Event.START_ARRAY) {
+                depth++;
+            } else if (inner == Event.END_OBJECT || inner == Event.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    private static void expect(Event actual, Event expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected search response: expected [" + expected + "] but got [" + actual + "].");
+        }
+    }
+
+    /**
+     * Builder for {@link HitStream}.
+     * @param <T> the document class
+     */
+    public static class Builder<T> {
+        private final ElasticsearchClient client;
+        private final Class<T> documentClass;
+        private SearchRequest request;
+        private int bufferSize = 64 * 1024;
+        private int errorBufferLimit = 1024 * 1024;
+
+        /**
+         * @param client        the client built by the factory
+         * @param documentClass the document class
+         */
+        public Builder(ElasticsearchClient client, Class<T> documentClass) {
+            this.client = client;
+            this.documentClass = documentClass;
+        }
+
+        /**
+         * @param request the search request
+         * @return this builder
+         */
+        public Builder<T> request(SearchRequest request) {
+            this.request = request;
+            return this;
+        }
+
+        /**
+         * Size of the buffer between the network and the parser. Defaults to 64kb.
+         * @param bufferSize the size in bytes
+         * @return this builder
+         */
+        public Builder<T> bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Maximum size of an error response, which is buffered to be reported. Defaults to 1mb.
+         * @param errorBufferLimit the size in bytes
+         * @return this builder
+         */
+        public Builder<T> errorBufferLimit(int errorBufferLimit) {
+            this.errorBufferLimit = errorBufferLimit;
+            return this;
+        }
+
+        /**
+         * Sends the request and reads the response until the first hit.
+         * @return the stream, to close
+         * @throws IOException if the request fails
+         */
+        public HitStream<T> open() throws IOException {
+            Assert.notNull(client, "client must not be null.");
+            Assert.notNull(documentClass, "documentClass must not be null.");
+            Assert.notNull(request, "request must not be null.");
+            Assert.isTrue(bufferSize > 0, "bufferSize must be positive.");
+            Assert.isTrue(errorBufferLimit > 0, "errorBufferLimit must be positive.");
+            return new HitStream<>(this);
+        }
+    }
+}
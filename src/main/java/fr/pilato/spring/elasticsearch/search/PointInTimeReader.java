@@ -0,0 +1,406 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SlicedScroll;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads all the documents matching a query using a point in time (PIT) and {@code search_after}.
+ * <p>
+ * Pages are fetched asynchronously: while the caller consumes the current page, up to
+ * {@link Builder#prefetchPages(int)} next pages are already requested or buffered. The memory
+ * used by the reader is therefore bounded by {@code (prefetchPages + 1) * pageSize} hits,
+ * whatever the number of documents matching the query.
+ * </p>
+ * <p>
+ * The point in time is closed when all the hits have been read or when the reader is closed,
+ * so it should always be used within a try-with-resources block:
+ * </p>
+ * <pre>
+ * {@code
+ * try (PointInTimeReader<Tweet> reader = new PointInTimeReader.Builder<>(client, Tweet.class)
+ *         .index("twitter")
+ *         .query(Query.of(q -> q.match(m -> m.field("message").query("elasticsearch"))))
+ *         .pageSize(1000)
+ *         .build()) {
+ *     reader.documents().forEach(tweet -> ...);
+ * }
+ * }
+ * </pre>
+ * <p>
+ * A reader is not thread safe: it must be consumed by a single thread. It can be closed from
+ * another thread to cancel the iteration.
+ * </p>
+ * <p>
+ * A reader can also read a single slice of an existing point in time, which is not closed by the
+ * reader in that case. See {@link SlicedScan}.
+ * </p>
+ * @param <T> the document class
+ */
+public class PointInTimeReader<T> implements Iterator<Hit<T>>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointInTimeReader.class);
+
+    private final ElasticsearchClient client;
+    private final ElasticsearchAsyncClient asyncClient;
+    private final Class<T> documentClass;
+    private final Query query;
+    private final List<SortOptions> sort;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final Time keepAlive;
+    private final SlicedScroll slice;
+    private final boolean ownsPit;
+
+    private final Deque<CompletableFuture<Page<T>>> pages = new ArrayDeque<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Iterator<Hit<T>> current = Collections.emptyIterator();
+    // Last page given to the caller, used to chain the next requests when no page is pending
+    private Page<T> lastPage;
+    private volatile String pitId;
+    private boolean exhausted;
+
+    private PointInTimeReader(Builder<T> builder) throws IOException {
+        this.client = builder.client;
+        this.asyncClient = new ElasticsearchAsyncClient(client._transport(), client._transportOptions());
+        this.documentClass = builder.documentClass;
+        this.query = builder.query;
+        this.sort = builder.sort;
+        this.pageSize = builder.pageSize;
+        this.prefetchPages = builder.prefetchPages;
+        this.keepAlive = Time.of(t -> t.time(builder.keepAlive));
+        this.slice = builder.slice;
+
+        if (builder.pitId != null) {
+            this.pitId = builder.pitId;
+            this.ownsPit = false;
+        } else {
+            logger.debug("Opening a point in time on {} with keep alive {}", builder.indices, builder.keepAlive);
+            this.pitId = client.openPointInTime(o -> o.index(builder.indices).keepAlive(keepAlive)).id();
+            this.ownsPit = true;
+        }
+        fill();
+    }
+
+    /**
+     * @return a sequential stream of the hits. Closing the stream closes the reader.
+     */
+    public Stream<Hit<T>> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * @return a sequential stream of the documents. Closing the stream closes the reader.
+     */
+    public Stream<T> documents() {
+        return stream().map(Hit::source);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (exhausted || closed.get()) {
+                return false;
+            }
+            Page<T> page = nextPage();
+            if (page == null) {
+                return false;
+            }
+            lastPage = page;
+            if (page.last()) {
+                exhausted = true;
+                close();
+            } else {
+                fill();
+            }
+            current = page.hits().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Hit<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Cancels the pending requests if any and closes the point in time if it has been opened by this reader.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            synchronized (pages) {
+                pages.forEach(future -> future.cancel(false));
+                pages.clear();
+            }
+            if (!ownsPit) {
+                return;
+            }
+            try {
+                logger.debug("Closing point in time");
+                client.closePointInTime(c -> c.id(pitId));
+            } catch (Exception e) {
+                // The point in time will expire anyway after the keep alive period
+                logger.warn("Can not close point in time: {}", e.getMessage());
+                logger.debug("Full error is", e);
+            }
+        }
+    }
+
+    private Page<T> nextPage() {
+        CompletableFuture<Page<T>> future;
+        synchronized (pages) {
+            future = pages.poll();
+        }
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.join();
+        } catch (CancellationException e) {
+            return null;
+        } catch (CompletionException e) {
+            if (closed.get()) {
+                // The reader has been closed while we were waiting for the page
+                return null;
+            }
+            close();
+            if (e.getCause() instanceof IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Makes sure that we have {@code prefetchPages} pages requested in advance.
+     * Each page is chained to the previous one as we need its last sort values: the last
+     * pending page or, when none is pending, the last page given to the caller.
+     */
+    private void fill() {
+        synchronized (pages) {
+            while (!closed.get() && pages.size() < prefetchPages) {
+                CompletableFuture<Page<T>> previous = pages.peekLast();
+                if (previous != null) {
+                    pages.add(previous.thenCompose(this::fetchAfter));
+                } else if (lastPage != null) {
+                    pages.add(fetchAfter(lastPage));
+                } else {
+                    pages.add(fetch(pitId, null));
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Page<T>> fetchAfter(Page<T> page) {
+        return page.last() ? CompletableFuture.completedFuture(Page.end(page.pitId())) :
+                fetch(page.pitId(), page.searchAfter());
+    }
+
+    private CompletableFuture<Page<T>> fetch(String pitId, List<FieldValue> searchAfter) {
+        if (closed.get()) {
+            return CompletableFuture.failedFuture(new CancellationException("Reader is closed"));
+        }
+        SearchRequest.Builder request = new SearchRequest.Builder()
+                .pit(p -> p.id(pitId).keepAlive(keepAlive))
+                .size(pageSize)
+                .trackTotalHits(t -> t.enabled(false))
+                .sort(sort);
+        if (query != null) {
+            request.query(query);
+        }
+        if (slice != null) {
+            request.slice(slice);
+        }
+        if (searchAfter != null) {
+            request.searchAfter(searchAfter);
+        }
+        return asyncClient.search(request.build(), documentClass).thenApply(response -> toPage(response, pitId));
+    }
+
+    private Page<T> toPage(SearchResponse<T> response, String previousPitId) {
+        // The point in time id might change between two requests
+        String newPitId = response.pitId() != null ? response.pitId() : previousPitId;
+        this.pitId = newPitId;
+        List<Hit<T>> hits = response.hits().hits();
+        List<FieldValue> searchAfter = hits.isEmpty() ? null : hits.get(hits.size() - 1).sort();
+        return new Page<>(hits, newPitId, searchAfter, hits.size() < pageSize);
+    }
+
+    private record Page<T>(List<Hit<T>> hits, String pitId, List<FieldValue> searchAfter, boolean last) {
+        static <T> Page<T> end(String pitId) {
+            return new Page<>(Collections.emptyList(), pitId, null, true);
+        }
+    }
+
+    /**
+     * Builder for {@link PointInTimeReader}.
+     * @param <T> the document class
+     */
+    public static class Builder<T> {
+        private final ElasticsearchClient client;
+        private final Class<T> documentClass;
+        private List<String> indices;
+        private Query query;
+        private List<SortOptions> sort = List.of(SortOptions.of(s -> s.field(f -> f.field("_shard_doc"))));
+        private int pageSize = 1000;
+        private int prefetchPages = 1;
+        private String keepAlive = "1m";
+        private String pitId;
+        private SlicedScroll slice;
+
+        /**
+         * @param client        the client built by the factory
+         * @param documentClass the document class used to deserialize the hits
+         */
+        public Builder(ElasticsearchClient client, Class<T> documentClass) {
+            this.client = Objects.requireNonNull(client, "client must not be null");
+            this.documentClass = Objects.requireNonNull(documentClass, "documentClass must not be null");
+        }
+
+        /**
+         * @param indices the indices (or aliases) to read from
+         * @return this builder
+         */
+        public Builder<T> index(String... indices) {
+            this.indices = List.of(indices);
+            return this;
+        }
+
+        /**
+         * @param query the query to run. Defaults to all documents.
+         * @return this builder
+         */
+        public Builder<T> query(Query query) {
+            this.query = query;
+            return this;
+        }
+
+        /**
+         * @param sort the sort to apply. Defaults to {@code _shard_doc} which is the most efficient one.
+         *             When using another sort, make sure to add a tiebreaker field.
+         * @return this builder
+         */
+        public Builder<T> sort(List<SortOptions> sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        /**
+         * @param pageSize the number of hits per request. Defaults to 1000.
+         * @return this builder
+         */
+        public Builder<T> pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param prefetchPages the number of pages requested in advance. Defaults to 1.
+         * @return this builder
+         */
+        public Builder<T> prefetchPages(int prefetchPages) {
+            this.prefetchPages = prefetchPages;
+            return this;
+        }
+
+        /**
+         * @param keepAlive how long the point in time is kept alive between two requests. Defaults to "1m".
+         * @return this builder
+         */
+        public Builder<T> keepAlive(String keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Use an existing point in time instead of opening a new one. In that case, the indices
+         * are ignored and the point in time is not closed by the reader.
+         * @param pitId the point in time id
+         * @return this builder
+         */
+        public Builder<T> pointInTime(String pitId) {
+            this.pitId = pitId;
+            return this;
+        }
+
+        /**
+         * Only read one slice of the point in time.
+         * @param id  the slice id, from 0 to max - 1
+         * @param max the total number of slices
+         * @return this builder
+         */
+        public Builder<T> slice(int id, int max) {
+            this.slice = SlicedScroll.of(s -> s.id(String.valueOf(id)).max(max));
+            return this;
+        }
+
+        /**
+         * Opens the point in time if needed and starts fetching the first pages.
+         * @return the reader
+         * @throws IOException if the point in time can not be opened
+         */
+        public PointInTimeReader<T> build() throws IOException {
+            Assert.isTrue(pitId != null || (indices != null && !indices.isEmpty()),
+                    "At least one index or a point in time must be provided.");
+            Assert.isTrue(pageSize > 0, "pageSize must be positive.");
+            Assert.isTrue(prefetchPages > 0, "prefetchPages must be positive.");
+            return new PointInTimeReader<>(this);
+        }
+    }
+}
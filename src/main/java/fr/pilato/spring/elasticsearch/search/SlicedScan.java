@@ -0,0 +1,312 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Reads all the documents matching a query by splitting a point in time in several slices
+ * which are read concurrently. Each slice is read with a {@link PointInTimeReader}.
+ * <p>
+ * The hits can be consumed with a per-slice callback running on an {@link Executor}:
+ * </p>
+ * <pre>
+ * {@code
+ * SlicedScan<Tweet> scan = new SlicedScan.Builder<>(client, Tweet.class)
+ *         .index("twitter")
+ *         .slices(8)
+ *         .executor(myForkJoinPool)
+ *         .build();
+ * long total = scan.forEach((slice, hit) -> export(hit.source())).join();
+ * }
+ * </pre>
+ * <p>
+ * Or as a parallel {@link Stream} where each slice is handled by a different worker:
+ * </p>
+ * <pre>
+ * {@code
+ * try (Stream<Hit<Tweet>> hits = scan.stream()) {
+ *     hits.forEach(hit -> export(hit.source()));
+ * }
+ * }
+ * </pre>
+ * <p>
+ * Each call to {@link #forEach(SliceConsumer)} or {@link #stream()} opens its own point in time which
+ * is closed once all the slices have been read or when the stream is closed.
+ * </p>
+ * @param <T> the document class
+ */
+public class SlicedScan<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlicedScan.class);
+
+    /**
+     * Consumes the hits of a given slice. It might be called concurrently for different slices.
+     * @param <T> the document class
+     */
+    @FunctionalInterface
+    public interface SliceConsumer<T> {
+        void accept(int slice, Hit<T> hit);
+    }
+
+    private final ElasticsearchClient client;
+    private final Class<T> documentClass;
+    private final List<String> indices;
+    private final Query query;
+    private final int slices;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final String keepAlive;
+    private final Executor executor;
+
+    private SlicedScan(Builder<T> builder) {
+        this.client = builder.client;
+        this.documentClass = builder.documentClass;
+        this.indices = builder.indices;
+        this.query = builder.query;
+        this.slices = builder.slices;
+        this.pageSize = builder.pageSize;
+        this.prefetchPages = builder.prefetchPages;
+        this.keepAlive = builder.keepAlive;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * Reads all the slices concurrently on the executor.
+     * @param consumer the consumer called for every hit
+     * @return a future completed with the total number of hits once all the slices have been read.
+     * If one slice fails, the other ones are cancelled and the future completes exceptionally.
+     * @throws IOException if the point in time can not be opened
+     */
+    public CompletableFuture<Long> forEach(SliceConsumer<T> consumer) throws IOException {
+        String pitId = openPointInTime();
+        Queue<PointInTimeReader<T>> readers = new ConcurrentLinkedQueue<>();
+        // Once a slice failed, the slices still waiting for the executor are skipped
+        AtomicBoolean failed = new AtomicBoolean();
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[slices];
+        long[] counts = new long[slices];
+        for (int i = 0; i < slices; i++) {
+            int slice = i;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                if (failed.get()) {
+                    return;
+                }
+                try (PointInTimeReader<T> reader = sliceReader(pitId, slice)) {
+                    readers.add(reader);
+                    // A slice might have failed before this reader was registered
+                    while (!failed.get() && reader.hasNext()) {
+                        consumer.accept(slice, reader.next());
+                        counts[slice]++;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor).whenComplete((ignored, e) -> {
+                if (e != null && failed.compareAndSet(false, true)) {
+                    logger.debug("Slice {} failed. Cancelling the other slices.", slice);
+                    readers.forEach(PointInTimeReader::close);
+                }
+            });
+        }
+
+        return CompletableFuture.allOf(futures)
+                .whenComplete((ignored, e) -> closePointInTime(pitId))
+                .thenApply(ignored -> {
+                    long total = 0;
+                    for (long count : counts) {
+                        total += count;
+                    }
+                    return total;
+                });
+    }
+
+    /**
+     * Reads all the slices as a parallel stream. Each slice is read sequentially by the worker
+     * which picked it. The stream should be closed to release the point in time.
+     * <p>
+     * Note that a parallel stream runs within the {@link ForkJoinPool} of the calling thread,
+     * or the common pool. The executor defined in the builder is not used.
+     * </p>
+     * @return a parallel stream of all the hits
+     * @throws IOException if the point in time can not be opened
+     */
+    public Stream<Hit<T>> stream() throws IOException {
+        String pitId = openPointInTime();
+        return IntStream.range(0, slices)
+                .boxed()
+                .parallel()
+                .flatMap(slice -> {
+                    try {
+                        // flatMap closes the inner stream, hence the slice reader
+                        return sliceReader(pitId, slice).stream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .onClose(() -> closePointInTime(pitId));
+    }
+
+    private PointInTimeReader<T> sliceReader(String pitId, int slice) throws IOException {
+        PointInTimeReader.Builder<T> builder = new PointInTimeReader.Builder<>(client, documentClass)
+                .pointInTime(pitId)
+                .query(query)
+                .pageSize(pageSize)
+                .prefetchPages(prefetchPages)
+                .keepAlive(keepAlive);
+        if (slices > 1) {
+            builder.slice(slice, slices);
+        }
+        return builder.build();
+    }
+
+    private String openPointInTime() throws IOException {
+        logger.debug("Opening a point in time on {} for {} slices", indices, slices);
+        return client.openPointInTime(o -> o.index(indices).keepAlive(Time.of(t -> t.time(keepAlive)))).id();
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            logger.debug("Closing point in time");
+            client.closePointInTime(c -> c.id(pitId));
+        } catch (Exception e) {
+            // The point in time will expire anyway after the keep alive period
+            logger.warn("Can not close point in time: {}", e.getMessage());
+            logger.debug("Full error is", e);
+        }
+    }
+
+    /**
+     * Builder for {@link SlicedScan}.
+     * @param <T> the document class
+     */
+    public static class Builder<T> {
+        private final ElasticsearchClient client;
+        private final Class<T> documentClass;
+        private List<String> indices;
+        private Query query;
+        private int slices = Runtime.getRuntime().availableProcessors();
+        private int pageSize = 1000;
+        private int prefetchPages = 1;
+        private String keepAlive = "1m";
+        private Executor executor = ForkJoinPool.commonPool();
+
+        /**
+         * @param client        the client built by the factory
+         * @param documentClass the document class used to deserialize the hits
+         */
+        public Builder(ElasticsearchClient client, Class<T> documentClass) {
+            this.client = Objects.requireNonNull(client, "client must not be null");
+            this.documentClass = Objects.requireNonNull(documentClass, "documentClass must not be null");
+        }
+
+        /**
+         * @param indices the indices (or aliases) to read from
+         * @return this builder
+         */
+        public Builder<T> index(String... indices) {
+            this.indices = List.of(indices);
+            return this;
+        }
+
+        /**
+         * @param query the query to run. Defaults to all documents.
+         * @return this builder
+         */
+        public Builder<T> query(Query query) {
+            this.query = query;
+            return this;
+        }
+
+        /**
+         * @param slices the number of slices. Defaults to the number of available processors.
+         *               It should ideally be a multiple of the number of shards.
+         * @return this builder
+         */
+        public Builder<T> slices(int slices) {
+            this.slices = slices;
+            return this;
+        }
+
+        /**
+         * @param pageSize the number of hits per request and per slice. Defaults to 1000.
+         * @return this builder
+         */
+        public Builder<T> pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param prefetchPages the number of pages requested in advance for each slice. Defaults to 1.
+         * @return this builder
+         */
+        public Builder<T> prefetchPages(int prefetchPages) {
+            this.prefetchPages = prefetchPages;
+            return this;
+        }
+
+        /**
+         * @param keepAlive how long the point in time is kept alive between two requests. Defaults to "1m".
+         * @return this builder
+         */
+        public Builder<T> keepAlive(String keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * @param executor the executor used by {@link #forEach(SliceConsumer)}. Defaults to the common
+         *                 {@link ForkJoinPool}. Slices are blocking while waiting for the next page, so
+         *                 use a dedicated pool for long-running exports.
+         * @return this builder
+         */
+        public Builder<T> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public SlicedScan<T> build() {
+            Assert.isTrue(indices != null && !indices.isEmpty(), "At least one index must be provided.");
+            Assert.isTrue(slices > 0, "slices must be positive.");
+            Assert.notNull(executor, "executor must not be null.");
+            return new SlicedScan<>(this);
+        }
+    }
+}
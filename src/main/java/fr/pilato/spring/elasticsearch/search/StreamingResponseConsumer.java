@@ -0,0 +1,126 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.search;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gives the body of a successful response as an {@link InputStream} as soon as the headers
+ * are received. The I/O thread stops reading from the socket when the buffer is full and
+ * resumes when the reader has consumed it, so at most {@code bufferSize} bytes are held in
+ * memory. Error responses are buffered, so the low level client can report them as usual.
+ */
+class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private final int bufferSize;
+    private final int errorBufferLimit;
+    private final CompletableFuture<InputStream> body;
+
+    private HttpResponse response;
+    private SharedInputBuffer streamed;
+    private ByteArrayOutputStream buffered;
+
+    /**
+     * @param bufferSize        the size of the buffer between the I/O thread and the reader
+     * @param errorBufferLimit  the maximum size of an error response
+     * @param body              completed with the body of the first successful response
+     */
+    StreamingResponseConsumer(int bufferSize, int errorBufferLimit, CompletableFuture<InputStream> body) {
+        this.bufferSize = bufferSize;
+        this.errorBufferLimit = errorBufferLimit;
+        this.body = body;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        int status = response.getStatusLine().getStatusCode();
+        if (status >= 200 && status < 300 && !body.isDone()) {
+            streamed = new SharedInputBuffer(bufferSize, HeapByteBufferAllocator.INSTANCE);
+            body.complete(new ContentInputStream(streamed));
+        } else {
+            long length = entity.getContentLength();
+            buffered = new ByteArrayOutputStream(length > 0 && length < errorBufferLimit ? (int) length : 4096);
+        }
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+        if (streamed != null) {
+            streamed.consumeContent(decoder, ioControl);
+            return;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(4096);
+        int read;
+        while ((read = decoder.read(chunk)) > 0) {
+            if (buffered.size() + read > errorBufferLimit) {
+                throw new IOException("Error response is too long. Limit is [" + errorBufferLimit + "] bytes.");
+            }
+            buffered.write(chunk.array(), 0, read);
+            chunk.clear();
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (buffered != null) {
+            response.setEntity(new ByteArrayEntity(buffered.toByteArray(), ContentType.APPLICATION_JSON));
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        // When the exchange failed or has been cancelled, the reader must not wait for more data
+        if (streamed != null && (getException() != null || isDone() && getResult() == null)) {
+            streamed.shutdown();
+        }
+        buffered = null;
+    }
+
+    /**
+     * Stops the transfer when the reader does not need the rest of the response.
+     */
+    void shutdown() {
+        if (streamed != null) {
+            streamed.shutdown();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.slowlog;
+
+import co.elastic.clients.json.JsonpSerializable;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import fr.pilato.spring.elasticsearch.transport.Endpoints;
+import jakarta.json.stream.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures the API calls and reports the ones above their threshold.
+ */
+class SlowLogTransport extends DelegatingTransport {
+
+    private final SlowRequestLog slowLog;
+
+    SlowLogTransport(ElasticsearchTransport delegate, SlowRequestLog slowLog) {
+        super(delegate);
+        this.slowLog = slowLog;
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request,
+                                                                  Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                  TransportOptions options) throws IOException {
+        SlowRequestLog.Call call = new SlowRequestLog.Call();
+        String callId = slowLog.calls().register(call);
+        long start = System.nanoTime();
+        ResponseT response = null;
+        boolean failed = true;
+        try {
+            response = delegate.performRequest(request, endpoint, withCall(options, callId));
+            failed = false;
+            return response;
+        } finally {
+            slowLog.calls().unregister(callId);
+            completed(request, endpoint, call, response, failed, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request,
+                                                                                          Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                                          TransportOptions options) {
+        SlowRequestLog.Call call = new SlowRequestLog.Call();
+        String callId = slowLog.calls().register(call);
+        long start = System.nanoTime();
+        CompletableFuture<ResponseT> future;
+        try {
+            future = delegate.performRequestAsync(request, endpoint, withCall(options, callId));
+        } catch (RuntimeException e) {
+            slowLog.calls().unregister(callId);
+            throw e;
+        }
+        return future.whenComplete((response, e) -> {
+            slowLog.calls().unregister(callId);
+            completed(request, endpoint, call, response, e != null, System.nanoTime() - start);
+        });
+    }
+
+    private TransportOptions withCall(TransportOptions options, String callId) {
+        TransportOptions base = options != null ? options : delegate.options();
+        return slowLog.calls().withCall(base, callId).build();
+    }
+
+    private <RequestT> void completed(RequestT request, Endpoint<RequestT, ?, ?> endpoint, SlowRequestLog.Call call,
+                                      Object response, boolean failed, long durationNanos) {
+        String name = Endpoints.name(endpoint);
+        if (durationNanos < slowLog.thresholdNanos(name)) {
+            return;
+        }
+        String index;
+        try {
+            index = Endpoints.indexFromPath(endpoint.requestUrl(request));
+        } catch (RuntimeException e) {
+            index = Endpoints.UNKNOWN;
+        }
+        slowLog.completed(name, index, call.node, call.status, Endpoints.took(response),
+                durationNanos, () -> body(request), failed);
+    }
+
+    private String body(Object request) {
+        if (!(request instanceof JsonpSerializable serializable)) {
+            return null;
+        }
+        TruncatingWriter writer = new TruncatingWriter(slowLog.maxBodyLength());
+        try (JsonGenerator generator = delegate.jsonpMapper().jsonProvider().createGenerator(writer)) {
+            serializable.serialize(generator, delegate.jsonpMapper());
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Keeps the first characters only, so large bodies are never held in memory.
+     */
+    private static final class TruncatingWriter extends Writer {
+        private final StringBuilder kept = new StringBuilder();
+        private final int max;
+        private long dropped;
+
+        private TruncatingWriter(int max) {
+            this.max = max;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            int keep = Math.max(0, Math.min(length, max - kept.length()));
+            kept.append(buffer, offset, keep);
+            dropped += length - keep;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return dropped == 0 ? kept.toString() : kept + "... [" + dropped + " more chars]";
+        }
+    }
+}
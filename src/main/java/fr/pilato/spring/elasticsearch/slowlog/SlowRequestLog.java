@@ -0,0 +1,362 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.slowlog;
+
+import co.elastic.clients.transport.ElasticsearchTransport;
+import fr.pilato.spring.elasticsearch.transport.CallRegistry;
+import fr.pilato.spring.elasticsearch.transport.Endpoints;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Logs the requests which took more than a given time, as seen by the application.
+ * <p>
+ * Each line gives the endpoint, the index, the node which answered, the time spent by
+ * Elasticsearch ({@code took}, when the API returns it) and the time seen by the client.
+ * A large difference between both means that the time was spent in the network or waiting
+ * for a connection from the pool, and not in the cluster.
+ * </p>
+ * <pre>
+ * {@code
+ * factory.setSlowRequestLog(new SlowRequestLog.Builder()
+ *         .threshold(Duration.ofMillis(500))
+ *         .threshold("bulk", Duration.ofSeconds(2))
+ *         .build());
+ * }
+ * </pre>
+ * <p>
+ * The request body is only serialized for the slow requests which are sampled, and the
+ * number of lines written per second is limited: the requests above the limit are only
+ * counted and this count is given on the next line.
+ * </p>
+ * <p>
+ * The requests sent with the low level client, like the streamed searches or the request
+ * templates, are measured from the time the request is sent to the time the response headers
+ * are received, and their endpoint is found from the path.
+ * </p>
+ */
+public class SlowRequestLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowRequestLog.class);
+
+    /**
+     * Header used to find the API call of an HTTP request. It is never sent to Elasticsearch.
+     */
+    static final String CALL_HEADER = "X-Spring-Elasticsearch-Slowlog";
+
+    private static final String REQUEST_ATTRIBUTE = SlowRequestLog.class.getName() + ".request";
+
+    /**
+     * A slow request.
+     * @param endpoint      the API, like {@code search}
+     * @param index         the index or {@code none}
+     * @param node          the last node called, or null if no request has been sent
+     * @param status        the HTTP status or 0 if no response has been received
+     * @param took          the time spent by Elasticsearch in milliseconds or null if unknown
+     * @param duration      the time seen by the client in milliseconds
+     * @param body          the request body, truncated, or null if it has not been sampled
+     * @param failed        true if the call failed
+     * @param suppressed    the number of slow requests not reported since the previous one
+     */
+    public record SlowRequest(String endpoint, String index, String node, int status, Long took, long duration,
+                              String body, boolean failed, long suppressed) {
+    }
+
+    /**
+     * What we learn about an API call from its HTTP requests.
+     */
+    static final class Call {
+        volatile String node;
+        volatile int status;
+    }
+
+    /**
+     * A request sent with the low level client, without an API call.
+     */
+    private record LowLevelRequest(HttpRequest request, String node, long start) {
+    }
+
+    private final long defaultThresholdNanos;
+    private final Map<String, Long> thresholdsNanos;
+    private final double bodySampleRate;
+    private final int maxBodyLength;
+    private final int maxPerSecond;
+    private final Consumer<SlowRequest> handler;
+
+    private final CallRegistry<Call> calls = new CallRegistry<>(CALL_HEADER);
+
+    private long windowStart;
+    private int windowCount;
+    private long suppressed;
+
+    private SlowRequestLog(Builder builder) {
+        this.defaultThresholdNanos = builder.threshold.toNanos();
+        this.thresholdsNanos = new HashMap<>();
+        builder.thresholds.forEach((endpoint, threshold) -> thresholdsNanos.put(endpoint, threshold.toNanos()));
+        this.bodySampleRate = builder.bodySampleRate;
+        this.maxBodyLength = builder.maxBodyLength;
+        this.maxPerSecond = builder.maxPerSecond;
+        this.handler = builder.handler != null ? builder.handler : SlowRequestLog::log;
+    }
+
+    /**
+     * Adds the interceptors finding the node and the status. This is done by the factory.
+     * @param builder the HTTP client builder
+     */
+    public void instrument(HttpAsyncClientBuilder builder) {
+        builder.addInterceptorLast(requestInterceptor());
+        builder.addInterceptorFirst(responseInterceptor());
+    }
+
+    /**
+     * Wraps the transport to measure the calls. This is done by the factory.
+     * @param transport the transport
+     * @return the transport logging the slow requests
+     */
+    public ElasticsearchTransport instrument(ElasticsearchTransport transport) {
+        return new SlowLogTransport(transport, this);
+    }
+
+    long thresholdNanos(String endpoint) {
+        return thresholdsNanos.getOrDefault(endpoint, defaultThresholdNanos);
+    }
+
+    boolean sampleBody() {
+        return bodySampleRate > 0 && ThreadLocalRandom.current().nextDouble() < bodySampleRate;
+    }
+
+    int maxBodyLength() {
+        return maxBodyLength;
+    }
+
+    CallRegistry<Call> calls() {
+        return calls;
+    }
+
+    /**
+     * Reserves a line in the current second.
+     * @return the number of slow requests suppressed since the last line, or -1 if the limit is reached
+     */
+    synchronized long acquire() {
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowCount = 0;
+        }
+        if (windowCount >= maxPerSecond) {
+            suppressed++;
+            return -1;
+        }
+        windowCount++;
+        long previouslySuppressed = suppressed;
+        suppressed = 0;
+        return previouslySuppressed;
+    }
+
+    /**
+     * Reports a request if it is above the threshold of its endpoint.
+     * @param body gives the request body when it is sampled, or null
+     */
+    void completed(String endpoint, String index, String node, int status, Long took, long durationNanos,
+                   Supplier<String> body, boolean failed) {
+        if (durationNanos < thresholdNanos(endpoint)) {
+            return;
+        }
+        long suppressed = acquire();
+        if (suppressed < 0) {
+            return;
+        }
+        report(new SlowRequest(endpoint, index, node, status, took, TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                sampleBody() ? body.get() : null, failed, suppressed));
+    }
+
+    void report(SlowRequest request) {
+        try {
+            handler.accept(request);
+        } catch (RuntimeException e) {
+            logger.debug("Failed to report a slow request", e);
+        }
+    }
+
+    private static void log(SlowRequest request) {
+        logger.warn("Slow request [{}] on [{}] node [{}] status [{}]: took [{}] by elasticsearch, [{}ms] by the client{}{}{}",
+                request.endpoint(), request.index(), request.node(), request.status(),
+                request.took() != null ? request.took() + "ms" : "n/a", request.duration(),
+                request.failed() ? ", failed" : "",
+                request.body() != null ? ", body " + request.body() : "",
+                request.suppressed() > 0 ? " (" + request.suppressed() + " slow requests not logged)" : "");
+    }
+
+    HttpRequestInterceptor requestInterceptor() {
+        return (HttpRequest request, HttpContext context) -> {
+            Call call = calls.attach(request, context);
+            HttpHost target = (HttpHost) context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
+            if (call == null) {
+                context.setAttribute(REQUEST_ATTRIBUTE, new LowLevelRequest(request,
+                        target != null ? target.toHostString() : null, System.nanoTime()));
+            } else if (target != null) {
+                call.node = target.toHostString();
+            }
+        };
+    }
+
+    HttpResponseInterceptor responseInterceptor() {
+        return (HttpResponse response, HttpContext context) -> {
+            Call call = calls.find(context);
+            if (call != null) {
+                call.status = response.getStatusLine().getStatusCode();
+            } else if (context.getAttribute(REQUEST_ATTRIBUTE) instanceof LowLevelRequest sent) {
+                context.removeAttribute(REQUEST_ATTRIBUTE);
+                int status = response.getStatusLine().getStatusCode();
+                String uri = sent.request().getRequestLine().getUri();
+                completed(Endpoints.nameFromPath(uri), Endpoints.indexFromPath(uri), sent.node(), status, null,
+                        System.nanoTime() - sent.start(), () -> body(sent.request()), status >= 400);
+            }
+        };
+    }
+
+    /**
+     * Reads the first bytes of the body of a low level request, if it can be read again.
+     */
+    private String body(HttpRequest request) {
+        if (!(request instanceof HttpEntityEnclosingRequest enclosing) || enclosing.getEntity() == null
+                || !enclosing.getEntity().isRepeatable()) {
+            return null;
+        }
+        HttpEntity entity = enclosing.getEntity();
+        try (InputStream content = entity.getContent()) {
+            byte[] kept = content.readNBytes(maxBodyLength);
+            String body = new String(kept, StandardCharsets.UTF_8);
+            long length = entity.getContentLength();
+            if (length > kept.length) {
+                return body + "... [" + (length - kept.length) + " more bytes]";
+            }
+            return content.read() < 0 ? body : body + "...";
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builder for {@link SlowRequestLog}.
+     */
+    public static class Builder {
+        private Duration threshold = Duration.ofSeconds(1);
+        private final Map<String, Duration> thresholds = new HashMap<>();
+        private double bodySampleRate = 0.1;
+        private int maxBodyLength = 1024;
+        private int maxPerSecond = 10;
+        private Consumer<SlowRequest> handler;
+
+        /**
+         * Threshold for the endpoints without a specific one. Defaults to 1 second.
+         * @param threshold the threshold
+         * @return this builder
+         */
+        public Builder threshold(Duration threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Threshold for a given endpoint.
+         * @param endpoint  the endpoint name, like {@code search}, {@code bulk} or {@code indices.refresh}
+         * @param threshold the threshold
+         * @return this builder
+         */
+        public Builder threshold(String endpoint, Duration threshold) {
+            Assert.hasText(endpoint, "endpoint must not be empty.");
+            Assert.notNull(threshold, "threshold must not be null.");
+            this.thresholds.put(endpoint, threshold);
+            return this;
+        }
+
+        /**
+         * Ratio of the slow requests which are logged with their body. Defaults to 0.1.
+         * @param bodySampleRate between 0 (never) and 1 (always)
+         * @return this builder
+         */
+        public Builder bodySampleRate(double bodySampleRate) {
+            this.bodySampleRate = bodySampleRate;
+            return this;
+        }
+
+        /**
+         * Maximum number of characters of the body which are logged. Defaults to 1024.
+         * @param maxBodyLength the number of characters
+         * @return this builder
+         */
+        public Builder maxBodyLength(int maxBodyLength) {
+            this.maxBodyLength = maxBodyLength;
+            return this;
+        }
+
+        /**
+         * Maximum number of slow requests logged per second. Defaults to 10.
+         * @param maxPerSecond the number of lines per second
+         * @return this builder
+         */
+        public Builder maxPerSecond(int maxPerSecond) {
+            this.maxPerSecond = maxPerSecond;
+            return this;
+        }
+
+        /**
+         * What to do with the slow requests. Defaults to a WARN line in the
+         * {@code fr.pilato.spring.elasticsearch.slowlog.SlowRequestLog} logger.
+         * @param handler the handler
+         * @return this builder
+         */
+        public Builder handler(Consumer<SlowRequest> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        public SlowRequestLog build() {
+            Assert.notNull(threshold, "threshold must not be null.");
+            Assert.isTrue(bodySampleRate >= 0 && bodySampleRate <= 1, "bodySampleRate must be between 0 and 1.");
+            Assert.isTrue(maxBodyLength > 0, "maxBodyLength must be positive.");
+            Assert.isTrue(maxPerSecond > 0, "maxPerSecond must be positive.");
+            return new SlowRequestLog(this);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.tenant;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.transport.TransportOptions;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.client.RequestOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Gives a client per tenant, all of them using the connection pool of a single client.
+ * <p>
+ * Each tenant client is a light facade over the client built by the factory, sending the
+ * {@code Authorization} header of the tenant with every request. The facades are kept in a
+ * LRU cache bounded by a number of tenants, and are removed when they have not been used for
+ * {@code idleTimeout}. The credentials of a tenant are resolved again when its facade is created again.
+ * </p>
+ * <pre>
+ * {@code
+ * TenantClientProvider tenants = new TenantClientProvider.Builder(factory.getObject())
+ *         .credentials(tenant -> Credentials.apiKey(vault.apiKey(tenant)))
+ *         .maxTenants(1000)
+ *         .idleTimeout(Duration.ofMinutes(10))
+ *         .build();
+ * tenants.client("acme").search(s -> s.index("orders"), Order.class);
+ * }
+ * </pre>
+ * <p>
+ * The requests of a tenant never fall back to the credentials of the factory: the authentication
+ * of the HTTP client is disabled for them, so wrong credentials fail with a 401 error.
+ * The other settings of the factory (metrics, tracing, caches, response buffers...) apply to all
+ * the tenants.
+ * </p>
+ */
+public class TenantClientProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantClientProvider.class);
+
+    /**
+     * Credentials of a tenant, as sent in the {@code Authorization} header.
+     * @param authorization the value of the header
+     */
+    public record Credentials(String authorization) {
+        public Credentials {
+            Assert.hasText(authorization, "authorization must not be empty.");
+        }
+
+        /**
+         * @param username  the username
+         * @param password  the password
+         * @return basic credentials
+         */
+        public static Credentials basic(String username, String password) {
+            Assert.hasText(username, "username must not be empty.");
+            Assert.notNull(password, "password must not be null.");
+            return new Credentials("Basic " + base64(username + ":" + password));
+        }
+
+        /**
+         * @param encoded   the encoded API key, as returned by the create API key API
+         * @return API key credentials
+         */
+        public static Credentials apiKey(String encoded) {
+            return new Credentials("ApiKey " + encoded);
+        }
+
+        /**
+         * @param id    the API key id
+         * @param key   the API key
+         * @return API key credentials
+         */
+        public static Credentials apiKey(String id, String key) {
+            return new Credentials("ApiKey " + base64(id + ":" + key));
+        }
+
+        /**
+         * @param token the access token
+         * @return bearer token credentials
+         */
+        public static Credentials bearer(String token) {
+            return new Credentials("Bearer " + token);
+        }
+
+        private static String base64(String value) {
+            return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String toString() {
+            return "Credentials[...]";
+        }
+    }
+
+    /**
+     * Provider statistics.
+     * @param hits      number of calls served with an existing tenant client
+     * @param misses    number of tenant clients created
+     * @param evictions number of tenant clients removed because of the size limit or the idle timeout
+     * @param tenants   current number of tenant clients
+     */
+    public record Stats(long hits, long misses, long evictions, int tenants) {
+    }
+
+    private static final class Entry {
+        private final ElasticsearchClient client;
+        private long lastUsed;
+
+        private Entry(ElasticsearchClient client, long lastUsed) {
+            this.client = client;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private final ElasticsearchClient client;
+    private final RequestOptions requestOptions;
+    private final Function<String, Credentials> credentials;
+    private final int maxTenants;
+    private final long idleTimeoutNanos;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private TenantClientProvider(Builder builder) {
+        this.client = builder.client;
+        this.requestOptions = requestOptions(builder.client._transportOptions());
+        this.credentials = builder.credentials;
+        this.maxTenants = builder.maxTenants;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+    }
+
+    /**
+     * Get the client of a tenant. It is created if needed.
+     * @param tenant    the tenant
+     * @return the client, sending the credentials of the tenant
+     * @throws IllegalArgumentException if no credentials are known for this tenant
+     */
+    public ElasticsearchClient client(String tenant) {
+        Assert.hasText(tenant, "tenant must not be empty.");
+        synchronized (entries) {
+            long now = System.nanoTime();
+            evictIdle(now);
+            Entry entry = entries.get(tenant);
+            if (entry != null) {
+                entry.lastUsed = now;
+                hits.increment();
+                return entry.client;
+            }
+        }
+
+        // Resolving the credentials might be slow, so we don't hold the lock
+        Credentials tenantCredentials = credentials.apply(tenant);
+        if (tenantCredentials == null) {
+            throw new IllegalArgumentException("No credentials for tenant [" + tenant + "]");
+        }
+        ElasticsearchClient tenantClient = client.withTransportOptions(transportOptions(tenantCredentials));
+
+        synchronized (entries) {
+            long now = System.nanoTime();
+            Entry entry = entries.get(tenant);
+            if (entry != null) {
+                // Created by another thread in the meantime
+                entry.lastUsed = now;
+                hits.increment();
+                return entry.client;
+            }
+            misses.increment();
+            logger.debug("Creating client for tenant [{}]", tenant);
+            entries.put(tenant, new Entry(tenantClient, now));
+            evictEldest();
+            return tenantClient;
+        }
+    }
+
+    /**
+     * Remove the client of a tenant, for example when its credentials have changed.
+     * The clients already given keep on using the previous credentials.
+     * @param tenant    the tenant
+     */
+    public void evict(String tenant) {
+        synchronized (entries) {
+            if (entries.remove(tenant) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove the clients which have not been used for {@code idleTimeout}. This is also done
+     * each time a client is asked for.
+     */
+    public void evictIdle() {
+        synchronized (entries) {
+            evictIdle(System.nanoTime());
+        }
+    }
+
+    /**
+     * Remove all the tenant clients.
+     */
+    public void clear() {
+        synchronized (entries) {
+            evictions.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+        }
+    }
+
+    private void evictIdle(long now) {
+        // Entries are in access order, so we can stop at the first one which is not idle
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (now - eldest.getValue().lastUsed < idleTimeoutNanos) {
+                break;
+            }
+            logger.debug("Removing idle client for tenant [{}]", eldest.getKey());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (entries.size() > maxTenants && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private TransportOptions transportOptions(Credentials tenantCredentials) {
+        RequestConfig requestConfig = requestOptions.getRequestConfig();
+        return new RestClientOptions(requestOptions.toBuilder()
+                .addHeader(HttpHeaders.AUTHORIZATION, tenantCredentials.authorization())
+                // Never answer an authentication challenge with the credentials of the factory
+                .setRequestConfig((requestConfig != null ? RequestConfig.copy(requestConfig) : RequestConfig.custom())
+                        .setAuthenticationEnabled(false)
+                        .build())
+                .build());
+    }
+
+    private static RequestOptions requestOptions(TransportOptions options) {
+        return options instanceof RestClientOptions restClientOptions ?
+                restClientOptions.restClientRequestOptions() : RequestOptions.DEFAULT;
+    }
+
+    /**
+     * Builder for {@link TenantClientProvider}.
+     */
+    public static class Builder {
+        private final ElasticsearchClient client;
+        private Function<String, Credentials> credentials;
+        private int maxTenants = 1000;
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        /**
+         * @param client the client built by the factory. Its connection pool is used by all the tenants.
+         */
+        public Builder(ElasticsearchClient client) {
+            this.client = client;
+        }
+
+        /**
+         * @param credentials gives the credentials of a tenant, or null if the tenant is unknown.
+         *                    Called when the client of a tenant is created.
+         * @return this builder
+         */
+        public Builder credentials(Function<String, Credentials> credentials) {
+            this.credentials = credentials;
+            return this;
+        }
+
+        /**
+         * @param maxTenants the maximum number of tenant clients. Defaults to 1000.
+         * @return this builder
+         */
+        public Builder maxTenants(int maxTenants) {
+            this.maxTenants = maxTenants;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout the time after which an unused tenant client is removed. Defaults to 10 minutes.
+         * @return this builder
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public TenantClientProvider build() {
+            Assert.notNull(client, "client must not be null.");
+            Assert.notNull(credentials, "credentials must not be null.");
+            Assert.isTrue(maxTenants > 0, "maxTenants must be positive.");
+            Assert.notNull(idleTimeout, "idleTimeout must not be null.");
+            return new TenantClientProvider(this);
+        }
+    }
+}
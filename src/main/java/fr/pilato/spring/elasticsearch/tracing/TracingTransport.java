@@ -0,0 +1,126 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.tracing;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import fr.pilato.spring.elasticsearch.transport.Endpoints;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Creates a span per API call and sends the trace context to Elasticsearch.
+ */
+class TracingTransport extends DelegatingTransport {
+
+    private final TransportTracing tracing;
+
+    TracingTransport(ElasticsearchTransport delegate, TransportTracing tracing) {
+        super(delegate);
+        this.tracing = tracing;
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request,
+                                                                  Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                  TransportOptions options) throws IOException {
+        Span span = startSpan(endpoint);
+        String callId = tracing.register(new TransportTracing.Call(span));
+        try (Scope ignored = span.makeCurrent()) {
+            ResponseT response = delegate.performRequest(request, endpoint, withContext(options, callId));
+            took(span, response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            failed(span, e);
+            throw e;
+        } finally {
+            tracing.unregister(callId);
+            span.end();
+        }
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request,
+                                                                                          Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                                          TransportOptions options) {
+        Span span = startSpan(endpoint);
+        String callId = tracing.register(new TransportTracing.Call(span));
+        CompletableFuture<ResponseT> future;
+        try (Scope ignored = span.makeCurrent()) {
+            future = delegate.performRequestAsync(request, endpoint, withContext(options, callId));
+        } catch (RuntimeException e) {
+            failed(span, e);
+            tracing.unregister(callId);
+            span.end();
+            throw e;
+        }
+        return future.whenComplete((response, e) -> {
+            if (e != null) {
+                failed(span, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                took(span, response);
+            }
+            tracing.unregister(callId);
+            span.end();
+        });
+    }
+
+    private Span startSpan(Endpoint<?, ?, ?> endpoint) {
+        String name = Endpoints.name(endpoint);
+        return tracing.tracer().spanBuilder(name)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("db.system", "elasticsearch")
+                .setAttribute("db.operation", name)
+                .startSpan();
+    }
+
+    private TransportOptions withContext(TransportOptions options, String callId) {
+        TransportOptions base = options != null ? options : delegate.options();
+        TransportOptions.Builder builder = tracing.calls().withCall(base, callId);
+        // Sends traceparent (and any other configured propagation header)
+        tracing.propagator().inject(Context.current(), builder, TransportOptions.Builder::addHeader);
+        return builder.build();
+    }
+
+    private static void took(Span span, Object response) {
+        Long took = Endpoints.took(response);
+        if (took != null && span.isRecording()) {
+            span.setAttribute("elasticsearch.took", took);
+        }
+    }
+
+    private static void failed(Span span, Throwable e) {
+        span.recordException(e);
+        span.setStatus(StatusCode.ERROR, e.getMessage());
+        if (e instanceof ElasticsearchException ee) {
+            span.setAttribute("http.response.status_code", ee.status());
+        }
+    }
+}
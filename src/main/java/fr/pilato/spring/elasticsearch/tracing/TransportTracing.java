@@ -0,0 +1,237 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.tracing;
+
+import co.elastic.clients.transport.ElasticsearchTransport;
+import fr.pilato.spring.elasticsearch.transport.CallRegistry;
+import fr.pilato.spring.elasticsearch.transport.Endpoints;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OpenTelemetry spans for the requests sent to Elasticsearch.
+ * <p>
+ * Each API call creates a {@code CLIENT} span named after the endpoint ({@code search},
+ * {@code bulk}...) with the following attributes:
+ * </p>
+ * <ul>
+ *   <li>{@code db.system}, {@code db.operation} and {@code db.elasticsearch.index},</li>
+ *   <li>{@code server.address} and {@code server.port} of the last node called,</li>
+ *   <li>{@code http.request.method}, {@code http.response.status_code},
+ *   {@code http.request.body.size} and {@code http.response.body.size} of the last attempt,</li>
+ *   <li>{@code elasticsearch.attempts}: the number of nodes called, more than 1 when retrying,</li>
+ *   <li>{@code elasticsearch.took}: the time spent by Elasticsearch for the APIs returning it.</li>
+ * </ul>
+ * <p>
+ * The trace context ({@code traceparent}) is sent to Elasticsearch, so its own spans can be
+ * linked to the application traces.
+ * </p>
+ * <p>
+ * The requests sent with the low level client, like the streamed searches, the request templates
+ * or the bootstrap of the factory, create a span per HTTP request, named after the endpoint found
+ * in the path. It is ended when the response is received, so it is not exported if the node can
+ * not be reached.
+ * </p>
+ * <pre>
+ * {@code
+ * factory.setTransportTracing(new TransportTracing.Builder(openTelemetry).build());
+ * }
+ * </pre>
+ * <p>
+ * Tracing is opt-in: when it is not set on the factory, neither the transport nor the HTTP
+ * client are modified.
+ * </p>
+ */
+public class TransportTracing {
+
+    /**
+     * Header used to find the span of an HTTP request. It is never sent to Elasticsearch.
+     */
+    static final String CALL_HEADER = "X-Spring-Elasticsearch-Call";
+
+    static final String INSTRUMENTATION_NAME = "fr.pilato.spring.elasticsearch";
+
+    private static final String REQUEST_SPAN_ATTRIBUTE = TransportTracing.class.getName() + ".span";
+
+    /**
+     * What we learn about an API call from its HTTP requests.
+     */
+    static final class Call {
+        final Span span;
+        final AtomicInteger attempts = new AtomicInteger();
+
+        Call(Span span) {
+            this.span = span;
+        }
+    }
+
+    private final Tracer tracer;
+    private final TextMapPropagator propagator;
+    private final CallRegistry<Call> calls = new CallRegistry<>(CALL_HEADER);
+
+    private TransportTracing(Builder builder) {
+        this.tracer = builder.openTelemetry.getTracer(INSTRUMENTATION_NAME);
+        this.propagator = builder.openTelemetry.getPropagators().getTextMapPropagator();
+    }
+
+    /**
+     * Adds the interceptors collecting the HTTP information. This is done by the factory.
+     * @param builder the HTTP client builder
+     */
+    public void instrument(HttpAsyncClientBuilder builder) {
+        builder.addInterceptorLast(requestInterceptor());
+        builder.addInterceptorFirst(responseInterceptor());
+    }
+
+    /**
+     * Wraps the transport to create the spans. This is done by the factory.
+     * @param transport the transport
+     * @return the traced transport
+     */
+    public ElasticsearchTransport instrument(ElasticsearchTransport transport) {
+        return new TracingTransport(transport, this);
+    }
+
+    Tracer tracer() {
+        return tracer;
+    }
+
+    TextMapPropagator propagator() {
+        return propagator;
+    }
+
+    CallRegistry<Call> calls() {
+        return calls;
+    }
+
+    String register(Call call) {
+        return calls.register(call);
+    }
+
+    void unregister(String id) {
+        Call call = calls.unregister(id);
+        if (call != null && call.span.isRecording()) {
+            call.span.setAttribute("elasticsearch.attempts", call.attempts.get());
+        }
+    }
+
+    HttpRequestInterceptor requestInterceptor() {
+        return (HttpRequest request, HttpContext context) -> {
+            Call call = calls.attach(request, context);
+            Span span;
+            if (call != null) {
+                call.attempts.incrementAndGet();
+                span = call.span;
+            } else {
+                // Sent with the low level client: there is no API call, so the span is the HTTP request
+                span = startRequestSpan(request);
+                context.setAttribute(REQUEST_SPAN_ATTRIBUTE, span);
+            }
+            if (!span.isRecording()) {
+                return;
+            }
+            span.setAttribute("http.request.method", request.getRequestLine().getMethod());
+            span.setAttribute("db.elasticsearch.index", Endpoints.indexFromPath(request.getRequestLine().getUri()));
+            HttpHost target = (HttpHost) context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
+            if (target != null) {
+                span.setAttribute("server.address", target.getHostName());
+                span.setAttribute("server.port", target.getPort());
+            }
+            if (request instanceof HttpEntityEnclosingRequest enclosing && enclosing.getEntity() != null
+                    && enclosing.getEntity().getContentLength() >= 0) {
+                span.setAttribute("http.request.body.size", enclosing.getEntity().getContentLength());
+            }
+        };
+    }
+
+    HttpResponseInterceptor responseInterceptor() {
+        return (HttpResponse response, HttpContext context) -> {
+            Call call = calls.find(context);
+            Span requestSpan = (Span) context.getAttribute(REQUEST_SPAN_ATTRIBUTE);
+            Span span = call != null ? call.span : requestSpan;
+            if (span == null) {
+                return;
+            }
+            int status = response.getStatusLine().getStatusCode();
+            if (span.isRecording()) {
+                span.setAttribute("http.response.status_code", status);
+                HttpEntity entity = response.getEntity();
+                if (entity != null && entity.getContentLength() >= 0) {
+                    span.setAttribute("http.response.body.size", entity.getContentLength());
+                }
+            }
+            if (requestSpan != null) {
+                context.removeAttribute(REQUEST_SPAN_ATTRIBUTE);
+                if (status >= 400) {
+                    requestSpan.setStatus(StatusCode.ERROR);
+                }
+                requestSpan.end();
+            }
+        };
+    }
+
+    private Span startRequestSpan(HttpRequest request) {
+        String name = Endpoints.nameFromPath(request.getRequestLine().getUri());
+        Span span = tracer.spanBuilder(name)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("db.system", "elasticsearch")
+                .setAttribute("db.operation", name)
+                .startSpan();
+        propagator.inject(Context.current().with(span), request, HttpRequest::setHeader);
+        return span;
+    }
+
+    /**
+     * Builder for {@link TransportTracing}.
+     */
+    public static class Builder {
+        private final OpenTelemetry openTelemetry;
+
+        /**
+         * @param openTelemetry the OpenTelemetry instance, like {@code GlobalOpenTelemetry.get()}
+         */
+        public Builder(OpenTelemetry openTelemetry) {
+            this.openTelemetry = openTelemetry;
+        }
+
+        public TransportTracing build() {
+            Assert.notNull(openTelemetry, "openTelemetry must not be null.");
+            return new TransportTracing(this);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reusable byte arrays for the request and response bodies.
+ * <p>
+ * Arrays are handed out by size class, from 4kb up to {@code maxBufferSize}, each class being
+ * twice the size of the previous one. Larger arrays are allocated and left to the garbage
+ * collector. The free arrays are kept in stripes selected by the calling thread, so that the
+ * I/O threads filling response buffers and the application threads releasing them rarely
+ * contend on the same lock.
+ * </p>
+ * <pre>
+ * {@code
+ * factory.setBufferPool(new BufferPool.Builder()
+ *         .maxBufferSize(1024 * 1024)
+ *         .maxBuffers(256)
+ *         .build());
+ * }
+ * </pre>
+ * <p>
+ * An array must not be used anymore once it has been released.
+ * </p>
+ */
+public class BufferPool {
+
+    static final int MIN_BUFFER_SIZE = 4096;
+
+    /**
+     * Counters of a pool.
+     * @param reused    the number of arrays taken from the pool
+     * @param allocated the number of arrays allocated because the pool had none
+     * @param released  the number of arrays given back to the pool
+     * @param dropped   the number of arrays released but not kept, because the pool was full or they were too large
+     */
+    public record Stats(long reused, long allocated, long released, long dropped) {
+    }
+
+    private final int maxBufferSize;
+    private final int maxBuffersPerStripe;
+    private final Stripe[] stripes;
+
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private BufferPool(Builder builder) {
+        this.maxBufferSize = sizeClass(builder.maxBufferSize);
+        int classes = classIndex(maxBufferSize) + 1;
+        int count = Integer.highestOneBit(Math.max(1, builder.stripes));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(classes);
+        }
+        this.maxBuffersPerStripe = Math.max(1, builder.maxBuffers / count);
+    }
+
+    /**
+     * Gives an array of at least the requested size.
+     * @param minSize   the number of bytes needed
+     * @return an array, which may be larger than requested and is not cleared
+     */
+    public byte[] acquire(int minSize) {
+        if (minSize > maxBufferSize) {
+            allocated.increment();
+            return new byte[minSize];
+        }
+        int sizeClass = classIndex(sizeClass(minSize));
+        int first = stripe();
+        for (int i = 0; i < stripes.length; i++) {
+            byte[] buffer = stripes[(first + i) & (stripes.length - 1)].poll(sizeClass);
+            if (buffer != null) {
+                reused.increment();
+                return buffer;
+            }
+        }
+        allocated.increment();
+        return new byte[MIN_BUFFER_SIZE << sizeClass];
+    }
+
+    /**
+     * Gives an array back. Arrays which were not given by this pool are only kept if their size
+     * is one of the pool size classes.
+     * @param buffer    the array, may be null
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int length = buffer.length;
+        if (length < MIN_BUFFER_SIZE || length > maxBufferSize || Integer.bitCount(length) != 1
+                || !stripes[stripe()].offer(classIndex(length), buffer, maxBuffersPerStripe)) {
+            dropped.increment();
+            return;
+        }
+        released.increment();
+    }
+
+    /**
+     * @return the pool counters
+     */
+    public Stats stats() {
+        return new Stats(reused.sum(), allocated.sum(), released.sum(), dropped.sum());
+    }
+
+    /**
+     * @return the largest array kept by the pool
+     */
+    public int maxBufferSize() {
+        return maxBufferSize;
+    }
+
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & (stripes.length - 1);
+    }
+
+    private static int sizeClass(int size) {
+        return size <= MIN_BUFFER_SIZE ? MIN_BUFFER_SIZE : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int classIndex(int sizeClass) {
+        return Integer.numberOfTrailingZeros(sizeClass) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * Free arrays of one stripe, by size class.
+     */
+    private static final class Stripe {
+        private final ArrayDeque<byte[]>[] free;
+
+        @SuppressWarnings("unchecked")
+        Stripe(int classes) {
+            free = new ArrayDeque[classes];
+            for (int i = 0; i < classes; i++) {
+                free[i] = new ArrayDeque<>();
+            }
+        }
+
+        synchronized byte[] poll(int sizeClass) {
+            return free[sizeClass].pollFirst();
+        }
+
+        synchronized boolean offer(int sizeClass, byte[] buffer, int max) {
+            if (free[sizeClass].size() >= max) {
+                return false;
+            }
+            free[sizeClass].addFirst(buffer);
+            return true;
+        }
+    }
+
+    /**
+     * Builder for {@link BufferPool}.
+     */
+    public static class Builder {
+        private int maxBufferSize = 1024 * 1024;
+        private int maxBuffers = 256;
+        private int stripes = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Size of the largest array kept by the pool. It is rounded up to a power of two.
+         * Defaults to 1mb.
+         * @param maxBufferSize the size in bytes
+         * @return this builder
+         */
+        public Builder maxBufferSize(int maxBufferSize) {
+            Assert.isTrue(maxBufferSize >= MIN_BUFFER_SIZE && maxBufferSize <= 1 << 30,
+                    "maxBufferSize must be between " + MIN_BUFFER_SIZE + " and 1gb.");
+            this.maxBufferSize = maxBufferSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of free arrays of each size kept by the pool. Defaults to 256.
+         * @param maxBuffers the number of arrays
+         * @return this builder
+         */
+        public Builder maxBuffers(int maxBuffers) {
+            Assert.isTrue(maxBuffers > 0, "maxBuffers must be positive.");
+            this.maxBuffers = maxBuffers;
+            return this;
+        }
+
+        /**
+         * Number of stripes. It is rounded down to a power of two.
+         * Defaults to the number of processors.
+         * @param stripes the number of stripes
+         * @return this builder
+         */
+        public Builder stripes(int stripes) {
+            Assert.isTrue(stripes > 0, "stripes must be positive.");
+            this.stripes = stripes;
+            return this;
+        }
+
+        public BufferPool build() {
+            return new BufferPool(this);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import co.elastic.clients.transport.TransportOptions;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.protocol.HttpContext;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Links the HTTP requests sent by the low level client to the API call which sent them.
+ * <p>
+ * A transport wrapper registers each API call and sends its id in a header with the request
+ * options. The HTTP request interceptor calls {@link #attach(HttpRequest, HttpContext)}, which
+ * removes the header so it is never sent to Elasticsearch, and keeps the call in the HTTP context
+ * where the response interceptor finds it with {@link #find(HttpContext)}.
+ * </p>
+ * <p>
+ * When a node fails, the low level client sends the same request to the next node, with a new
+ * HTTP context and without the header removed by the first attempt. The call of a request is then
+ * found from the request itself, so every attempt is seen by the interceptors.
+ * </p>
+ * @param <C> what is known about a call
+ */
+public class CallRegistry<C> {
+
+    private final String header;
+    private final String attribute;
+    private final Map<String, C> calls = new ConcurrentHashMap<>();
+    // The call id of the requests already seen, which no longer have the header. Weak as a
+    // request is not used anymore once its call is done.
+    private final Map<HttpRequest, String> sent = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong callIds = new AtomicLong();
+
+    /**
+     * @param header the header used to send the call id from the transport to the HTTP interceptors
+     */
+    public CallRegistry(String header) {
+        this.header = header;
+        this.attribute = CallRegistry.class.getName() + "." + header;
+    }
+
+    /**
+     * @param call the call
+     * @return the call id, to give to {@link #withCall(TransportOptions, String)}
+     */
+    public String register(C call) {
+        String id = Long.toString(callIds.incrementAndGet());
+        calls.put(id, call);
+        return id;
+    }
+
+    /**
+     * @param id the call id
+     * @return the call, or null if it was not registered
+     */
+    public C unregister(String id) {
+        return calls.remove(id);
+    }
+
+    /**
+     * @param options the options of the request
+     * @param id      the call id
+     * @return a builder for the options of the request, with the call id header
+     */
+    public TransportOptions.Builder withCall(TransportOptions options, String id) {
+        return options.toBuilder().addHeader(header, id);
+    }
+
+    /**
+     * Removes the call id header from the request and keeps the call in the context.
+     * To be called by an HTTP request interceptor.
+     * @param request the HTTP request
+     * @param context the HTTP context
+     * @return the call or null if the request has not been sent by a registered call
+     */
+    public C attach(HttpRequest request, HttpContext context) {
+        HttpRequest original = request instanceof HttpRequestWrapper wrapper ? wrapper.getOriginal() : request;
+        String id;
+        Header idHeader = request.getFirstHeader(header);
+        if (idHeader != null) {
+            id = idHeader.getValue();
+            request.removeHeaders(header);
+            original.removeHeaders(header);
+            sent.put(original, id);
+        } else {
+            // A retry on another node
+            id = sent.get(original);
+            if (id == null) {
+                return null;
+            }
+        }
+        C call = calls.get(id);
+        if (call != null) {
+            context.setAttribute(attribute, call);
+        }
+        return call;
+    }
+
+    /**
+     * @param context the HTTP context
+     * @return the call attached to the context, or null
+     */
+    @SuppressWarnings("unchecked")
+    public C find(HttpContext context) {
+        return (C) context.getAttribute(attribute);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * A request body read from a classpath resource while it is sent, so the resource is never
+ * loaded as a {@code String} or a {@code byte[]}.
+ * <p>
+ * The entity is repeatable: the resource is opened again if the request is sent to
+ * another node.
+ * </p>
+ * <pre>
+ * {@code
+ * Request request = new Request("PUT", "/_ingest/pipeline/my-pipeline");
+ * request.setEntity(ClasspathResourceEntity.of("es/_pipelines/my-pipeline.json"));
+ * restClient.performRequest(request);
+ * }
+ * </pre>
+ */
+public final class ClasspathResourceEntity extends AbstractHttpEntity {
+
+    private final URL resource;
+    private final long length;
+
+    private ClasspathResourceEntity(URL resource, long length) {
+        this.resource = resource;
+        this.length = length;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+    }
+
+    /**
+     * Finds a JSON resource in the classpath.
+     * @param path the resource path, like {@code es/_pipelines/my-pipeline.json}. A leading {@code /} is ignored.
+     * @return the entity or null if the resource does not exist
+     * @throws IOException if the resource can not be read
+     */
+    public static ClasspathResourceEntity of(String path) throws IOException {
+        URL resource = find(path);
+        if (resource == null) {
+            return null;
+        }
+        // Only asks for the length: the content is read when the request is sent
+        URLConnection connection = resource.openConnection();
+        try (InputStream ignored = connection.getInputStream()) {
+            return new ClasspathResourceEntity(resource, connection.getContentLengthLong());
+        }
+    }
+
+    /**
+     * @param path the resource path. A leading {@code /} is ignored.
+     * @return true if the resource exists in the classpath
+     */
+    public static boolean exists(String path) {
+        return find(path) != null;
+    }
+
+    private static URL find(String path) {
+        String name = path.startsWith("/") ? path.substring(1) : path;
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        URL resource = classLoader != null ? classLoader.getResource(name) : null;
+        if (resource == null) {
+            resource = ClasspathResourceEntity.class.getClassLoader().getResource(name);
+        }
+        return resource;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return resource.openStream();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = getContent()) {
+            in.transferTo(out);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ClasspathResourceEntity{" + resource + ", length=" + length + "}";
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base class for transports adding a behavior around another transport.
+ * By default, everything is delegated to the wrapped transport.
+ */
+public abstract class DelegatingTransport implements ElasticsearchTransport {
+
+    protected final ElasticsearchTransport delegate;
+
+    protected DelegatingTransport(ElasticsearchTransport delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the wrapped transport
+     */
+    public ElasticsearchTransport getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Finds a transport of a given type in a chain of delegating transports.
+     * @param transport the transport used by a client
+     * @param type      the transport class to find
+     * @return the transport or null if the chain does not contain any
+     */
+    public static <T extends ElasticsearchTransport> T unwrap(ElasticsearchTransport transport, Class<T> type) {
+        while (transport != null) {
+            if (type.isInstance(transport)) {
+                return type.cast(transport);
+            }
+            transport = transport instanceof DelegatingTransport delegating ? delegating.getDelegate() : null;
+        }
+        return null;
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request,
+                                                                  Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                  TransportOptions options) throws IOException {
+        return delegate.performRequest(request, endpoint, options);
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request,
+                                                                                          Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                                          TransportOptions options) {
+        return delegate.performRequestAsync(request, endpoint, options);
+    }
+
+    @Override
+    public JsonpMapper jsonpMapper() {
+        return delegate.jsonpMapper();
+    }
+
+    @Override
+    public TransportOptions options() {
+        return delegate.options();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.DeleteByQueryResponse;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.ReindexResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.UpdateByQueryResponse;
+import co.elastic.clients.transport.Endpoint;
+
+/**
+ * Gives names to the requests sent to Elasticsearch, for metrics, traces and logs.
+ */
+public final class Endpoints {
+
+    public static final String UNKNOWN = "unknown";
+    public static final String NONE = "none";
+
+    private Endpoints() {
+    }
+
+    /**
+     * The endpoint ids are like {@code es/search} or {@code es/indices.create}.
+     * @param endpoint the endpoint
+     * @return the endpoint name, like {@code search} or {@code indices.create}
+     */
+    public static String name(Endpoint<?, ?, ?> endpoint) {
+        String id = endpoint.id();
+        return id.substring(id.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Finds the API name from the path when the request has not been sent by the
+     * {@link co.elastic.clients.elasticsearch.ElasticsearchClient}.
+     * @param uri the request uri, like {@code /twitter/_search?size=0}
+     * @return the API name, like {@code search}
+     */
+    public static String nameFromPath(String uri) {
+        String path = path(uri);
+        for (String segment : path.split("/")) {
+            if (segment.startsWith("_")) {
+                return segment.substring(1);
+            }
+        }
+        return path.equals("/") || path.isEmpty() ? "info" : UNKNOWN;
+    }
+
+    /**
+     * Finds the index from the path.
+     * @param uri the request uri, like {@code /twitter/_search?size=0}
+     * @return the index, like {@code twitter}, or {@code none} for a path like {@code /_bulk}
+     */
+    public static String indexFromPath(String uri) {
+        String path = path(uri);
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        String first = end < 0 ? path.substring(start) : path.substring(start, end);
+        return first.isEmpty() || first.startsWith("_") ? NONE : first;
+    }
+
+    /**
+     * Reads the time spent by Elasticsearch from the responses giving it.
+     * @param response the response
+     * @return the server side time in milliseconds or null if the response does not tell it
+     */
+    public static Long took(Object response) {
+        if (response instanceof SearchResponse<?> r) {
+            return r.took();
+        }
+        if (response instanceof BulkResponse r) {
+            return r.took();
+        }
+        if (response instanceof MsearchResponse<?> r) {
+            return r.took();
+        }
+        if (response instanceof DeleteByQueryResponse r) {
+            return r.took();
+        }
+        if (response instanceof UpdateByQueryResponse r) {
+            return r.took();
+        }
+        if (response instanceof ReindexResponse r) {
+            return r.took();
+        }
+        return null;
+    }
+
+    private static String path(String uri) {
+        int query = uri.indexOf('?');
+        return query < 0 ? uri : uri.substring(0, query);
+    }
+}
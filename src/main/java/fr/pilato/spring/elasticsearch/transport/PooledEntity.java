@@ -0,0 +1,116 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A response body held in an array of a {@link BufferPool}.
+ * <p>
+ * The body can be read once: the array goes back to the pool when the stream is closed or
+ * when the body has been written. It is not repeatable, so that the low level client copies it
+ * before reading it twice, for example to build the message of a
+ * {@link org.elasticsearch.client.ResponseException}.
+ * </p>
+ */
+class PooledEntity extends AbstractHttpEntity {
+
+    private final BufferPool pool;
+    private final int length;
+    private byte[] buffer;
+
+    PooledEntity(HttpEntity original, BufferPool pool, byte[] buffer, int length) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.length = length;
+        setContentType(original.getContentType());
+        setContentEncoding(original.getContentEncoding());
+        setChunked(original.isChunked());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public synchronized boolean isStreaming() {
+        return buffer != null;
+    }
+
+    @Override
+    public synchronized InputStream getContent() throws IOException {
+        byte[] content = take();
+        return new ByteArrayInputStream(content, 0, length) {
+            private boolean closed;
+
+            @Override
+            public synchronized int read() {
+                return closed ? -1 : super.read();
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return closed ? -1 : super.read(b, off, len);
+            }
+
+            @Override
+            public synchronized void close() {
+                if (!closed) {
+                    closed = true;
+                    pool.release(content);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] content;
+        synchronized (this) {
+            content = take();
+        }
+        try {
+            out.write(content, 0, length);
+        } finally {
+            pool.release(content);
+        }
+    }
+
+    private byte[] take() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Response body has already been consumed.");
+        }
+        byte[] content = buffer;
+        buffer = null;
+        return content;
+    }
+}
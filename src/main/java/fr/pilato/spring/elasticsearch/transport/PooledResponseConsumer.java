@@ -0,0 +1,111 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a response in an array taken from the pool, growing it through the pool when the
+ * response is larger than announced. Like the default consumer, it fails when the response
+ * is larger than the limit.
+ */
+class PooledResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private final BufferPool pool;
+    private final int bufferLimit;
+
+    private HttpResponse response;
+    private HttpEntity entity;
+    private byte[] buffer;
+    private int length;
+
+    PooledResponseConsumer(BufferPool pool, int bufferLimit) {
+        this.pool = pool;
+        this.bufferLimit = bufferLimit;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+        long contentLength = entity.getContentLength();
+        if (contentLength > bufferLimit) {
+            throw new ContentTooLongException("entity content is too long [" + contentLength
+                    + "] for the configured buffer limit [" + bufferLimit + "]");
+        }
+        this.entity = entity;
+        this.buffer = pool.acquire(contentLength > 0 ? (int) contentLength : BufferPool.MIN_BUFFER_SIZE);
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+        while (true) {
+            if (length == buffer.length) {
+                grow();
+            }
+            int read = decoder.read(ByteBuffer.wrap(buffer, length, buffer.length - length));
+            if (read <= 0) {
+                return;
+            }
+            length += read;
+            if (length > bufferLimit) {
+                throw new ContentTooLongException("entity content is too long [" + length
+                        + "] for the configured buffer limit [" + bufferLimit + "]");
+            }
+        }
+    }
+
+    private void grow() {
+        byte[] larger = pool.acquire((int) Math.min((long) buffer.length * 2, (long) bufferLimit + 1));
+        System.arraycopy(buffer, 0, larger, 0, length);
+        pool.release(buffer);
+        buffer = larger;
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (buffer != null) {
+            response.setEntity(new PooledEntity(entity, pool, buffer, length));
+            buffer = null;
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        // Only when the response failed or has been cancelled: otherwise the entity owns the array
+        pool.release(buffer);
+        buffer = null;
+        entity = null;
+    }
+}
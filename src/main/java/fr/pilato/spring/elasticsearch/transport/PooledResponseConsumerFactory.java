@@ -0,0 +1,86 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import co.elastic.clients.transport.TransportOptions;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Buffers the responses in arrays taken from a {@link BufferPool}, instead of a new
+ * array for each response. The array goes back to the pool when the response body
+ * has been read and its stream closed.
+ * <p>
+ * The factory uses it for every request when {@link fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean#setBufferPool(BufferPool)}
+ * is set.
+ * </p>
+ */
+public class PooledResponseConsumerFactory implements HttpAsyncResponseConsumerFactory {
+
+    private final BufferPool pool;
+    private final int bufferLimit;
+
+    /**
+     * @param pool          the pool
+     * @param bufferLimit   the maximum size of a response, in bytes
+     */
+    public PooledResponseConsumerFactory(BufferPool pool, int bufferLimit) {
+        Assert.notNull(pool, "pool must not be null.");
+        Assert.isTrue(bufferLimit > 0, "bufferLimit must be positive.");
+        this.pool = pool;
+        this.bufferLimit = bufferLimit;
+    }
+
+    @Override
+    public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+        return new PooledResponseConsumer(pool, bufferLimit);
+    }
+
+    /**
+     * @return the pool
+     */
+    public BufferPool pool() {
+        return pool;
+    }
+
+    /**
+     * @return the maximum size of a response, in bytes
+     */
+    public int bufferLimit() {
+        return bufferLimit;
+    }
+
+    /**
+     * Finds the pool used by the client.
+     * @param options   the client transport options
+     * @return the pool or null if the responses are not pooled
+     */
+    public static BufferPool pool(TransportOptions options) {
+        if (options instanceof RestClientOptions restClientOptions
+                && restClientOptions.restClientRequestOptions().getHttpAsyncResponseConsumerFactory()
+                        instanceof PooledResponseConsumerFactory factory) {
+            return factory.pool;
+        }
+        return null;
+    }
+}
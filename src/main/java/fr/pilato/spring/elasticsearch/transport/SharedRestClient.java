@@ -0,0 +1,326 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import fr.pilato.spring.elasticsearch.metrics.TransportMetrics;
+import fr.pilato.spring.elasticsearch.slowlog.SlowRequestLog;
+import fr.pilato.spring.elasticsearch.tracing.TransportTracing;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A low level client shared by several factories connected to the same cluster, so they
+ * share the I/O threads and the connection pool.
+ * <p>
+ * Each factory keeps its own bootstrap configuration (classpath root, indices, templates...)
+ * and its own {@link co.elastic.clients.elasticsearch.ElasticsearchClient}. The low level
+ * client is started by the first factory and closed when the last factory is destroyed.
+ * </p>
+ * <pre>
+ * &#64;Bean
+ * public SharedRestClient sharedRestClient() {
+ *     return new SharedRestClient.Builder()
+ *             .nodes("https://localhost:9200")
+ *             .username("elastic")
+ *             .password("changeme")
+ *             .build();
+ * }
+ *
+ * &#64;Bean
+ * public ElasticsearchClient esClient(SharedRestClient sharedRestClient) throws Exception {
+ *     ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+ *     factory.setSharedRestClient(sharedRestClient);
+ *     factory.setClasspathRoot("/client1");
+ *     factory.afterPropertiesSet();
+ *     return factory.getObject();
+ * }
+ * </pre>
+ * <p>
+ * The node, credentials and SSL settings of the factories are not used. The metrics, tracing and
+ * slow log options are set on the shared client, which instruments the HTTP client, and are used
+ * by all the factories. Setting them on a factory using a shared client fails.
+ * </p>
+ */
+public class SharedRestClient implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedRestClient.class);
+
+    private final List<HttpHost> nodes;
+    private final String username;
+    private final String password;
+    private final SSLContext sslContext;
+    private final RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback;
+    private final TransportMetrics transportMetrics;
+    private final TransportTracing transportTracing;
+    private final SlowRequestLog slowRequestLog;
+
+    private RestClient restClient;
+    private int references;
+
+    private SharedRestClient(Builder builder) {
+        this.nodes = List.copyOf(builder.nodes);
+        this.username = builder.username;
+        this.password = builder.password;
+        this.sslContext = builder.sslContext;
+        this.httpClientConfigCallback = builder.httpClientConfigCallback;
+        this.transportMetrics = builder.transportMetrics;
+        this.transportTracing = builder.transportTracing;
+        this.slowRequestLog = builder.slowRequestLog;
+    }
+
+    /**
+     * Gives the low level client, starting it if needed. Each call must be followed
+     * by a call to {@link #release(RestClient)}. This is done by the factory.
+     * @return the low level client
+     */
+    public synchronized RestClient acquire() {
+        if (restClient == null) {
+            logger.info("Starting shared Elasticsearch Low Level client");
+            restClient = build();
+        }
+        references++;
+        logger.debug("Shared Elasticsearch Low Level client used by {} factories", references);
+        return restClient;
+    }
+
+    /**
+     * Gives the low level client back and closes it when no factory uses it anymore.
+     * @param client the client given by {@link #acquire()}
+     */
+    public synchronized void release(RestClient client) {
+        if (client == null || client != restClient) {
+            // Already closed
+            return;
+        }
+        references--;
+        logger.debug("Shared Elasticsearch Low Level client used by {} factories", references);
+        if (references == 0) {
+            closeClient();
+        }
+    }
+
+    /**
+     * @return the metrics options, or null
+     */
+    public TransportMetrics transportMetrics() {
+        return transportMetrics;
+    }
+
+    /**
+     * @return the tracing options, or null
+     */
+    public TransportTracing transportTracing() {
+        return transportTracing;
+    }
+
+    /**
+     * @return the slow log options, or null
+     */
+    public SlowRequestLog slowRequestLog() {
+        return slowRequestLog;
+    }
+
+    /**
+     * @return the number of factories using the low level client
+     */
+    public synchronized int references() {
+        return references;
+    }
+
+    /**
+     * Closes the low level client, even if factories still use it.
+     */
+    @Override
+    public synchronized void close() {
+        if (references > 0) {
+            logger.warn("Closing the shared Elasticsearch Low Level client while still used by {} factories", references);
+        }
+        references = 0;
+        closeClient();
+    }
+
+    private void closeClient() {
+        if (restClient == null) {
+            return;
+        }
+        logger.info("Closing shared Elasticsearch Low Level client");
+        try {
+            restClient.close();
+        } catch (IOException e) {
+            logger.error("Error closing shared Elasticsearch Low Level client: ", e);
+        }
+        restClient = null;
+    }
+
+    private RestClient build() {
+        RestClientBuilder rcb = RestClient.builder(nodes.toArray(new HttpHost[0]));
+        final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+        rcb.setHttpClientConfigCallback(hcb -> {
+            hcb.setDefaultCredentialsProvider(credentialsProvider);
+            if (sslContext != null) {
+                hcb.setSSLContext(sslContext);
+            }
+            HttpAsyncClientBuilder customized = httpClientConfigCallback != null ?
+                    httpClientConfigCallback.customizeHttpClient(hcb) : hcb;
+            if (transportMetrics != null && httpClientConfigCallback == null) {
+                transportMetrics.instrument(customized, sslContext);
+            } else if (transportMetrics != null) {
+                // The callback may have set the pool settings, which a connection manager would ignore
+                transportMetrics.instrument(customized);
+            }
+            if (transportTracing != null) {
+                transportTracing.instrument(customized);
+            }
+            if (slowRequestLog != null) {
+                slowRequestLog.instrument(customized);
+            }
+            return customized;
+        });
+        return rcb.build();
+    }
+
+    /**
+     * Builder for {@link SharedRestClient}.
+     */
+    public static class Builder {
+        private final List<HttpHost> nodes = new ArrayList<>();
+        private String username;
+        private String password;
+        private SSLContext sslContext;
+        private RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback;
+        private TransportMetrics transportMetrics;
+        private TransportTracing transportTracing;
+        private SlowRequestLog slowRequestLog;
+
+        /**
+         * The nodes of the cluster. Defaults to https://localhost:9200.
+         * @param nodes the nodes, like {@code https://localhost:9200}
+         * @return this builder
+         */
+        public Builder nodes(String... nodes) {
+            for (String node : nodes) {
+                this.nodes.add(HttpHost.create(node));
+            }
+            return this;
+        }
+
+        /**
+         * The nodes of the cluster. Defaults to https://localhost:9200.
+         * @param nodes the nodes
+         * @return this builder
+         */
+        public Builder nodes(Collection<HttpHost> nodes) {
+            this.nodes.addAll(nodes);
+            return this;
+        }
+
+        /**
+         * @param username the user name
+         * @return this builder
+         */
+        public Builder username(String username) {
+            this.username = username;
+            return this;
+        }
+
+        /**
+         * @param password the password
+         * @return this builder
+         */
+        public Builder password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * @param sslContext the SSL context, if any
+         * @return this builder
+         */
+        public Builder sslContext(SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Customizes the HTTP client, after the credentials and the SSL context have been set, and before
+         * the metrics, tracing and slow log instrumentation.
+         * @param httpClientConfigCallback the callback
+         * @return this builder
+         */
+        public Builder httpClientConfigCallback(RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback) {
+            this.httpClientConfigCallback = httpClientConfigCallback;
+            return this;
+        }
+
+        /**
+         * Publish Micrometer metrics for the requests sent by all the factories and for the connection pool.
+         * @param transportMetrics the metrics options
+         * @return this builder
+         */
+        public Builder transportMetrics(TransportMetrics transportMetrics) {
+            this.transportMetrics = transportMetrics;
+            return this;
+        }
+
+        /**
+         * Create OpenTelemetry spans for the requests sent by all the factories.
+         * @param transportTracing the tracing options
+         * @return this builder
+         */
+        public Builder transportTracing(TransportTracing transportTracing) {
+            this.transportTracing = transportTracing;
+            return this;
+        }
+
+        /**
+         * Log the slow requests sent by all the factories.
+         * @param slowRequestLog the slow log options
+         * @return this builder
+         */
+        public Builder slowRequestLog(SlowRequestLog slowRequestLog) {
+            this.slowRequestLog = slowRequestLog;
+            return this;
+        }
+
+        public SharedRestClient build() {
+            Assert.isTrue(username != null && password != null, "From version 8, you MUST define a user and a password to access Elasticsearch.");
+            if (nodes.isEmpty()) {
+                nodes.add(HttpHost.create("https://localhost:9200"));
+            }
+            return new SharedRestClient(this);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+/**
+ * Notified when a write request has been executed through the client.
+ * @see WriteNotifyingTransport
+ */
+@FunctionalInterface
+public interface WriteListener {
+
+    /**
+     * Called after a write request, whether it succeeded or not, as a failed request
+     * (like a bulk request) might have written some documents.
+     * @param index the index name, alias or pattern used in the request. {@code null} means all the indices.
+     * @param id    the document id if the write concerns a single document, {@code null} otherwise.
+     */
+    void onWrite(String index, String id);
+
+    /**
+     * @return true to be called for each document of a bulk request. When false, the listener is
+     * called once per distinct index of the bulk request, with a {@code null} id. Defaults to true.
+     */
+    default boolean documentWrites() {
+        return true;
+    }
+}
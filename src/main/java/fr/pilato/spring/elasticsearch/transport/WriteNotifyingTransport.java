@@ -0,0 +1,222 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.transport;
+
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.CreateRequest;
+import co.elastic.clients.elasticsearch.core.DeleteByQueryRequest;
+import co.elastic.clients.elasticsearch.core.DeleteRequest;
+import co.elastic.clients.elasticsearch.core.IndexRequest;
+import co.elastic.clients.elasticsearch.core.ReindexRequest;
+import co.elastic.clients.elasticsearch.core.UpdateByQueryRequest;
+import co.elastic.clients.elasticsearch.core.UpdateRequest;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperationBase;
+import co.elastic.clients.elasticsearch.indices.DeleteIndexRequest;
+import co.elastic.clients.elasticsearch.indices.RefreshRequest;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A transport which notifies {@link WriteListener}s when a request writing documents
+ * has been executed: index, create, update, delete, bulk, delete by query, update by query,
+ * reindex and index deletion. A refresh is also notified as it changes what is visible.
+ * <p>
+ * The listeners which do not need the documents (see {@link WriteListener#documentWrites()})
+ * are only called once per index of a bulk request.
+ * </p>
+ * <p>
+ * The requests sent with the low level client are not seen by this transport: the code sending them
+ * can call {@link #notifyRequest(String, String)} with their method and path.
+ * </p>
+ */
+public class WriteNotifyingTransport extends DelegatingTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteNotifyingTransport.class);
+
+    private final List<WriteListener> listeners = new CopyOnWriteArrayList<>();
+
+    public WriteNotifyingTransport(ElasticsearchTransport delegate) {
+        super(delegate);
+    }
+
+    public void addListener(WriteListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(WriteListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Finds the write notifying transport in a chain of {@link DelegatingTransport}s.
+     * @param transport the transport used by a client
+     * @return the write notifying transport or null if the chain does not contain any
+     */
+    public static WriteNotifyingTransport find(ElasticsearchTransport transport) {
+        return unwrap(transport, WriteNotifyingTransport.class);
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request,
+                                                                  Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                  TransportOptions options) throws IOException {
+        try {
+            return delegate.performRequest(request, endpoint, options);
+        } finally {
+            notifyRequest(request);
+        }
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request,
+                                                                                          Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                                          TransportOptions options) {
+        CompletableFuture<ResponseT> future = delegate.performRequestAsync(request, endpoint, options);
+        if (listeners.isEmpty()) {
+            return future;
+        }
+        return future.whenComplete((response, e) -> notifyRequest(request));
+    }
+
+    /**
+     * Notifies the listeners of a request sent with the low level client, if it writes documents.
+     * As the body is not read, a bulk request or a reindex is notified as a write on all the indices.
+     * @param method the HTTP method
+     * @param path   the path, like {@code /twitter/_doc/1}
+     */
+    public void notifyRequest(String method, String path) {
+        if (listeners.isEmpty() || method.equals("GET") || method.equals("HEAD")) {
+            return;
+        }
+        String[] segments = (path.startsWith("/") ? path.substring(1) : path).split("/");
+        String first = segments[0];
+        boolean hasIndex = !first.isEmpty() && !first.startsWith("_");
+        List<String> indices = hasIndex ? List.of(first.split(",")) : List.of();
+        String api = hasIndex ? (segments.length > 1 ? segments[1] : null) : first;
+        if (api == null) {
+            if (method.equals("DELETE")) {
+                // An index deletion
+                notifyIndices(indices);
+            }
+            return;
+        }
+        switch (api) {
+            case "_doc", "_create", "_update" -> {
+                if (segments.length > 2) {
+                    notifyIndices(indices, segments[2]);
+                } else {
+                    notifyIndices(indices);
+                }
+            }
+            case "_delete_by_query", "_update_by_query", "_refresh" -> notifyIndices(indices);
+            case "_bulk", "_reindex" -> notifyWrite(null, null);
+            default -> {
+            }
+        }
+    }
+
+    private void notifyIndices(List<String> indices, String id) {
+        for (String index : indices) {
+            notifyWrite(index, id);
+        }
+    }
+
+    private void notifyRequest(Object request) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        if (request instanceof IndexRequest<?> r) {
+            notifyWrite(r.index(), r.id());
+        } else if (request instanceof CreateRequest<?> r) {
+            notifyWrite(r.index(), r.id());
+        } else if (request instanceof UpdateRequest<?, ?> r) {
+            notifyWrite(r.index(), r.id());
+        } else if (request instanceof DeleteRequest r) {
+            notifyWrite(r.index(), r.id());
+        } else if (request instanceof BulkRequest r) {
+            Set<String> indices = new LinkedHashSet<>();
+            for (BulkOperation operation : r.operations()) {
+                BulkOperationBase base = operation.isIndex() ? operation.index() :
+                        operation.isCreate() ? operation.create() :
+                        operation.isUpdate() ? operation.update() :
+                        operation.delete();
+                String index = base.index() != null ? base.index() : r.index();
+                indices.add(index);
+                notifyWrite(index, base.id(), true);
+            }
+            // The other listeners only need to know the indices
+            for (String index : indices) {
+                notifyWrite(index, null, false);
+            }
+        } else if (request instanceof DeleteByQueryRequest r) {
+            notifyIndices(r.index());
+        } else if (request instanceof UpdateByQueryRequest r) {
+            notifyIndices(r.index());
+        } else if (request instanceof ReindexRequest r) {
+            notifyWrite(r.dest().index(), null);
+        } else if (request instanceof DeleteIndexRequest r) {
+            notifyIndices(r.index());
+        } else if (request instanceof RefreshRequest r) {
+            notifyIndices(r.index());
+        }
+    }
+
+    private void notifyIndices(List<String> indices) {
+        if (indices.isEmpty()) {
+            notifyWrite(null, null);
+        }
+        for (String index : indices) {
+            notifyWrite(index, null);
+        }
+    }
+
+    private void notifyWrite(String index, String id) {
+        for (WriteListener listener : listeners) {
+            notifyWrite(listener, index, id);
+        }
+    }
+
+    private void notifyWrite(String index, String id, boolean documentWrites) {
+        for (WriteListener listener : listeners) {
+            if (listener.documentWrites() == documentWrites) {
+                notifyWrite(listener, index, id);
+            }
+        }
+    }
+
+    private static void notifyWrite(WriteListener listener, String index, String id) {
+        try {
+            listener.onWrite(index, id);
+        } catch (Exception e) {
+            logger.warn("Write listener failed for [{}/{}]: {}", index, id, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.vector;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Jackson module writing the {@code byte[]} document fields as arrays of numbers, as expected by
+ * the {@code dense_vector} fields with {@code "element_type": "byte"}, instead of base64 strings.
+ * <p>
+ * Use {@code float[]} and {@code byte[]} fields for the vectors rather than {@code List<Float>}:
+ * Jackson reads and writes primitive arrays without boxing each component. Reading a
+ * {@code byte[]} already accepts both a base64 string and an array of numbers, so only
+ * the serialization needs this module. It is registered by the factory with
+ * {@link fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean#setByteVectors(boolean)}.
+ * </p>
+ * <p>
+ * With this module, the {@code binary} fields must not be mapped to {@code byte[]} anymore
+ * as they are not written as base64 strings.
+ * </p>
+ */
+public class VectorModule extends SimpleModule {
+
+    public VectorModule() {
+        super("spring-elasticsearch-vectors", Version.unknownVersion());
+        addSerializer(byte[].class, new ByteVectorSerializer());
+    }
+
+    /**
+     * Writes a {@code byte[]} as an array of numbers. It can also be used on a single field with
+     * {@code @JsonSerialize(using = VectorModule.ByteVectorSerializer.class)}.
+     */
+    public static class ByteVectorSerializer extends StdSerializer<byte[]> {
+
+        public ByteVectorSerializer() {
+            super(byte[].class);
+        }
+
+        @Override
+        public void serialize(byte[] vector, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartArray(vector, vector.length);
+            for (byte component : vector) {
+                generator.writeNumber(component);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
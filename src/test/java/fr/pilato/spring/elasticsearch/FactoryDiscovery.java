@@ -0,0 +1,54 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the classpath discovery of {@link ElasticsearchClientFactoryBean} with autoscan on, as done
+ * by {@link ElasticsearchClientFactoryBean#afterPropertiesSet()}. Used by the benchmarks.
+ */
+public final class FactoryDiscovery {
+
+    private FactoryDiscovery() {
+    }
+
+    /**
+     * @param classpathRoot the classpath root
+     * @return the indices found under the root
+     */
+    public static List<String> indices(String classpathRoot) {
+        return asList(ElasticsearchClientFactoryBean.computeIndexNames(true, null, classpathRoot));
+    }
+
+    /**
+     * @param classpathRoot the classpath root
+     * @param subdir        the directory of the definitions, like {@code _pipelines}
+     * @return the definitions found in the directory
+     */
+    public static List<String> resources(String classpathRoot, String subdir) {
+        return asList(ElasticsearchClientFactoryBean.discoverFromClasspath(true, null, classpathRoot, subdir));
+    }
+
+    private static List<String> asList(String[] names) {
+        return names == null ? List.of() : Arrays.asList(names);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.bulkload;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.HealthStatus;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import fr.pilato.spring.elasticsearch.admin.BulkLoadSession;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkLoadSessionTest extends AbstractRestAnnotationContextModel {
+
+    private IndexSettings settings(ElasticsearchClient client) throws IOException {
+        return client.indices().getSettings(gisr -> gisr.index("twitter")).get("twitter").settings().index();
+    }
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        assertThat(settings(client).refreshInterval(), nullValue());
+        assertThat(settings(client).numberOfReplicas(), is("1"));
+
+        BulkLoadSession.Builder builder = new BulkLoadSession.Builder()
+                .indices("twitter")
+                // We only have one node in tests
+                .waitForStatus(HealthStatus.Yellow)
+                .healthTimeout(Duration.ofSeconds(30));
+        try (BulkLoadSession ignored = builder.start(client)) {
+            assertThat(settings(client).refreshInterval().time(), is("-1"));
+            assertThat(settings(client).numberOfReplicas(), is("0"));
+
+            BulkRequest.Builder bulk = new BulkRequest.Builder();
+            for (int i = 0; i < 100; i++) {
+                int number = i;
+                bulk.operations(o -> o.index(io -> io.index("twitter").id(String.valueOf(number)).document(Map.of("number", number))));
+            }
+            client.bulk(bulk.build());
+        }
+
+        // Settings are restored and documents are searchable
+        assertThat(settings(client).refreshInterval(), nullValue());
+        assertThat(settings(client).numberOfReplicas(), is("1"));
+        assertThat(client.count(cr -> cr.index("twitter")).count(), is(100L));
+
+        // Settings are restored when the load fails
+        assertThrows(IllegalStateException.class, () -> {
+            try (BulkLoadSession ignored = builder.start(client)) {
+                throw new IllegalStateException("Load failed");
+            }
+        });
+        assertThat(settings(client).refreshInterval(), nullValue());
+        assertThat(settings(client).numberOfReplicas(), is("1"));
+    }
+}
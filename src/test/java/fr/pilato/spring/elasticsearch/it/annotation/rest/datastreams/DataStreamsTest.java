@@ -0,0 +1,59 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.datastreams;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.GetDataStreamResponse;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class DataStreamsTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void executeBefore(RestClient client) throws IOException {
+        try {
+            client.performRequest(new Request("DELETE", "/_data_stream/logs-app"));
+        } catch (ResponseException ignored) { }
+    }
+
+    @Override
+    protected String indexName() {
+        return null;
+    }
+
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws IOException {
+        GetDataStreamResponse response = client.indices().getDataStream(gdsr -> gdsr.name("logs-app"));
+        assertThat(response.dataStreams(), hasSize(1));
+        assertThat(response.dataStreams().get(0).template(), is("logs-app"));
+        assertThat(response.dataStreams().get(0).ilmPolicy(), is("logs-app-policy"));
+
+        client.index(ir -> ir.index("logs-app").document(Map.of("@timestamp", Instant.now().toString(), "message", "hello")));
+    }
+}
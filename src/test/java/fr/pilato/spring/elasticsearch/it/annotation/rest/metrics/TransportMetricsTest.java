@@ -0,0 +1,64 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.metrics;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransportMetricsTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        MeterRegistry registry = ctx.getBean(MeterRegistry.class);
+
+        client.search(sr -> sr.index("twitter"), Map.class);
+        client.search(sr -> sr.index("twitter"), Map.class);
+        assertThrows(ElasticsearchException.class, () -> client.search(sr -> sr.index("doesnotexist"), Map.class));
+
+        Timer calls = registry.find("elasticsearch.client.requests").tags("endpoint", "search", "outcome", "success").timer();
+        assertThat(calls, notNullValue());
+        assertThat(calls.count(), is(2L));
+        assertThat(registry.find("elasticsearch.client.requests").tags("endpoint", "search", "outcome", "error").timer().count(), is(1L));
+
+        Timer http = registry.find("elasticsearch.http.requests")
+                .tags("endpoint", "search", "index", "twitter", "status", "200").timer();
+        assertThat(http, notNullValue());
+        assertThat(http.count(), is(2L));
+        assertThat(registry.find("elasticsearch.http.requests")
+                .tags("endpoint", "search", "index", "doesnotexist", "status", "404").timer().count(), is(1L));
+        assertThat(registry.find("elasticsearch.http.response.size")
+                .tags("endpoint", "search", "index", "twitter").summary().totalAmount(), greaterThan(0.0));
+
+        assertThat(registry.find("elasticsearch.client.pool.max").gauge().value(), is(30.0));
+        assertThat(registry.find("elasticsearch.client.pool.available").gauge().value(), greaterThanOrEqualTo(1.0));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.mget;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import fr.pilato.spring.elasticsearch.batch.DocumentFailureException;
+import fr.pilato.spring.elasticsearch.batch.MultiGetBatcher;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MultiGetBatcherTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> document = Map.of("number", i);
+            String id = String.valueOf(i);
+            client.index(ir -> ir.index("twitter").id(id).document(document).refresh(Refresh.True));
+        }
+
+        try (MultiGetBatcher<Map> batcher = new MultiGetBatcher<>(client, Map.class, Duration.ofMillis(5), 4)) {
+            List<CompletableFuture<GetResult<Map>>> futures = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                futures.add(batcher.get("twitter", String.valueOf(i)));
+            }
+            for (int i = 0; i < 12; i++) {
+                GetResult<Map> result = futures.get(i).join();
+                assertThat(result.id(), is(String.valueOf(i)));
+                assertThat(result.found(), is(i < 10));
+            }
+
+            // A failure for one document does not fail the other ones
+            CompletableFuture<GetResult<Map>> missingIndex = batcher.get("doesnotexist", "1");
+            CompletableFuture<GetResult<Map>> existing = batcher.get("twitter", "1");
+            assertThat(existing.join().found(), is(true));
+            CompletionException e = assertThrows(CompletionException.class, missingIndex::join);
+            assertThat(e.getCause(), instanceOf(DocumentFailureException.class));
+            assertThat(((DocumentFailureException) e.getCause()).index(), is("doesnotexist"));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.migration;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * The twitter index exists as twitter-v1 with a text message field
+ * and the classpath defines a keyword message field: the index is migrated to twitter-v2.
+ */
+public class IndexMigrationTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected String indexName() {
+        return null;
+    }
+
+    @Override
+    protected List<String> otherTestIndices() {
+        return List.of("twitter-v1", "twitter-v2");
+    }
+
+    @Override
+    protected void executeBefore(RestClient client) throws IOException {
+        Request create = new Request("PUT", "/twitter-v1");
+        create.setJsonEntity("{\"settings\":{\"number_of_shards\":1,\"number_of_replicas\":0}," +
+                "\"mappings\":{\"properties\":{\"message\":{\"type\":\"text\"}}}," +
+                "\"aliases\":{\"twitter\":{\"is_write_index\":true},\"tweets\":{}}}");
+        client.performRequest(create);
+        for (int i = 0; i < 10; i++) {
+            Request index = new Request("PUT", "/twitter/_doc/" + i);
+            index.setJsonEntity("{\"number\":" + i + ",\"message\":\"message " + i + "\"}");
+            client.performRequest(index);
+        }
+        client.performRequest(new Request("POST", "/twitter/_refresh"));
+    }
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        assertThat(client.indices().getAlias(gar -> gar.name("twitter")).result().keySet(), contains("twitter-v2"));
+        assertThat(client.indices().getAlias(gar -> gar.name("tweets")).result().keySet(), contains("twitter-v2"));
+        assertThat(client.count(cr -> cr.index("twitter")).count(), is(10L));
+        assertThat(client.indices().getMapping(gmr -> gmr.index("twitter-v2")).get("twitter-v2")
+                .mappings().properties().get("message").isKeyword(), is(true));
+
+        // The old index is kept by default
+        assertThat(client.count(cr -> cr.index("twitter-v1")).count(), is(10L));
+    }
+}
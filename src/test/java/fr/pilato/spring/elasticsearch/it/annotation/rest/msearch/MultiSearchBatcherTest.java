@@ -0,0 +1,75 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.msearch;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchItem;
+import co.elastic.clients.json.JsonData;
+import fr.pilato.spring.elasticsearch.batch.MultiSearchBatcher;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MultiSearchBatcherTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> document = Map.of("number", i);
+            String id = String.valueOf(i);
+            client.index(ir -> ir.index("twitter").id(id).document(document).refresh(Refresh.True));
+        }
+
+        try (MultiSearchBatcher<Map> batcher = new MultiSearchBatcher<>(client, Map.class, Duration.ofMillis(5), 4, 2)) {
+            List<CompletableFuture<MultiSearchItem<Map>>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int number = i;
+                futures.add(batcher.search("twitter", b -> b.query(q -> q.term(t -> t.field("number").value(FieldValue.of(number))))));
+            }
+            for (int i = 0; i < 10; i++) {
+                MultiSearchItem<Map> response = futures.get(i).join();
+                assertThat(response.hits().hits(), hasSize(1));
+                assertThat(response.hits().hits().get(0).id(), is(String.valueOf(i)));
+            }
+
+            // A failing search does not fail the other ones
+            CompletableFuture<MultiSearchItem<Map>> failing = batcher.search("twitter",
+                    b -> b.query(q -> q.range(r -> r.field("number").gte(JsonData.of("not a number")))));
+            CompletableFuture<MultiSearchItem<Map>> working = batcher.search("twitter", b -> b.query(q -> q.matchAll(m -> m)));
+            assertThat(working.join().hits().hits(), hasSize(10));
+            CompletionException e = assertThrows(CompletionException.class, failing::join);
+            assertThat(e.getCause(), instanceOf(ElasticsearchException.class));
+        }
+    }
+}
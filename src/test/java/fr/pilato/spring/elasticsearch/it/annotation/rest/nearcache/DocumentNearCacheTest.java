@@ -0,0 +1,81 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.nearcache;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import fr.pilato.spring.elasticsearch.batch.DocumentFailureException;
+import fr.pilato.spring.elasticsearch.cache.DocumentNearCache;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import fr.pilato.spring.elasticsearch.transport.WriteNotifyingTransport;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DocumentNearCacheTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        client.index(ir -> ir.index("twitter").id("1").document(Map.of("number", 1)).refresh(Refresh.True));
+
+        DocumentNearCache<Map> cache = new DocumentNearCache<>(client, Map.class, Duration.ofMinutes(1), 100);
+        assertThat(cache.get("twitter", "1").get("number"), is(1));
+        assertThat(cache.get("twitter", "1").get("number"), is(1));
+        assertThat(cache.get("twitter", "2"), nullValue());
+        assertThat(cache.stats().hits(), is(1L));
+        assertThat(cache.stats().misses(), is(2L));
+
+        // A write done with the same client evicts the document
+        client.index(ir -> ir.index("twitter").id("1").document(Map.of("number", 10)));
+        assertThat(cache.get("twitter", "1").get("number"), is(10));
+
+        // A document which can not be fetched
+        DocumentFailureException e = assertThrows(DocumentFailureException.class, () -> cache.get("doesnotexist", "1"));
+        assertThat(e.index(), is("doesnotexist"));
+        assertThat(e.error().type(), is("index_not_found_exception"));
+
+        // Once closed, the cache does not see the writes anymore
+        cache.close();
+        assertThat(cache.stats().entries(), is(0));
+        assertThat(cache.get("twitter", "1").get("number"), is(10));
+        client.index(ir -> ir.index("twitter").id("1").document(Map.of("number", 11)));
+        assertThat(cache.get("twitter", "1").get("number"), is(10));
+
+        // Without staleness, documents are revalidated on every read
+        DocumentNearCache<Map> revalidated = new DocumentNearCache<>(client, Map.class, Duration.ZERO, 100);
+        assertThat(revalidated.get("twitter", List.of("1", "2")).size(), is(1));
+        assertThat(revalidated.get("twitter", List.of("1", "2")).size(), is(1));
+        assertThat(revalidated.stats().revalidations(), is(2L));
+
+        // A write done with another client is detected by the version check
+        ElasticsearchClient other = new ElasticsearchClient(WriteNotifyingTransport.find(client._transport()).getDelegate());
+        other.index(ir -> ir.index("twitter").id("2").document(Map.of("number", 2)));
+        Map<String, Map> documents = revalidated.get("twitter", List.of("1", "2"));
+        assertThat(documents.get("1").get("number"), is(11));
+        assertThat(documents.get("2").get("number"), is(2));
+        assertThat(revalidated.stats().revalidations(), is(3L));
+    }
+}
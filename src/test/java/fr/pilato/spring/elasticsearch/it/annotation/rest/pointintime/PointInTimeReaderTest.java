@@ -0,0 +1,70 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.pointintime;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import fr.pilato.spring.elasticsearch.search.PointInTimeReader;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class PointInTimeReaderTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        BulkRequest.Builder bulk = new BulkRequest.Builder().index("twitter").refresh(Refresh.True);
+        for (int i = 0; i < 95; i++) {
+            String id = String.valueOf(i);
+            Map<String, Object> document = Map.of("number", i);
+            bulk.operations(o -> o.index(io -> io.id(id).document(document)));
+        }
+        client.bulk(bulk.build());
+
+        // Read everything with pages smaller than the number of documents
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(10)
+                .prefetchPages(2)
+                .build()) {
+            assertThat(reader.stream().count(), is(95L));
+        }
+
+        // Read everything with the default prefetch
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(10)
+                .build()) {
+            assertThat(reader.stream().count(), is(95L));
+        }
+
+        // Stop reading before the end
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(10)
+                .build()) {
+            assertThat(reader.documents().limit(15).count(), is(15L));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.querycache;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.CountRequest;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import fr.pilato.spring.elasticsearch.cache.QueryCache;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class QueryCacheTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        QueryCache cache = ctx.getBean(QueryCache.class);
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> document = Map.of("number", i);
+            String id = String.valueOf(i);
+            client.index(ir -> ir.index("twitter").id(id).document(document).refresh(Refresh.True));
+        }
+
+        CountRequest count = CountRequest.of(c -> c.index("twitter"));
+        assertThat(cache.count(count).count(), is(3L));
+        assertThat(cache.count(count).count(), is(3L));
+        assertThat(cache.stats().hits(), is(1L));
+        assertThat(cache.stats().misses(), is(1L));
+
+        SearchRequest search = SearchRequest.of(s -> s.index("twitter").query(q -> q.matchAll(m -> m)));
+        SearchResponse<Map> response = cache.search(search, Map.class);
+        assertThat(cache.search(search, Map.class), sameInstance(response));
+
+        // A write on the index evicts the responses
+        client.index(ir -> ir.index("twitter").id("3").document(Map.of("number", 3)).refresh(Refresh.True));
+        assertThat(cache.stats().entries(), is(0));
+        assertThat(cache.count(count).count(), is(4L));
+        assertThat(cache.search(search, Map.class).hits().hits().size(), is(4));
+    }
+}
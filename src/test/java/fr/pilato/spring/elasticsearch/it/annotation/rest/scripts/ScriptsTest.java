@@ -0,0 +1,62 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.scripts;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.RenderSearchTemplateResponse;
+import co.elastic.clients.json.JsonData;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class ScriptsTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void executeBefore(RestClient client) throws IOException {
+        for (String script : new String[]{"add-number", "by-number"}) {
+            try {
+                client.performRequest(new Request("DELETE", "/_scripts/" + script));
+            } catch (ResponseException ignored) { }
+        }
+    }
+
+    @Override
+    protected String indexName() {
+        return null;
+    }
+
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws IOException {
+        assertThat(client.getScript(gs -> gs.id("add-number")).found(), is(true));
+        assertThat(client.getScript(gs -> gs.id("add-number")).script().source(), containsString("params.increment"));
+        assertThat(client.getScript(gs -> gs.id("by-number")).script().source(), containsString("{{number}}"));
+
+        RenderSearchTemplateResponse rendered = client.renderSearchTemplate(rst -> rst
+                .id("by-number")
+                .params("number", JsonData.of(42)));
+        assertThat(rendered.templateOutput().get("query").toJson().toString(), containsString("42"));
+    }
+}
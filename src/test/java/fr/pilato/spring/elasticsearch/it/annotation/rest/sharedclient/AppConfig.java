@@ -0,0 +1,66 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.sharedclient;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.SSLUtils;
+import fr.pilato.spring.elasticsearch.transport.SharedRestClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static fr.pilato.spring.elasticsearch.it.BaseTest.DEFAULT_TEST_CLUSTER;
+import static fr.pilato.spring.elasticsearch.it.BaseTest.testCluster;
+import static fr.pilato.spring.elasticsearch.it.BaseTest.testClusterPass;
+import static fr.pilato.spring.elasticsearch.it.BaseTest.testClusterUser;
+
+@Configuration
+public class AppConfig {
+
+	@Bean
+	public SharedRestClient sharedRestClient() {
+		return new SharedRestClient.Builder()
+				.nodes(testCluster)
+				.username(testClusterUser)
+				.password(testClusterPass)
+				.sslContext(testCluster.equals(DEFAULT_TEST_CLUSTER) ? SSLUtils.yesSSLContext() : null)
+				.build();
+	}
+
+	@Bean
+	public ElasticsearchClient esClient(SharedRestClient sharedRestClient) throws Exception {
+		ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+		factory.setSharedRestClient(sharedRestClient);
+		factory.setClasspathRoot("/models/root/multiple-clients/client1");
+		factory.setForceIndex(false);
+		factory.afterPropertiesSet();
+		return factory.getObject();
+	}
+
+	@Bean
+	public ElasticsearchClient esClient2(SharedRestClient sharedRestClient) throws Exception {
+		ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+		factory.setSharedRestClient(sharedRestClient);
+		factory.setClasspathRoot("/models/root/multiple-clients/client2");
+		factory.setMergeSettings(true);
+		factory.afterPropertiesSet();
+		return factory.getObject();
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.sharedclient;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import fr.pilato.spring.elasticsearch.transport.SharedRestClient;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SharedClientTest extends AbstractRestAnnotationContextModel {
+
+	protected void checkUseCaseSpecific(ElasticsearchClient client) throws IOException {
+		ElasticsearchClient client2 = checkClient("esClient2");
+		// Both clients use the same low level client
+		assertThat(DelegatingTransport.unwrap(client2._transport(), RestClientTransport.class).restClient(),
+				sameInstance(DelegatingTransport.unwrap(client._transport(), RestClientTransport.class).restClient()));
+		assertThat(ctx.getBean(SharedRestClient.class).references(), is(2));
+		// But each one ran its own bootstrap
+		assertShardsAndReplicas(client2, "twitter", 1, 1);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.slicedscan;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import fr.pilato.spring.elasticsearch.search.SlicedScan;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class SlicedScanTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        BulkRequest.Builder bulk = new BulkRequest.Builder().index("twitter").refresh(Refresh.True);
+        for (int i = 0; i < 250; i++) {
+            String id = String.valueOf(i);
+            Map<String, Object> document = Map.of("number", i);
+            bulk.operations(o -> o.index(io -> io.id(id).document(document)));
+        }
+        client.bulk(bulk.build());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SlicedScan<Map> scan = new SlicedScan.Builder<>(client, Map.class)
+                    .index("twitter")
+                    .slices(4)
+                    .pageSize(20)
+                    .executor(pool)
+                    .build();
+
+            // Using the per slice callback, each slice having more than one page
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            Map<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+            long total = scan.forEach((slice, hit) -> {
+                ids.add(hit.id());
+                counts.computeIfAbsent(slice, s -> new LongAdder()).increment();
+            }).get(1, TimeUnit.MINUTES);
+            assertThat(total, is(250L));
+            assertThat(ids, hasSize(250));
+            assertThat(counts.keySet(), hasSize(4));
+            assertThat(counts.values().stream().mapToLong(LongAdder::sum).sum(), is(250L));
+
+            // Using the parallel stream
+            try (Stream<Hit<Map>> hits = scan.stream()) {
+                assertThat(hits.map(Hit::id).collect(Collectors.toSet()), hasSize(250));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.slowlog;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import fr.pilato.spring.elasticsearch.slowlog.SlowRequestLog;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class SlowRequestLogTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        List<SlowRequestLog.SlowRequest> slowRequests = ctx.getBean("slowRequests", List.class);
+        slowRequests.clear();
+
+        // Not slow enough
+        client.indices().refresh(rr -> rr.index("twitter"));
+        assertThat(slowRequests, hasSize(0));
+
+        client.search(sr -> sr.index("twitter").query(q -> q.matchAll(ma -> ma)), Map.class);
+        assertThat(slowRequests, hasSize(1));
+        SlowRequestLog.SlowRequest slow = slowRequests.get(0);
+        assertThat(slow.endpoint(), is("search"));
+        assertThat(slow.index(), is("twitter"));
+        assertThat(slow.node(), notNullValue());
+        assertThat(slow.status(), is(200));
+        assertThat(slow.took(), notNullValue());
+        assertThat(slow.body(), endsWith("more chars]"));
+
+        // Only 2 lines per second
+        for (int i = 0; i < 10; i++) {
+            client.search(sr -> sr.index("twitter"), Map.class);
+        }
+        assertThat(slowRequests.size(), lessThanOrEqualTo(10));
+        assertThat(slowRequests.size(), greaterThanOrEqualTo(2));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.it.annotation.rest.tracing;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import fr.pilato.spring.elasticsearch.it.annotation.rest.AbstractRestAnnotationContextModel;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransportTracingTest extends AbstractRestAnnotationContextModel {
+
+    @Override
+    protected void checkUseCaseSpecific(ElasticsearchClient client) throws Exception {
+        InMemorySpanExporter exporter = ctx.getBean(InMemorySpanExporter.class);
+        exporter.reset();
+
+        client.search(sr -> sr.index("twitter"), Map.class);
+        assertThrows(ElasticsearchException.class, () -> client.search(sr -> sr.index("doesnotexist"), Map.class));
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertThat(spans, hasSize(2));
+
+        SpanData search = spans.get(0);
+        assertThat(search.getName(), is("search"));
+        assertThat(search.getKind(), is(SpanKind.CLIENT));
+        assertThat(search.getAttributes().get(AttributeKey.stringKey("db.system")), is("elasticsearch"));
+        assertThat(search.getAttributes().get(AttributeKey.stringKey("db.elasticsearch.index")), is("twitter"));
+        assertThat(search.getAttributes().get(AttributeKey.stringKey("server.address")), notNullValue());
+        assertThat(search.getAttributes().get(AttributeKey.longKey("http.response.status_code")), is(200L));
+        assertThat(search.getAttributes().get(AttributeKey.longKey("http.response.body.size")), greaterThan(0L));
+        assertThat(search.getAttributes().get(AttributeKey.longKey("elasticsearch.attempts")), is(1L));
+        assertThat(search.getAttributes().get(AttributeKey.longKey("elasticsearch.took")), greaterThanOrEqualTo(0L));
+
+        SpanData failed = spans.get(1);
+        assertThat(failed.getStatus().getStatusCode(), is(StatusCode.ERROR));
+        assertThat(failed.getAttributes().get(AttributeKey.longKey("http.response.status_code")), is(404L));
+        assertThat(failed.getEvents(), hasSize(1));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.stub;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Base class for the tests running against an {@link ElasticsearchStub}. A new stub is started
+ * before each test and closed after it, with the factories started by the test.
+ */
+public abstract class AbstractStubTest {
+
+    protected ElasticsearchStub stub;
+
+    private final List<ElasticsearchClientFactoryBean> factories = new ArrayList<>();
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new ElasticsearchStub();
+    }
+
+    @AfterEach
+    public void stopStub() {
+        factories.forEach(ElasticsearchClientFactoryBean::destroy);
+        factories.clear();
+        stub.close();
+    }
+
+    /**
+     * Starts a factory connected to the stub, without autoscan. It is destroyed after the test.
+     * @param customizer called before the factory starts, to set its options
+     * @return the started factory
+     */
+    protected ElasticsearchClientFactoryBean startFactory(Consumer<ElasticsearchClientFactoryBean> customizer) throws Exception {
+        ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+        factory.setEsNodes(List.of(stub.host()));
+        factory.setUsername("elastic");
+        factory.setPassword("changeme");
+        factory.setAutoscan(false);
+        customizer.accept(factory);
+        factories.add(factory);
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    /**
+     * Starts a factory connected to the stub, with the default options and without autoscan.
+     * @return the client of the factory
+     */
+    protected ElasticsearchClient startClient() throws Exception {
+        return startFactory(factory -> { }).getObject();
+    }
+}
@@ -0,0 +1,1017 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * An in-process HTTP server answering like a single node Elasticsearch 8 cluster, for the
+ * tests and the benchmarks which do not need a real cluster.
+ * <p>
+ * It keeps in memory what the factory and beyonder create: indices with their settings,
+ * mappings and documents, aliases, component and index templates, ingest pipelines,
+ * lifecycle policies and stored scripts. Searches return the documents of the index in
+ * insertion order, without looking at the query.
+ * </p>
+ * <pre>
+ * {@code
+ * try (ElasticsearchStub stub = new ElasticsearchStub()) {
+ *     factory.setEsNodes(List.of(stub.host()));
+ *     stub.latency(Duration.ofMillis(5));
+ *     stub.failNext(429, 2);
+ *     ...
+ *     assertThat(stub.requests("PUT", "/twitter"), hasSize(1));
+ * }
+ * }
+ * </pre>
+ */
+public class ElasticsearchStub implements AutoCloseable {
+
+    /**
+     * A request received by the stub.
+     * @param method    the HTTP method
+     * @param path      the path, like {@code /twitter/_search}
+     * @param query     the query string or null
+     * @param body      the request body, empty if none
+     * @param status    the status sent back
+     * @param authorization the Authorization header or null
+     * @param headers   the names of the headers, in lower case
+     */
+    public record RecordedRequest(String method, String path, String query, String body, int status, String authorization,
+                                  Set<String> headers) {
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String VERSION = "8.11.0";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final List<RecordedRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile long latencyMillis;
+    private volatile long greenAt;
+    private volatile boolean recordRequests = true;
+    private volatile boolean storeDocuments = true;
+
+    // Guarded by this
+    private int failures;
+    private int failureStatus;
+    private int bulkRejectionEvery;
+    private int reindexRejections;
+    private final Map<String, Integer> failingPaths = new HashMap<>();
+    private long bulkItems;
+    private long autoIds;
+    private final Map<String, StubIndex> indices = new TreeMap<>();
+    private final Map<String, Set<String>> aliases = new TreeMap<>();
+    private final Map<String, JsonNode> componentTemplates = new TreeMap<>();
+    private final Map<String, JsonNode> indexTemplates = new TreeMap<>();
+    private final Map<String, JsonNode> pipelines = new TreeMap<>();
+    private final Map<String, JsonNode> policies = new TreeMap<>();
+    private final Map<String, JsonNode> scripts = new TreeMap<>();
+    private final Map<String, List<String>> pits = new TreeMap<>();
+    private long pitIds;
+    private final Map<String, JsonNode> tasks = new TreeMap<>();
+
+    private static final class StubIndex {
+        ObjectNode settings = mapper.createObjectNode();
+        ObjectNode mappings = mapper.createObjectNode();
+        final Map<String, JsonNode> documents = new LinkedHashMap<>();
+        long seqNo;
+    }
+
+    /**
+     * Starts the stub on a random port of the loopback interface.
+     */
+    public ElasticsearchStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "elasticsearch-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return the url of the stub, like {@code http://127.0.0.1:52348}
+     */
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the stub as a node for the low level client
+     */
+    public HttpHost host() {
+        return HttpHost.create(url());
+    }
+
+    /**
+     * Waits before answering each request. Defaults to no latency.
+     * @param latency the latency
+     */
+    public void latency(Duration latency) {
+        this.latencyMillis = latency.toMillis();
+    }
+
+    /**
+     * Reports a yellow cluster until the delay has elapsed. Like Elasticsearch, the health requests
+     * waiting for a status wait for it up to their {@code timeout} before answering.
+     * @param delay the time the cluster needs to become green
+     */
+    public void greenAfter(Duration delay) {
+        this.greenAt = System.nanoTime() + delay.toNanos();
+    }
+
+    /**
+     * Answers the next requests with an error, like 429 (too many requests) or 503.
+     * @param status    the HTTP status
+     * @param times     the number of requests to fail
+     */
+    public synchronized void failNext(int status, int times) {
+        this.failureStatus = status;
+        this.failures = times;
+    }
+
+    /**
+     * Rejects one bulk item out of {@code every} with a 429, like a node with a full write
+     * queue. The other items succeed. 0, the default, never rejects.
+     * @param every the period of the rejections
+     */
+    public synchronized void rejectBulkItems(int every) {
+        this.bulkRejectionEvery = every;
+        this.bulkItems = 0;
+    }
+
+    /**
+     * Answers all the requests on a path with an error, until {@link #reset()}.
+     * @param path      the exact path, like {@code /_aliases}
+     * @param status    the HTTP status
+     */
+    public synchronized void failPath(String path, int status) {
+        failingPaths.put(path, status);
+    }
+
+    /**
+     * Rejects the first documents of the next reindex, like a mapping which does not accept them.
+     * They are reported in the failures of the reindex task.
+     * @param documents the number of documents to reject
+     */
+    public synchronized void rejectReindexDocuments(int documents) {
+        this.reindexRejections = documents;
+    }
+
+    /**
+     * Keeps a copy of each request. Defaults to true. Disable it for the benchmarks.
+     * @param recordRequests true to record the requests
+     */
+    public void recordRequests(boolean recordRequests) {
+        this.recordRequests = recordRequests;
+    }
+
+    /**
+     * Keeps the indexed documents. Defaults to true. Disable it for the benchmarks.
+     * @param storeDocuments true to keep the documents
+     */
+    public void storeDocuments(boolean storeDocuments) {
+        this.storeDocuments = storeDocuments;
+    }
+
+    /**
+     * @return the number of requests received, even when they are not recorded
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return a copy of the recorded requests
+     */
+    public List<RecordedRequest> requests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * @param method    the HTTP method
+     * @param path      the exact path, like {@code /_index_template/template_1}
+     * @return the recorded requests with this method and path
+     */
+    public List<RecordedRequest> requests(String method, String path) {
+        return requests().stream().filter(r -> r.method().equals(method) && r.path().equals(path)).toList();
+    }
+
+    public synchronized Set<String> indices() {
+        return new LinkedHashSet<>(indices.keySet());
+    }
+
+    public synchronized JsonNode mappings(String index) {
+        StubIndex stubIndex = indices.get(index);
+        return stubIndex == null ? null : stubIndex.mappings.deepCopy();
+    }
+
+    public synchronized JsonNode settings(String index) {
+        StubIndex stubIndex = indices.get(index);
+        return stubIndex == null ? null : stubIndex.settings.deepCopy();
+    }
+
+    public synchronized int documents(String index) {
+        StubIndex stubIndex = indices.get(index);
+        return stubIndex == null ? 0 : stubIndex.documents.size();
+    }
+
+    public synchronized Set<String> aliases(String index) {
+        Set<String> found = new LinkedHashSet<>();
+        aliases.forEach((alias, targets) -> {
+            if (targets.contains(index)) {
+                found.add(alias);
+            }
+        });
+        return found;
+    }
+
+    public synchronized Set<String> componentTemplates() {
+        return new LinkedHashSet<>(componentTemplates.keySet());
+    }
+
+    public synchronized Set<String> indexTemplates() {
+        return new LinkedHashSet<>(indexTemplates.keySet());
+    }
+
+    public synchronized Set<String> pipelines() {
+        return new LinkedHashSet<>(pipelines.keySet());
+    }
+
+    public synchronized Set<String> policies() {
+        return new LinkedHashSet<>(policies.keySet());
+    }
+
+    public synchronized Set<String> pointsInTime() {
+        return new LinkedHashSet<>(pits.keySet());
+    }
+
+    public synchronized Set<String> scripts() {
+        return new LinkedHashSet<>(scripts.keySet());
+    }
+
+    /**
+     * Forgets everything: state, recorded requests and injected failures.
+     */
+    public synchronized void reset() {
+        indices.clear();
+        aliases.clear();
+        componentTemplates.clear();
+        indexTemplates.clear();
+        pipelines.clear();
+        policies.clear();
+        scripts.clear();
+        pits.clear();
+        tasks.clear();
+        requests.clear();
+        failures = 0;
+        failingPaths.clear();
+        bulkRejectionEvery = 0;
+        reindexRejections = 0;
+        greenAt = 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * A response to send back.
+     */
+    private record Answer(int status, String body) {
+        static Answer ok(JsonNode body) {
+            return new Answer(200, body.toString());
+        }
+
+        static Answer ok(String body) {
+            return new Answer(200, body);
+        }
+
+        static Answer acknowledged() {
+            return new Answer(200, "{\"acknowledged\":true}");
+        }
+
+        static Answer error(int status, String type, String reason) {
+            return new Answer(status, """
+                    {"error":{"root_cause":[{"type":"%1$s","reason":"%2$s"}],"type":"%1$s","reason":"%2$s"},"status":%3$d}"""
+                    .formatted(type, reason.replace("\"", "'"), status));
+        }
+
+        static Answer notFound(String type, String name) {
+            return error(404, type, "no such resource [" + name + "]");
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            String method = exchange.getRequestMethod();
+            String path = URLDecoder.decode(exchange.getRequestURI().getRawPath(), StandardCharsets.UTF_8);
+            String query = exchange.getRequestURI().getRawQuery();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            Answer answer;
+            try {
+                answer = path.startsWith("/_cluster/health") ? health(params(query)) : answer(method, path, query, body);
+            } catch (RuntimeException | IOException e) {
+                answer = Answer.error(400, "parse_exception", String.valueOf(e.getMessage()));
+            }
+            if (recordRequests) {
+                requests.add(new RecordedRequest(method, path, query, body, answer.status(),
+                        exchange.getRequestHeaders().getFirst("Authorization"),
+                        exchange.getRequestHeaders().keySet().stream().map(h -> h.toLowerCase(Locale.ROOT))
+                                .collect(Collectors.toSet())));
+            }
+
+            exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(answer.status(), -1);
+                return;
+            }
+            byte[] bytes = answer.body().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(answer.status(), bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    private synchronized Answer answer(String method, String path, String query, String body) throws IOException {
+        if (failures > 0) {
+            failures--;
+            return failureStatus == 429 ?
+                    Answer.error(429, "es_rejected_execution_exception", "rejected by the stub") :
+                    Answer.error(failureStatus, "stub_exception", "failure injected by the stub");
+        }
+
+        Integer pathFailure = failingPaths.get(path);
+        if (pathFailure != null) {
+            return Answer.error(pathFailure, "stub_exception", "failure injected by the stub on " + path);
+        }
+
+        String[] segments = path.length() <= 1 ? new String[0] : path.substring(1).split("/");
+        if (segments.length == 0) {
+            return Answer.ok(info());
+        }
+        Map<String, String> params = params(query);
+        return switch (segments[0]) {
+            case "_cluster" -> Answer.ok(health("green", false));
+            case "_component_template" -> templates(componentTemplates, "component_templates", "component_template",
+                    method, segments, body);
+            case "_index_template" -> templates(indexTemplates, "index_templates", "index_template",
+                    method, segments, body);
+            case "_ingest" -> named(pipelines, method, segments.length > 2 ? segments[2] : null, body, false);
+            case "_ilm" -> named(policies, method, segments.length > 2 ? segments[2] : null, body, true);
+            case "_scripts" -> named(scripts, method, segments.length > 1 ? segments[1] : null, body, false);
+            case "_aliases" -> updateAliases(body);
+            case "_alias" -> getAliases(segments.length > 1 ? segments[1] : null);
+            case "_bulk" -> bulk(null, body);
+            case "_search" -> search(null, params, body);
+            case "_pit" -> closePit(body);
+            case "_reindex" -> reindex(body);
+            case "_tasks" -> segments.length > 1 && tasks.containsKey(segments[1]) ? Answer.ok(tasks.get(segments[1])) :
+                    Answer.notFound("resource_not_found_exception", path);
+            case "_refresh" -> Answer.ok(shards());
+            default -> index(method, segments, body, params);
+        };
+    }
+
+    private Answer index(String method, String[] segments, String body, Map<String, String> params) throws IOException {
+        String name = segments[0];
+        if (segments.length == 1) {
+            return switch (method) {
+                case "HEAD" -> resolve(name).isEmpty() ? Answer.notFound("index_not_found_exception", name) : Answer.ok("{}");
+                case "GET" -> getIndex(name);
+                case "PUT" -> createIndex(name, body);
+                case "DELETE" -> deleteIndex(name);
+                default -> Answer.error(405, "illegal_argument_exception", "method not allowed");
+            };
+        }
+        String api = segments[1];
+        return switch (api) {
+            case "_bulk" -> bulk(name, body);
+            case "_search" -> search(name, params, body);
+            case "_pit" -> openPit(name);
+            case "_clone" -> segments.length > 2 ? cloneIndex(name, segments[2]) :
+                    Answer.error(400, "illegal_argument_exception", "missing target");
+            case "_count" -> Answer.ok("{\"count\":" + resolve(name).stream().mapToInt(this::documents).sum()
+                    + ",\"_shards\":" + shards() + "}");
+            case "_refresh", "_flush", "_forcemerge" -> Answer.ok(shards());
+            case "_settings" -> settings(name, method, body);
+            case "_mapping" -> mapping(name, method, body);
+            case "_alias", "_aliases" -> segments.length > 2 && method.equals("PUT") ?
+                    updateAliases("{\"actions\":[{\"add\":{\"index\":\"" + name + "\",\"alias\":\"" + segments[2] + "\"}}]}") :
+                    getAliases(segments.length > 2 ? segments[2] : null);
+            case "_doc", "_create" -> document(name, method, segments.length > 2 ? segments[2] : null, body);
+            default -> method.equals("GET") ? Answer.notFound("resource_not_found_exception", name + "/" + api)
+                    : Answer.acknowledged();
+        };
+    }
+
+    private Answer createIndex(String name, String body) throws IOException {
+        if (indices.containsKey(name)) {
+            return Answer.error(400, "resource_already_exists_exception", "index [" + name + "] already exists");
+        }
+        StubIndex index = new StubIndex();
+        if (!body.isBlank()) {
+            JsonNode json = mapper.readTree(body);
+            if (json.get("settings") instanceof ObjectNode settings) {
+                index.settings = settings;
+            }
+            if (json.get("mappings") instanceof ObjectNode mappings) {
+                index.mappings = mappings;
+            }
+            if (json.get("aliases") instanceof ObjectNode indexAliases) {
+                indexAliases.fieldNames().forEachRemaining(alias ->
+                        aliases.computeIfAbsent(alias, a -> new LinkedHashSet<>()).add(name));
+            }
+        }
+        indices.put(name, index);
+        return Answer.ok("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + name + "\"}");
+    }
+
+    private Answer deleteIndex(String name) {
+        List<String> targets = resolve(name);
+        if (targets.isEmpty()) {
+            return Answer.notFound("index_not_found_exception", name);
+        }
+        for (String target : targets) {
+            indices.remove(target);
+            aliases.values().forEach(indicesOfAlias -> indicesOfAlias.remove(target));
+        }
+        aliases.values().removeIf(Set::isEmpty);
+        return Answer.acknowledged();
+    }
+
+    private Answer getIndex(String name) {
+        List<String> targets = resolve(name);
+        if (targets.isEmpty()) {
+            return Answer.notFound("index_not_found_exception", name);
+        }
+        ObjectNode response = mapper.createObjectNode();
+        for (String target : targets) {
+            ObjectNode index = response.putObject(target);
+            ObjectNode indexAliases = index.putObject("aliases");
+            aliases(target).forEach(indexAliases::putObject);
+            index.set("mappings", indices.get(target).mappings);
+            index.set("settings", indexSettings(target));
+        }
+        return Answer.ok(response);
+    }
+
+    private Answer settings(String name, String method, String body) throws IOException {
+        List<String> targets = resolve(name);
+        if (targets.isEmpty()) {
+            return Answer.notFound("index_not_found_exception", name);
+        }
+        if (method.equals("GET")) {
+            ObjectNode response = mapper.createObjectNode();
+            targets.forEach(target -> response.putObject(target).set("settings", indexSettings(target)));
+            return Answer.ok(response);
+        }
+        JsonNode json = mapper.readTree(body);
+        JsonNode update = json.has("settings") ? json.get("settings") : json;
+        for (String target : targets) {
+            if (update instanceof ObjectNode updateObject) {
+                indices.get(target).settings.setAll(updateObject);
+            }
+        }
+        return Answer.acknowledged();
+    }
+
+    private ObjectNode indexSettings(String index) {
+        ObjectNode settings = mapper.createObjectNode();
+        ObjectNode indexSettings = settings.putObject("index");
+        indices.get(index).settings.fields().forEachRemaining(e ->
+                indexSettings.set(e.getKey().startsWith("index.") ? e.getKey().substring(6) : e.getKey(), e.getValue()));
+        indexSettings.put("provided_name", index);
+        return settings;
+    }
+
+    private Answer mapping(String name, String method, String body) throws IOException {
+        List<String> targets = resolve(name);
+        if (targets.isEmpty()) {
+            return Answer.notFound("index_not_found_exception", name);
+        }
+        if (method.equals("GET")) {
+            ObjectNode response = mapper.createObjectNode();
+            targets.forEach(target -> response.putObject(target).set("mappings", indices.get(target).mappings));
+            return Answer.ok(response);
+        }
+        JsonNode update = mapper.readTree(body);
+        for (String target : targets) {
+            ObjectNode mappings = indices.get(target).mappings;
+            if (update.get("properties") instanceof ObjectNode properties) {
+                child(mappings, "properties").setAll(properties);
+            }
+        }
+        return Answer.acknowledged();
+    }
+
+    private Answer document(String name, String method, String id, String body) throws IOException {
+        List<String> targets = resolve(name);
+        String target = targets.size() == 1 ? targets.get(0) : name;
+        if (method.equals("GET") || method.equals("HEAD")) {
+            StubIndex index = indices.get(target);
+            JsonNode source = index == null ? null : index.documents.get(id);
+            if (source == null) {
+                return new Answer(404, "{\"_index\":\"" + target + "\",\"_id\":\"" + id + "\",\"found\":false}");
+            }
+            ObjectNode response = mapper.createObjectNode().put("_index", target).put("_id", id)
+                    .put("_version", 1).put("_seq_no", 0).put("_primary_term", 1).put("found", true);
+            response.set("_source", source);
+            return Answer.ok(response);
+        }
+        if (method.equals("DELETE")) {
+            StubIndex index = indices.get(target);
+            boolean found = index != null && index.documents.remove(id) != null;
+            return new Answer(found ? 200 : 404, writeResult(target, id, found ? "deleted" : "not_found", 0).toString());
+        }
+        String docId = id != null ? id : autoId();
+        ObjectNode result = indexDocument(target, docId, mapper.readTree(body));
+        return new Answer(201, result.toString());
+    }
+
+    private ObjectNode indexDocument(String name, String id, JsonNode source) {
+        StubIndex index = indices.computeIfAbsent(name, n -> new StubIndex());
+        boolean created = !index.documents.containsKey(id);
+        if (storeDocuments) {
+            index.documents.put(id, source);
+        }
+        return writeResult(name, id, created ? "created" : "updated", index.seqNo++);
+    }
+
+    private String autoId() {
+        return "stub-" + autoIds++;
+    }
+
+    private static ObjectNode writeResult(String index, String id, String result, long seqNo) {
+        ObjectNode response = mapper.createObjectNode().put("_index", index).put("_id", id)
+                .put("_version", 1).put("result", result);
+        response.putObject("_shards").put("total", 1).put("successful", 1).put("failed", 0);
+        return response.put("_seq_no", seqNo).put("_primary_term", 1);
+    }
+
+    private Answer bulk(String defaultIndex, String body) throws IOException {
+        ObjectNode response = mapper.createObjectNode().put("took", 1).put("errors", false);
+        ArrayNode items = response.putArray("items");
+        String[] lines = body.split("\n");
+        boolean errors = false;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            JsonNode actionLine = mapper.readTree(lines[i]);
+            String action = actionLine.fieldNames().next();
+            JsonNode metadata = actionLine.get(action);
+            String index = metadata.has("_index") ? metadata.get("_index").asText() : defaultIndex;
+            String id = metadata.has("_id") ? metadata.get("_id").asText() : autoId();
+            JsonNode source = null;
+            if (!action.equals("delete")) {
+                source = mapper.readTree(lines[++i]);
+            }
+            bulkItems++;
+            ObjectNode item;
+            if (bulkRejectionEvery > 0 && bulkItems % bulkRejectionEvery == 0) {
+                errors = true;
+                item = mapper.createObjectNode().put("_index", index).put("_id", id).put("status", 429);
+                item.putObject("error").put("type", "es_rejected_execution_exception")
+                        .put("reason", "rejected by the stub");
+            } else if (action.equals("create") && indices.containsKey(index)
+                    && indices.get(index).documents.containsKey(id)) {
+                errors = true;
+                item = mapper.createObjectNode().put("_index", index).put("_id", id).put("status", 409);
+                item.putObject("error").put("type", "version_conflict_engine_exception")
+                        .put("reason", "[" + id + "]: version conflict, document already exists");
+            } else if (action.equals("delete")) {
+                StubIndex stubIndex = indices.get(index);
+                boolean found = stubIndex != null && stubIndex.documents.remove(id) != null;
+                item = writeResult(index, id, found ? "deleted" : "not_found", 0).put("status", found ? 200 : 404);
+            } else {
+                if (action.equals("update")) {
+                    source = source.has("doc") ? source.get("doc") : source;
+                }
+                item = indexDocument(index, id, source);
+                item.put("status", item.get("result").asText().equals("created") ? 201 : 200);
+            }
+            items.addObject().set(action, item);
+        }
+        response.put("errors", errors);
+        return Answer.ok(response);
+    }
+
+    /**
+     * Copies the documents synchronously and stores the result as a completed task.
+     * The query is ignored: all the documents are copied, and the ones already in the
+     * destination are counted as version conflicts, like with an external version.
+     */
+    private Answer reindex(String body) throws IOException {
+        JsonNode request = mapper.readTree(body);
+        String source = request.path("source").path("index").path(0).asText(request.path("source").path("index").asText());
+        String dest = request.path("dest").path("index").asText();
+        List<String> targets = resolve(source);
+        if (targets.isEmpty()) {
+            return Answer.notFound("index_not_found_exception", source);
+        }
+        StubIndex destination = indices.computeIfAbsent(dest, d -> new StubIndex());
+        int total = 0;
+        int created = 0;
+        int conflicts = 0;
+        ArrayNode failures = mapper.createArrayNode();
+        for (String target : targets) {
+            for (Map.Entry<String, JsonNode> document : indices.get(target).documents.entrySet()) {
+                total++;
+                if (reindexRejections > 0) {
+                    reindexRejections--;
+                    ObjectNode failure = failures.addObject().put("index", dest).put("id", document.getKey())
+                            .put("status", 400);
+                    failure.putObject("cause").put("type", "document_parsing_exception")
+                            .put("reason", "rejected by the stub");
+                } else if (destination.documents.containsKey(document.getKey())) {
+                    conflicts++;
+                } else {
+                    destination.documents.put(document.getKey(), document.getValue());
+                    created++;
+                }
+            }
+        }
+        String taskId = "stub:" + (tasks.size() + 1);
+        ObjectNode task = mapper.createObjectNode().put("completed", true);
+        task.putObject("task").put("node", "stub").put("action", "indices:data/write/reindex");
+        task.putObject("response").put("total", total).put("created", created).put("updated", 0)
+                .put("deleted", 0).put("batches", 1).put("version_conflicts", conflicts).put("noops", 0)
+                .set("failures", failures);
+        tasks.put(taskId, task);
+        return Answer.ok(mapper.createObjectNode().put("task", taskId));
+    }
+
+    private Answer cloneIndex(String name, String target) {
+        StubIndex source = indices.get(name);
+        if (source == null) {
+            return Answer.notFound("index_not_found_exception", name);
+        }
+        if (indices.containsKey(target)) {
+            return Answer.error(400, "resource_already_exists_exception", "index [" + target + "] already exists");
+        }
+        StubIndex clone = new StubIndex();
+        clone.settings = source.settings.deepCopy();
+        clone.mappings = source.mappings.deepCopy();
+        clone.documents.putAll(source.documents);
+        indices.put(target, clone);
+        return Answer.ok("{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + target + "\"}");
+    }
+
+    private Answer openPit(String name) {
+        List<String> targets = resolve(name);
+        if (targets.isEmpty()) {
+            return Answer.notFound("index_not_found_exception", name);
+        }
+        String id = "pit-" + (++pitIds);
+        pits.put(id, targets);
+        return Answer.ok(mapper.createObjectNode().put("id", id));
+    }
+
+    private Answer closePit(String body) throws IOException {
+        boolean freed = pits.remove(mapper.readTree(body).path("id").asText()) != null;
+        return Answer.ok(mapper.createObjectNode().put("succeeded", true).put("num_freed", freed ? 1 : 0));
+    }
+
+    private Answer search(String name, Map<String, String> params, String body) throws IOException {
+        // Like Elasticsearch, the size and from given in the body win over the URL parameters
+        JsonNode request = body == null || body.isBlank() ? mapper.createObjectNode() : mapper.readTree(body);
+        String pitId = request.path("pit").path("id").asText(null);
+        List<String> targets;
+        if (pitId != null) {
+            targets = pits.get(pitId);
+            if (targets == null) {
+                return Answer.notFound("search_context_missing_exception", pitId);
+            }
+        } else {
+            targets = name == null ? new ArrayList<>(indices.keySet()) : resolve(name);
+            if (targets.isEmpty() && name != null && !name.contains("*")) {
+                return Answer.notFound("index_not_found_exception", name);
+            }
+        }
+        int size = request.path("size").asInt(Integer.parseInt(params.getOrDefault("size", "10")));
+        int from = request.path("from").asInt(Integer.parseInt(params.getOrDefault("from", "0")));
+        // With a point in time, documents are sorted by their position, which is also used by search_after and slice
+        long searchAfter = request.path("search_after").path(0).asLong(-1);
+        int sliceId = request.path("slice").path("id").asInt(0);
+        int sliceMax = request.path("slice").path("max").asInt(1);
+        ObjectNode response = mapper.createObjectNode().put("took", 1).put("timed_out", false);
+        if (pitId != null) {
+            response.put("pit_id", pitId);
+        }
+        response.set("_shards", shards());
+        ObjectNode hits = response.putObject("hits");
+        ArrayNode hitList = mapper.createArrayNode();
+        int total = 0;
+        long position = 0;
+        for (String target : targets) {
+            StubIndex index = indices.get(target);
+            if (index == null) {
+                continue;
+            }
+            for (Map.Entry<String, JsonNode> document : index.documents.entrySet()) {
+                long current = position++;
+                if (current <= searchAfter || current % sliceMax != sliceId) {
+                    continue;
+                }
+                if (total >= from && hitList.size() < size) {
+                    ObjectNode hit = hitList.addObject().put("_index", target).put("_id", document.getKey())
+                            .put("_score", 1.0);
+                    hit.set("_source", document.getValue());
+                    if (pitId != null) {
+                        hit.putArray("sort").add(current);
+                    }
+                }
+                total++;
+            }
+        }
+        hits.putObject("total").put("value", total).put("relation", "eq");
+        if (total > 0) {
+            hits.put("max_score", 1.0);
+        } else {
+            hits.putNull("max_score");
+        }
+        hits.set("hits", hitList);
+        return Answer.ok(response);
+    }
+
+    private Answer updateAliases(String body) throws IOException {
+        for (JsonNode action : mapper.readTree(body).path("actions")) {
+            String type = action.fieldNames().next();
+            JsonNode definition = action.get(type);
+            List<String> targets = new ArrayList<>();
+            if (definition.has("index")) {
+                targets.add(definition.get("index").asText());
+            }
+            definition.path("indices").forEach(index -> targets.add(index.asText()));
+            List<String> names = new ArrayList<>();
+            if (definition.has("alias")) {
+                names.add(definition.get("alias").asText());
+            }
+            definition.path("aliases").forEach(alias -> names.add(alias.asText()));
+            switch (type) {
+                case "add" -> {
+                    for (String target : targets) {
+                        if (!indices.containsKey(target)) {
+                            return Answer.notFound("index_not_found_exception", target);
+                        }
+                        names.forEach(alias -> aliases.computeIfAbsent(alias, a -> new LinkedHashSet<>()).add(target));
+                    }
+                }
+                case "remove" -> names.forEach(alias -> {
+                    Set<String> indicesOfAlias = aliases.get(alias);
+                    if (indicesOfAlias != null) {
+                        targets.forEach(indicesOfAlias::remove);
+                        if (indicesOfAlias.isEmpty()) {
+                            aliases.remove(alias);
+                        }
+                    }
+                });
+                case "remove_index" -> {
+                    for (String target : targets) {
+                        deleteIndex(target);
+                    }
+                }
+                default -> {
+                    return Answer.error(400, "illegal_argument_exception", "unknown alias action [" + type + "]");
+                }
+            }
+        }
+        return Answer.acknowledged();
+    }
+
+    private Answer getAliases(String name) {
+        ObjectNode response = mapper.createObjectNode();
+        aliases.forEach((alias, targets) -> {
+            if (name == null || name.equals(alias)) {
+                targets.forEach(target -> child(child(response, target), "aliases").putObject(alias));
+            }
+        });
+        if (name != null && response.isEmpty()) {
+            return new Answer(404, "{\"error\":\"alias [" + name + "] missing\",\"status\":404}");
+        }
+        return Answer.ok(response);
+    }
+
+    /**
+     * The APIs returning {@code {"<plural>":[{"name":...,"<singular>":{...}}]}} on GET.
+     */
+    private Answer templates(Map<String, JsonNode> store, String plural, String singular,
+                             String method, String[] segments, String body) throws IOException {
+        String name = segments.length > 1 ? segments[1] : null;
+        switch (method) {
+            case "PUT", "POST" -> {
+                store.put(name, mapper.readTree(body));
+                return Answer.acknowledged();
+            }
+            case "DELETE" -> {
+                return store.remove(name) != null ? Answer.acknowledged() : Answer.notFound("resource_not_found_exception", name);
+            }
+            case "HEAD" -> {
+                return store.containsKey(name) ? Answer.ok("{}") : Answer.notFound("resource_not_found_exception", name);
+            }
+            default -> {
+                if (name != null && !name.contains("*") && !store.containsKey(name)) {
+                    return Answer.notFound("resource_not_found_exception", name);
+                }
+                ObjectNode response = mapper.createObjectNode();
+                ArrayNode list = response.putArray(plural);
+                store.forEach((key, value) -> {
+                    if (name == null || name.equals(key) || name.contains("*")) {
+                        list.addObject().put("name", key).set(singular, value);
+                    }
+                });
+                return Answer.ok(response);
+            }
+        }
+    }
+
+    /**
+     * The APIs returning {@code {"<name>":{...}}} on GET: pipelines, lifecycle policies and scripts.
+     */
+    private Answer named(Map<String, JsonNode> store, String method, String name, String body, boolean policy)
+            throws IOException {
+        switch (method) {
+            case "PUT", "POST" -> {
+                store.put(name, mapper.readTree(body));
+                return Answer.acknowledged();
+            }
+            case "DELETE" -> {
+                return store.remove(name) != null ? Answer.acknowledged() : Answer.notFound("resource_not_found_exception", name);
+            }
+            default -> {
+                if (name != null && !store.containsKey(name)) {
+                    return new Answer(404, "{}");
+                }
+                ObjectNode response = mapper.createObjectNode();
+                store.forEach((key, value) -> {
+                    if (name == null || name.equals(key)) {
+                        if (policy) {
+                            response.putObject(key).put("version", 1).put("modified_date", "2023-11-04T10:04:57.184Z")
+                                    .set("policy", value.path("policy"));
+                        } else {
+                            response.set(key, value);
+                        }
+                    }
+                });
+                return Answer.ok(response);
+            }
+        }
+    }
+
+    /**
+     * @return the indices behind a name: the index itself, the indices of an alias, or the
+     * indices matching a comma separated list of names and wildcards
+     */
+    private List<String> resolve(String name) {
+        Set<String> found = new LinkedHashSet<>();
+        for (String part : name.split(",")) {
+            if (part.equals("_all") || part.equals("*")) {
+                found.addAll(indices.keySet());
+            } else if (part.contains("*")) {
+                String regex = part.replace(".", "\\.").replace("*", ".*");
+                indices.keySet().stream().filter(index -> index.matches(regex)).forEach(found::add);
+            } else if (indices.containsKey(part)) {
+                found.add(part);
+            } else if (aliases.containsKey(part)) {
+                found.addAll(aliases.get(part));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(param.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+            } else {
+                params.put(param, "");
+            }
+        }
+        return params;
+    }
+
+    private static ObjectNode child(ObjectNode parent, String name) {
+        return parent.get(name) instanceof ObjectNode child ? child : parent.putObject(name);
+    }
+
+    private static ObjectNode shards() {
+        return mapper.createObjectNode().put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+    }
+
+    private static String info() {
+        return """
+                {"name":"stub","cluster_name":"stub","cluster_uuid":"stub","version":{"number":"%s",\
+                "build_flavor":"default","build_type":"docker","build_hash":"stub","build_date":"2023-11-04T10:04:57.184Z",\
+                "build_snapshot":false,"lucene_version":"9.8.0","minimum_wire_compatibility_version":"7.17.0",\
+                "minimum_index_compatibility_version":"7.0.0"},"tagline":"You Know, for Search"}""".formatted(VERSION);
+    }
+
+    /**
+     * Not synchronized, as it waits for the status like Elasticsearch.
+     */
+    private Answer health(Map<String, String> params) {
+        long remaining = greenAt - System.nanoTime();
+        if (remaining > 0 && params.containsKey("wait_for_status")) {
+            long wait = Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), millis(params.getOrDefault("timeout", "30s")));
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            remaining = greenAt - System.nanoTime();
+        }
+        return remaining > 0 ? Answer.ok(health("yellow", params.containsKey("wait_for_status"))) :
+                Answer.ok(health("green", false));
+    }
+
+    private static long millis(String time) {
+        if (time.endsWith("ms")) {
+            return Long.parseLong(time.substring(0, time.length() - 2));
+        }
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(time.substring(0, time.length() - 1)));
+    }
+
+    private static String health(String status, boolean timedOut) {
+        return """
+                {"cluster_name":"stub","status":"%s","timed_out":%s,"number_of_nodes":1,"number_of_data_nodes":1,\
+                "active_primary_shards":1,"active_shards":1,"relocating_shards":0,"initializing_shards":0,\
+                "unassigned_shards":0,"delayed_unassigned_shards":0,"number_of_pending_tasks":0,\
+                "number_of_in_flight_fetch":0,"task_max_waiting_in_queue_millis":0,"active_shards_percent_as_number":100.0}"""
+                .formatted(status, timedOut);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import fr.pilato.spring.elasticsearch.request.RequestTemplate;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import fr.pilato.spring.elasticsearch.transport.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BufferPoolTest extends AbstractStubTest {
+
+    @Test
+    void testSizeClasses() {
+        BufferPool pool = new BufferPool.Builder().maxBufferSize(64 * 1024).stripes(1).build();
+        assertThat(pool.acquire(1).length, is(4096));
+        assertThat(pool.acquire(4097).length, is(8192));
+        assertThat(pool.acquire(8192).length, is(8192));
+        // Larger than the pool: exact size, never kept
+        byte[] large = pool.acquire(100_000);
+        assertThat(large.length, is(100_000));
+        pool.release(large);
+        pool.release(new byte[5000]);
+        assertThat(pool.stats(), is(new BufferPool.Stats(0, 4, 0, 2)));
+    }
+
+    @Test
+    void testBuffersAreReused() {
+        BufferPool pool = new BufferPool.Builder().maxBuffers(1).stripes(1).build();
+        byte[] first = pool.acquire(10_000);
+        byte[] second = pool.acquire(10_000);
+        pool.release(first);
+        // Only one free array of each size is kept
+        pool.release(second);
+        assertThat(pool.acquire(10_000), sameInstance(first));
+        assertThat(pool.stats(), is(new BufferPool.Stats(1, 2, 1, 1)));
+    }
+
+    @Test
+    void testResponsesAreReadInPooledBuffers() throws Exception {
+        BufferPool pool = new BufferPool.Builder().build();
+        ElasticsearchClient client = start(pool, null);
+        for (int i = 0; i < 10; i++) {
+            SearchResponse<Map> response = client.search(sr -> sr.index("twitter").size(100), Map.class);
+            assertThat(response.hits().hits().size(), is(100));
+        }
+        // Every response gave its array back, so the next ones reused it
+        assertThat(pool.stats().reused(), greaterThan(0L));
+        assertThat(pool.stats().allocated() < 10, is(true));
+    }
+
+    @Test
+    void testRequestTemplateUsesThePool() throws Exception {
+        BufferPool pool = new BufferPool.Builder().build();
+        ElasticsearchClient client = start(pool, null);
+        RequestTemplate template = RequestTemplate.of("POST", "/twitter/_search", "{\"size\":{{size}}}");
+        for (int i = 0; i < 5; i++) {
+            SearchResponse<Map> response = template.search(client, Map.of("size", 3), Map.class);
+            assertThat(response.hits().hits().size(), is(3));
+        }
+        // One request body and one response body per call
+        BufferPool.Stats stats = pool.stats();
+        assertThat(stats.reused() + stats.allocated(), is(stats.released() + stats.dropped()));
+        assertThat(stats.reused(), greaterThan(0L));
+    }
+
+    @Test
+    void testVectorTemplatesReuseTheirBuffers() throws Exception {
+        BufferPool pool = new BufferPool.Builder().build();
+        ElasticsearchClient client = start(pool, null);
+        RequestTemplate knn = RequestTemplate.of("POST", "/twitter/_search",
+                "{\"knn\":{\"field\":\"embedding\",\"query_vector\":{{vector}},\"k\":3,\"num_candidates\":10}}");
+        float[] vector = new float[2048];
+        Arrays.fill(vector, -0.123456789f);
+        knn.search(client, Map.of("vector", vector), Map.class);
+        long allocated = pool.stats().allocated();
+        for (int i = 0; i < 10; i++) {
+            knn.search(client, Map.of("vector", vector), Map.class);
+        }
+        // The request bodies are larger than the template but fit in the array taken for them
+        assertThat(pool.stats().allocated(), is(allocated));
+    }
+
+    @Test
+    void testErrorResponsesWithAPool() throws Exception {
+        BufferPool pool = new BufferPool.Builder().build();
+        ElasticsearchClient client = start(pool, null);
+        assertThrows(Exception.class, () -> client.search(sr -> sr.index("unknown"), Map.class));
+        // The client copied the error body before reading it, so the array went back to the pool
+        BufferPool.Stats stats = pool.stats();
+        assertThat(stats.reused() + stats.allocated(), is(stats.released() + stats.dropped()));
+    }
+
+    @Test
+    void testResponseBufferLimit() throws Exception {
+        ElasticsearchClient client = start(null, 1024);
+        assertThrows(Exception.class, () -> client.search(sr -> sr.index("twitter").size(100), Map.class));
+        assertThat(client.search(sr -> sr.index("twitter").size(1), Map.class).hits().hits().size(), is(1));
+    }
+
+    @Test
+    void testResponseBufferLimitWithAPool() throws Exception {
+        BufferPool pool = new BufferPool.Builder().build();
+        ElasticsearchClient client = start(pool, 1024);
+        assertThrows(Exception.class, () -> client.search(sr -> sr.index("twitter").size(100), Map.class));
+        assertThat(client.search(sr -> sr.index("twitter").size(1), Map.class).hits().hits().size(), is(1));
+    }
+
+    private ElasticsearchClient start(BufferPool pool, Integer responseBufferLimit) throws Exception {
+        ElasticsearchClient client = startFactory(factory -> {
+            if (pool != null) {
+                factory.setBufferPool(pool);
+            }
+            if (responseBufferLimit != null) {
+                factory.setResponseBufferLimit(responseBufferLimit);
+            }
+        }).getObject();
+        client.bulk(br -> {
+            for (int i = 0; i < 100; i++) {
+                String id = Integer.toString(i);
+                br.operations(o -> o.index(io -> io.index("twitter").id(id)
+                        .document(Map.of("message", "A message which is long enough " + id))));
+            }
+            return br;
+        });
+        return client;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.admin.BulkLoadSession;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BulkLoadSessionTest {
+
+    private ElasticsearchStub stub;
+    private RestClient restClient;
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        stub = new ElasticsearchStub();
+        // A socket timeout much shorter than the time the cluster needs to be green
+        restClient = RestClient.builder(stub.host())
+                .setRequestConfigCallback(rcb -> rcb.setSocketTimeout(500))
+                .build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+        client.indices().create(cir -> cir.index("products"));
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        restClient.close();
+        stub.close();
+    }
+
+    @Test
+    void testWaitLongerThanTheSocketTimeout() throws IOException {
+        BulkLoadSession session = new BulkLoadSession.Builder()
+                .indices("products")
+                .healthPollTimeout(Duration.ofMillis(200))
+                .start(client);
+        stub.greenAfter(Duration.ofMillis(1500));
+        session.close();
+
+        assertThat(session.isClosed(), is(true));
+        assertThat(stub.requests("GET", "/_cluster/health/products").size(), greaterThan(1));
+    }
+
+    @Test
+    void testHealthTimeout() throws IOException {
+        BulkLoadSession session = new BulkLoadSession.Builder()
+                .indices("products")
+                .healthTimeout(Duration.ofMillis(600))
+                .healthPollTimeout(Duration.ofMillis(200))
+                .start(client);
+        stub.greenAfter(Duration.ofMinutes(1));
+        assertThrows(IllegalStateException.class, session::close);
+        // The settings are restored anyway
+        assertThat(stub.requests("PUT", "/products/_settings"), hasSize(2));
+    }
+}
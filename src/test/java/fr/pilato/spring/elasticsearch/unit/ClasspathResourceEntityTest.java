@@ -0,0 +1,70 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import fr.pilato.spring.elasticsearch.transport.ClasspathResourceEntity;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+class ClasspathResourceEntityTest {
+
+    private static final String PIPELINE = "/models/root/pipelines/_pipelines/pipeline1.json";
+
+    @Test
+    void testUnknownResource() throws IOException {
+        assertThat(ClasspathResourceEntity.of("__unknown_file_path_____"), nullValue());
+        assertThat(ClasspathResourceEntity.exists("__unknown_file_path_____"), is(false));
+    }
+
+    @Test
+    void testResourceIsStreamedAgainAndAgain() throws IOException {
+        ClasspathResourceEntity entity = ClasspathResourceEntity.of(PIPELINE);
+        assertThat(entity, notNullValue());
+        assertThat(entity.isRepeatable(), is(true));
+        assertThat(entity.getContentType().getValue(), containsString("application/json"));
+
+        byte[] expected;
+        try (InputStream in = ClasspathResourceEntityTest.class.getResourceAsStream(PIPELINE)) {
+            expected = in.readAllBytes();
+        }
+        assertThat(entity.getContentLength(), is((long) expected.length));
+
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            assertThat(out.toString(StandardCharsets.UTF_8), is(new String(expected, StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    void testLeadingSlashIsOptional() throws IOException {
+        assertThat(ClasspathResourceEntity.of(PIPELINE.substring(1)), notNullValue());
+    }
+}
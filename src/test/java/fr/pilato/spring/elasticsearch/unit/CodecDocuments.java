@@ -0,0 +1,78 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import fr.pilato.spring.elasticsearch.codec.ElasticsearchDocument;
+
+import java.util.List;
+
+/**
+ * Documents with a codec generated at compile time.
+ */
+class CodecDocuments {
+
+    @ElasticsearchDocument
+    record Tweet(String user, @JsonProperty("post_date") String date, int retweets, boolean pinned,
+                 Double score, float[] embedding, List<String> tags, Author author) {
+    }
+
+    @ElasticsearchDocument
+    public static class Author {
+        private String name;
+        private long followers;
+        private Boolean verified;
+        @JsonIgnore
+        private String password;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public long getFollowers() {
+            return followers;
+        }
+
+        public void setFollowers(long followers) {
+            this.followers = followers;
+        }
+
+        public Boolean getVerified() {
+            return verified;
+        }
+
+        public void setVerified(Boolean verified) {
+            this.verified = verified;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import fr.pilato.spring.elasticsearch.codec.DocumentCodecProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class DocumentCodecProcessorTest {
+
+    @TempDir
+    Path output;
+
+    @Test
+    void testSupportedAnnotations() {
+        assertThat(compile("""
+                public record Tweet(@com.fasterxml.jackson.annotation.JsonProperty("post_date") String date,
+                                    String user) {
+                }
+                """), empty());
+    }
+
+    @Test
+    void testUnsupportedAnnotationOnAField() {
+        List<String> errors = compile("""
+                public record Tweet(@com.fasterxml.jackson.annotation.JsonFormat(pattern = "yyyy") String date) {
+                }
+                """);
+        assertThat(errors, hasSize(1));
+        assertThat(errors.get(0), containsString("@JsonFormat is not supported"));
+    }
+
+    @Test
+    void testUnsupportedAnnotationOnTheClass() {
+        List<String> errors = compile("""
+                @com.fasterxml.jackson.annotation.JsonInclude(com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY)
+                public record Tweet(String user) {
+                }
+                """);
+        assertThat(errors, hasSize(1));
+        assertThat(errors.get(0), containsString("@JsonInclude is not supported"));
+    }
+
+    @Test
+    void testUnsupportedJsonPropertyAttribute() {
+        List<String> errors = compile("""
+                public record Tweet(@com.fasterxml.jackson.annotation.JsonProperty(value = "u", required = true) String user) {
+                }
+                """);
+        assertThat(errors.isEmpty(), is(false));
+        assertThat(errors.get(0), containsString("@JsonProperty is not supported"));
+    }
+
+    @Test
+    void testGetterWithoutAField() {
+        List<String> errors = compile("""
+                public class Tweet {
+                    private String firstName;
+                    private String lastName;
+                    public String getFirstName() { return firstName; }
+                    public void setFirstName(String firstName) { this.firstName = firstName; }
+                    public String getLastName() { return lastName; }
+                    public void setLastName(String lastName) { this.lastName = lastName; }
+                    public String getFullName() { return firstName + " " + lastName; }
+                }
+                """);
+        assertThat(errors, hasSize(1));
+        assertThat(errors.get(0), containsString("the getter [getFullName]"));
+    }
+
+    /**
+     * Runs the processor on a document class.
+     * @return the errors
+     */
+    private List<String> compile(String type) {
+        String source = "@fr.pilato.spring.elasticsearch.codec.ElasticsearchDocument\n" + type;
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Tweet.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        compiler.getTask(null, null, diagnostics, List.of("-proc:only", "-classpath", classpath,
+                        "-processor", DocumentCodecProcessor.class.getName(), "-d", output.toString(),
+                        "-s", output.toString()),
+                null, List.of(file)).call();
+        return diagnostics.getDiagnostics().stream()
+                .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                .map(d -> d.getMessage(null))
+                .toList();
+    }
+}
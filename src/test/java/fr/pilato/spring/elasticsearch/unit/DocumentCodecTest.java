@@ -0,0 +1,152 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import fr.pilato.spring.elasticsearch.codec.CodecJsonpMapper;
+import fr.pilato.spring.elasticsearch.codec.DocumentCodec;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DocumentCodecTest extends AbstractStubTest {
+
+    private static final String TWEET = "{\"user\":\"dadoonet\",\"post_date\":\"2024-01-01\",\"retweets\":12,\"pinned\":true," +
+            "\"score\":1.5,\"embedding\":[0.1,-0.25,3.0],\"tags\":[\"java\",\"spring\"]," +
+            "\"author\":{\"name\":\"David\",\"followers\":1000,\"verified\":false}}";
+
+    private final CodecJsonpMapper mapper = new CodecJsonpMapper(DocumentCodec.load(getClass().getClassLoader()));
+
+    @Test
+    void testCodecsAreGenerated() {
+        assertThat(mapper.codec(CodecDocuments.Tweet.class), notNullValue());
+        assertThat(mapper.codec(CodecDocuments.Author.class), notNullValue());
+    }
+
+    @Test
+    void testWrite() {
+        CodecDocuments.Author author = new CodecDocuments.Author();
+        author.setName("David");
+        author.setFollowers(1000);
+        author.setVerified(false);
+        author.setPassword("changeme");
+        CodecDocuments.Tweet tweet = new CodecDocuments.Tweet("dadoonet", "2024-01-01", 12, true, 1.5,
+                new float[]{0.1f, -0.25f, 3f}, List.of("java", "spring"), author);
+        assertThat(write(tweet, mapper), is(TWEET));
+    }
+
+    @Test
+    void testNullFieldsAreNotWritten() {
+        CodecDocuments.Tweet tweet = new CodecDocuments.Tweet(null, null, 0, false, null, null, null, null);
+        assertThat(write(tweet, mapper), is("{\"retweets\":0,\"pinned\":false}"));
+    }
+
+    @Test
+    void testNullFieldsAreWrittenLikeJackson() {
+        CodecDocuments.Tweet tweet = new CodecDocuments.Tweet(null, null, 0, false, null, null, null, null);
+        // The default mapper of the client does not write the null fields
+        assertThat(write(tweet, mapper), is(write(tweet, new JacksonJsonpMapper())));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        CodecJsonpMapper withNulls = new CodecJsonpMapper(objectMapper, DocumentCodec.load(getClass().getClassLoader()));
+        assertThat(write(tweet, withNulls), is("{\"user\":null,\"post_date\":null,\"retweets\":0,\"pinned\":false," +
+                "\"score\":null,\"embedding\":null,\"tags\":null,\"author\":null}"));
+        assertThat(write(tweet, withNulls), is(write(tweet, new JacksonJsonpMapper(objectMapper))));
+    }
+
+    @Test
+    void testUnsupportedObjectMappers() {
+        List<DocumentCodec<?>> codecs = DocumentCodec.load(getClass().getClassLoader());
+        assertThrows(IllegalArgumentException.class, () -> new CodecJsonpMapper(new ObjectMapper()
+                .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE), codecs));
+        assertThrows(IllegalArgumentException.class, () -> new CodecJsonpMapper(new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_EMPTY), codecs));
+    }
+
+    @Test
+    void testRead() {
+        CodecDocuments.Tweet tweet = read(TWEET, CodecDocuments.Tweet.class, mapper);
+        assertThat(tweet.user(), is("dadoonet"));
+        assertThat(tweet.date(), is("2024-01-01"));
+        assertThat(tweet.retweets(), is(12));
+        assertThat(tweet.pinned(), is(true));
+        assertThat(tweet.score(), is(1.5));
+        assertThat(tweet.embedding(), is(new float[]{0.1f, -0.25f, 3f}));
+        assertThat(tweet.tags(), is(List.of("java", "spring")));
+        assertThat(tweet.author().getName(), is("David"));
+        assertThat(tweet.author().getFollowers(), is(1000L));
+        assertThat(tweet.author().getVerified(), is(false));
+        // Reading and writing back gives the same document
+        assertThat(write(tweet, mapper), is(TWEET));
+    }
+
+    @Test
+    void testReadSkipsUnknownFieldsAndNulls() {
+        CodecDocuments.Tweet tweet = read("{\"unknown\":{\"a\":[1,{\"b\":2}]},\"user\":null,\"retweets\":null," +
+                "\"author\":null,\"embedding\":[],\"other\":[1,2]}", CodecDocuments.Tweet.class, mapper);
+        assertThat(tweet.user(), nullValue());
+        assertThat(tweet.retweets(), is(0));
+        assertThat(tweet.author(), nullValue());
+        assertThat(tweet.embedding().length, is(0));
+    }
+
+    @Test
+    void testFactoryUsesTheCodecs() throws Exception {
+        ElasticsearchClient client = startClient();
+        assertThat(client._jsonpMapper(), instanceOf(CodecJsonpMapper.class));
+        CodecDocuments.Tweet tweet = read(TWEET, CodecDocuments.Tweet.class, mapper);
+        client.index(ir -> ir.index("twitter").id("1").document(tweet));
+        SearchResponse<CodecDocuments.Tweet> response = client.search(sr -> sr.index("twitter"),
+                CodecDocuments.Tweet.class);
+        assertThat(write(response.hits().hits().get(0).source(), mapper), is(TWEET));
+    }
+
+    private static String write(Object document, JsonpMapper mapper) {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(json)) {
+            mapper.serialize(document, generator);
+        }
+        return json.toString();
+    }
+
+    private static <T> T read(String json, Class<T> type, JsonpMapper mapper) {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new StringReader(json))) {
+            return mapper.deserialize(parser, type);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ElasticsearchStubTest extends AbstractStubTest {
+
+    private ElasticsearchClient start(String classpathRoot) throws Exception {
+        return startFactory(factory -> {
+            factory.setAutoscan(true);
+            factory.setClasspathRoot(classpathRoot);
+        }).getObject();
+    }
+
+    @Test
+    void testFactoryCreatesIndices() throws Exception {
+        start("/models/root/search");
+        assertThat(stub.indices(), contains("twitter"));
+        assertThat(stub.mappings("twitter").at("/properties/message/type").asText(), is("text"));
+        assertThat(stub.requests("PUT", "/twitter"), hasSize(1));
+    }
+
+    @Test
+    void testFactoryKeepsExistingIndices() throws Exception {
+        start("/models/root/search");
+        start("/models/root/search");
+        assertThat(stub.requests("HEAD", "/twitter"), hasSize(2));
+        assertThat(stub.requests("PUT", "/twitter"), hasSize(1));
+
+        startFactory(factory -> {
+            factory.setAutoscan(true);
+            factory.setClasspathRoot("/models/root/search");
+            factory.setForceIndex(true);
+        });
+        assertThat(stub.requests("DELETE", "/twitter"), hasSize(1));
+        assertThat(stub.requests("PUT", "/twitter"), hasSize(2));
+        assertThat(stub.mappings("twitter").at("/properties/message/type").asText(), is("text"));
+    }
+
+    @Test
+    void testFactoryCreatesLifecyclesAndPipelines() throws Exception {
+        start("/models/root/lifecycles");
+        assertThat(stub.policies(), contains("policy1"));
+
+        start("/models/root/pipelines");
+        assertThat(stub.pipelines(), contains("pipeline1"));
+    }
+
+    @Test
+    void testIndexAndSearch() throws Exception {
+        ElasticsearchClient client = start("/models/root/search");
+        BulkResponse bulk = client.bulk(br -> br
+                .operations(o -> o.index(io -> io.index("twitter").id("1").document(Map.of("message", "hello"))))
+                .operations(o -> o.index(io -> io.index("twitter").document(Map.of("message", "world")))));
+        assertThat(bulk.errors(), is(false));
+        assertThat(stub.documents("twitter"), is(2));
+
+        SearchResponse<Map> response = client.search(sr -> sr.index("twitter"), Map.class);
+        assertThat(response.hits().total(), notNullValue());
+        assertThat(response.hits().total().value(), is(2L));
+        assertThat(response.hits().hits().get(0).source().get("message"), is("hello"));
+    }
+
+    @Test
+    void testInjectedFailures() throws Exception {
+        ElasticsearchClient client = start("/models/root/search");
+
+        stub.failNext(429, 1);
+        ElasticsearchException e = assertThrows(ElasticsearchException.class,
+                () -> client.search(sr -> sr.index("twitter"), Map.class));
+        assertThat(e.status(), is(429));
+        // Only the next request fails
+        client.search(sr -> sr.index("twitter"), Map.class);
+
+        stub.rejectBulkItems(2);
+        BulkResponse bulk = client.bulk(br -> br
+                .operations(o -> o.index(io -> io.index("twitter").id("1").document(Map.of("message", "hello"))))
+                .operations(o -> o.index(io -> io.index("twitter").id("2").document(Map.of("message", "world")))));
+        assertThat(bulk.errors(), is(true));
+        assertThat(bulk.items().get(0).error(), nullValue());
+        assertThat(bulk.items().get(1).status(), is(429));
+    }
+
+    @Test
+    void testBootstrapFailsWhenTheClusterFails() throws Exception {
+        stub.failNext(500, Integer.MAX_VALUE);
+        assertThrows(Exception.class, () -> start("/models/root/search"));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import fr.pilato.spring.elasticsearch.search.HitStream;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import org.elasticsearch.client.ResponseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HitStreamTest extends AbstractStubTest {
+
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        client = startClient();
+        client.bulk(br -> {
+            for (int i = 0; i < 5; i++) {
+                String id = Integer.toString(i);
+                br.operations(o -> o.index(io -> io.index("twitter").id(id)
+                        .document(Map.of("message", "A long enough message to fill the buffer " + id))));
+            }
+            return br;
+        });
+    }
+
+    @Test
+    void testHitsAreStreamed() throws Exception {
+        List<String> ids = new ArrayList<>();
+        // A tiny buffer, so the network reads are suspended and resumed many times
+        try (HitStream<Map> hits = new HitStream.Builder<>(client, Map.class)
+                .request(SearchRequest.of(sr -> sr.index("twitter")))
+                .bufferSize(16)
+                .open()) {
+            assertThat(hits.took(), is(1L));
+            assertThat(hits.total().value(), is(5L));
+            hits.forEachRemaining(hit -> ids.add(hit.id()));
+        }
+        assertThat(ids, contains("0", "1", "2", "3", "4"));
+    }
+
+    @Test
+    void testCloseBeforeTheEnd() throws Exception {
+        try (HitStream<Map> hits = new HitStream.Builder<>(client, Map.class)
+                .request(SearchRequest.of(sr -> sr.index("twitter")))
+                .bufferSize(16)
+                .open()) {
+            Hit<Map> first = hits.next();
+            assertThat(first.id(), is("0"));
+        }
+        // The client can still be used
+        assertThat(client.search(sr -> sr.index("twitter"), Map.class).hits().hits().size(), is(5));
+    }
+
+    @Test
+    void testErrorsAreReported() {
+        ResponseException e = assertThrows(ResponseException.class, () -> new HitStream.Builder<>(client, Map.class)
+                .request(SearchRequest.of(sr -> sr.index("doesnotexist")))
+                .open());
+        assertThat(e.getResponse().getStatusLine().getStatusCode(), is(404));
+    }
+}
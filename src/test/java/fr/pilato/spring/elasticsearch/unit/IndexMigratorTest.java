@@ -0,0 +1,183 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import fr.pilato.spring.elasticsearch.admin.IndexMigrator;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexMigratorTest extends AbstractStubTest {
+
+    private static final String SETTINGS = "{\"mappings\":{\"properties\":{\"message\":{\"type\":\"keyword\"}}}}";
+
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        client = startClient();
+    }
+
+    private void createIndex(String index, String alias) throws Exception {
+        String aliases = alias == null ? "" : ",\"aliases\":{\"" + alias + "\":{\"is_write_index\":true}}";
+        client.indices().create(cir -> cir.index(index).withJson(new StringReader(
+                "{\"mappings\":{\"properties\":{\"message\":{\"type\":\"text\"}}}" + aliases + "}")));
+        client.bulk(br -> {
+            for (int i = 0; i < 10; i++) {
+                String id = Integer.toString(i);
+                br.operations(o -> o.index(io -> io.index(index).id(id).document(Map.of("message", "message " + id))));
+            }
+            return br;
+        });
+    }
+
+    private static IndexMigrator.Builder migrator() {
+        return new IndexMigrator.Builder()
+                .catchUpField("updated_at")
+                .pollInterval(Duration.ofMillis(10));
+    }
+
+    private boolean writeBlocked(String index) {
+        return stub.settings(index).path("index.blocks.write").asBoolean(false);
+    }
+
+    @Test
+    void testCatchUpFieldIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new IndexMigrator.Builder().build());
+        new IndexMigrator.Builder().blockWritesDuringFullCopy(true).build();
+    }
+
+    @Test
+    void testVersionedIndexIsMigrated() throws Exception {
+        createIndex("twitter-v1", "twitter");
+        String index = migrator().build().migrate(client, "twitter", SETTINGS, true);
+
+        assertThat(index, is("twitter-v2"));
+        assertThat(stub.aliases("twitter-v2"), contains("twitter"));
+        assertThat(stub.documents("twitter-v2"), is(10));
+        // Copy, catch up, and last catch up once the writes are blocked
+        assertThat(stub.requests("POST", "/_reindex"), hasSize(3));
+        // The old index is kept read only
+        assertThat(writeBlocked("twitter-v1"), is(true));
+    }
+
+    @Test
+    void testOnlyTheLastCatchUpIsDoneWhileWritesAreBlocked() throws Exception {
+        createIndex("twitter-v1", "twitter");
+        migrator().build().migrate(client, "twitter", SETTINGS, true);
+
+        List<String> requests = stub.requests().stream().map(r -> r.method() + " " + r.path() + " " + r.body()).toList();
+        int health = position(requests, "GET /_cluster/health/twitter-v2");
+        int block = position(requests, "PUT /twitter-v1/_settings {\"index.blocks.write\":true}");
+        // The new index is ready before the writes are blocked
+        assertThat(health < block, is(true));
+        assertThat(requests.subList(block, requests.size()).stream().filter(r -> r.startsWith("POST /_reindex")).count(),
+                is(1L));
+    }
+
+    private static int position(List<String> requests, String prefix) {
+        for (int i = 0; i < requests.size(); i++) {
+            if (requests.get(i).startsWith(prefix)) {
+                return i;
+            }
+        }
+        throw new AssertionError("No request starting with [" + prefix + "] in " + requests);
+    }
+
+    @Test
+    void testFullCopyWithoutCatchUpField() throws Exception {
+        createIndex("twitter-v1", "twitter");
+        new IndexMigrator.Builder()
+                .blockWritesDuringFullCopy(true)
+                .pollInterval(Duration.ofMillis(10))
+                .build()
+                .migrate(client, "twitter", SETTINGS, true);
+
+        assertThat(stub.aliases("twitter-v2"), contains("twitter"));
+        // Copy, then full copy once the writes are blocked
+        assertThat(stub.requests("POST", "/_reindex"), hasSize(2));
+    }
+
+    @Test
+    void testLegacyIndexIsMigrated() throws Exception {
+        createIndex("twitter", null);
+        String index = migrator().build().migrate(client, "twitter", SETTINGS, true);
+
+        assertThat(index, is("twitter-v1"));
+        assertThat(stub.indices(), containsInAnyOrder("twitter-v0", "twitter-v1"));
+        assertThat(stub.aliases("twitter-v1"), contains("twitter"));
+        assertThat(stub.documents("twitter-v1"), is(10));
+        // The old index is kept under a versioned name
+        assertThat(stub.documents("twitter-v0"), is(10));
+    }
+
+    @Test
+    void testLegacyIndexIsDeleted() throws Exception {
+        createIndex("twitter", null);
+        migrator().oldIndexPolicy(IndexMigrator.OldIndexPolicy.DELETE).build()
+                .migrate(client, "twitter", SETTINGS, true);
+
+        assertThat(stub.indices(), contains("twitter-v1"));
+        assertThat(stub.aliases("twitter-v1"), contains("twitter"));
+    }
+
+    @Test
+    void testRejectedDocumentsAbortTheMigration() throws Exception {
+        createIndex("twitter-v1", "twitter");
+        stub.rejectReindexDocuments(2);
+        IndexMigrator migrator = migrator().build();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> migrator.migrate(client, "twitter", SETTINGS, true));
+        assertThat(e.getMessage().contains("could not copy 2 documents"), is(true));
+
+        // Nothing changed
+        assertThat(stub.indices(), contains("twitter-v1"));
+        assertThat(stub.aliases("twitter-v1"), contains("twitter"));
+        assertThat(writeBlocked("twitter-v1"), is(false));
+    }
+
+    @Test
+    void testFailedAliasUpdateRevertsTheLegacyMigration() throws Exception {
+        createIndex("twitter", null);
+        stub.failPath("/_aliases", 500);
+        IndexMigrator migrator = migrator().build();
+
+        assertThrows(Exception.class, () -> migrator.migrate(client, "twitter", SETTINGS, true));
+
+        // The new index and the copy of the old one are removed, and the writes are allowed again
+        assertThat(stub.indices(), contains("twitter"));
+        assertThat(stub.documents("twitter"), is(10));
+        assertThat(writeBlocked("twitter"), is(false));
+    }
+}
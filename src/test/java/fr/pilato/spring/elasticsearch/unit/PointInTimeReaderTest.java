@@ -0,0 +1,101 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import fr.pilato.spring.elasticsearch.search.PointInTimeReader;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class PointInTimeReaderTest extends AbstractStubTest {
+
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        client = startClient();
+        client.bulk(br -> {
+            for (int i = 0; i < 95; i++) {
+                String id = Integer.toString(i);
+                br.operations(o -> o.index(io -> io.index("twitter").id(id).document(Map.of("number", id))));
+            }
+            return br;
+        });
+    }
+
+    @Test
+    void testReadAllPagesWithDefaultPrefetch() throws Exception {
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(10)
+                .build()) {
+            Set<String> ids = reader.stream().map(Hit::id).collect(Collectors.toSet());
+            assertThat(ids, hasSize(95));
+        }
+        // 10 pages: the first one is not chained to any other
+        assertThat(stub.requests("POST", "/_search"), hasSize(10));
+        assertThat(stub.pointsInTime(), empty());
+    }
+
+    @Test
+    void testReadAllPagesWithPrefetch() throws Exception {
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(10)
+                .prefetchPages(3)
+                .build()) {
+            assertThat(reader.stream().map(Hit::id).distinct().count(), is(95L));
+        }
+        assertThat(stub.pointsInTime(), empty());
+    }
+
+    @Test
+    void testExactNumberOfPages() throws Exception {
+        // The last page is full, so an empty page ends the reading
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(19)
+                .build()) {
+            assertThat(reader.stream().map(Hit::id).distinct().count(), is(95L));
+        }
+    }
+
+    @Test
+    void testStopBeforeTheEnd() throws Exception {
+        try (PointInTimeReader<Map> reader = new PointInTimeReader.Builder<>(client, Map.class)
+                .index("twitter")
+                .pageSize(10)
+                .build()) {
+            assertThat(reader.documents().limit(15).count(), is(15L));
+        }
+        assertThat(stub.pointsInTime(), empty());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.CountRequest;
+import fr.pilato.spring.elasticsearch.cache.QueryCache;
+import fr.pilato.spring.elasticsearch.request.RequestTemplate;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import fr.pilato.spring.elasticsearch.transport.WriteListener;
+import fr.pilato.spring.elasticsearch.transport.WriteNotifyingTransport;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+class QueryCacheTest extends AbstractStubTest {
+
+    private QueryCache cache;
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        cache = new QueryCache.Builder()
+                .defaultTtl(Duration.ofMillis(50))
+                .ttl("dashboards", Duration.ofMinutes(5))
+                .ttl("logs", Duration.ofMillis(10))
+                .refreshInterval(Duration.ZERO)
+                .build();
+        client = startFactory(factory -> factory.setQueryCache(cache)).getObject();
+        for (String index : List.of("dashboards", "twitter", "logs")) {
+            client.index(ir -> ir.index(index).id("1").document(Map.of("foo", "bar")));
+        }
+        // Let the writes be older than the refresh interval
+        Thread.sleep(10);
+    }
+
+    private long countTwice(String... indices) throws Exception {
+        CountRequest request = CountRequest.of(cr -> cr.index(List.of(indices)));
+        cache.count(request);
+        Thread.sleep(100);
+        cache.count(request);
+        return cache.stats().hits();
+    }
+
+    @Test
+    void testIndexTtlLongerThanTheDefault() throws Exception {
+        assertThat(countTwice("dashboards"), is(1L));
+    }
+
+    @Test
+    void testEntrySizeIsTheContentLength() throws Exception {
+        cache.count(CountRequest.of(cr -> cr.index("twitter")));
+        try (RestClient restClient = RestClient.builder(stub.host()).build()) {
+            long length = restClient.performRequest(new Request("POST", "/twitter/_count")).getEntity().getContentLength();
+            assertThat(cache.stats().bytes(), is(length));
+        }
+        // The header is never sent to Elasticsearch
+        assertThat(stub.requests().stream().anyMatch(r -> r.headers().contains("x-spring-elasticsearch-cache")), is(false));
+    }
+
+    @Test
+    void testRequestTemplateWritesEvictEntries() throws Exception {
+        CountRequest request = CountRequest.of(cr -> cr.index("dashboards"));
+        cache.count(request);
+        RequestTemplate.of("GET", "/dashboards/_doc/1", null).perform(client, Map.of());
+        assertThat(cache.stats().evictions(), is(0L));
+
+        RequestTemplate.of("PUT", "/dashboards/_doc/2", "{\"foo\":\"{{foo}}\"}")
+                .perform(client, Map.of("foo", "baz"));
+        assertThat(cache.stats().evictions(), is(1L));
+        assertThat(cache.count(request).count(), is(2L));
+    }
+
+    @Test
+    void testDefaultTtl() throws Exception {
+        assertThat(countTwice("twitter"), is(0L));
+    }
+
+    @Test
+    void testShortestTtlOfTheTargets() throws Exception {
+        // twitter has no ttl so it uses the default one, shorter than the dashboards one
+        assertThat(countTwice("dashboards", "twitter"), is(0L));
+        assertThat(countTwice("dashboards", "logs"), is(0L));
+    }
+
+    @Test
+    void testBulkEvictsOncePerIndex() throws Exception {
+        List<String> writes = Collections.synchronizedList(new ArrayList<>());
+        WriteListener indexListener = new WriteListener() {
+            @Override
+            public void onWrite(String index, String id) {
+                writes.add(index);
+            }
+
+            @Override
+            public boolean documentWrites() {
+                return false;
+            }
+        };
+        WriteNotifyingTransport.find(client._transport()).addListener(indexListener);
+        CountRequest request = CountRequest.of(cr -> cr.index("dashboards"));
+        cache.count(request);
+
+        client.bulk(br -> {
+            for (int i = 0; i < 100; i++) {
+                String id = Integer.toString(i);
+                String index = i % 2 == 0 ? "dashboards" : "logs";
+                br.operations(o -> o.index(io -> io.index(index).id(id).document(Map.of("foo", "bar"))));
+            }
+            return br;
+        });
+
+        assertThat(writes, containsInAnyOrder("dashboards", "logs"));
+        assertThat(cache.stats().evictions(), is(1L));
+        assertThat(cache.stats().entries(), is(0));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import fr.pilato.spring.elasticsearch.batch.RequestBatcher;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestBatcherTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    private void echo(String key, List<RequestBatcher.Pending<String, String>> batch) {
+        batches.add(batch.stream().map(RequestBatcher.Pending::request).toList());
+        batch.forEach(pending -> pending.future().complete(key + ":" + pending.request()));
+    }
+
+    @Test
+    void testBatchIsSentWhenFull() {
+        try (RequestBatcher<String, String, String> batcher = new RequestBatcher<>("test", Duration.ofHours(1), 3, this::echo)) {
+            CompletableFuture<String> r1 = batcher.submit("a", "1");
+            CompletableFuture<String> r2 = batcher.submit("a", "2");
+            assertThat(r1.isDone(), is(false));
+            CompletableFuture<String> r3 = batcher.submit("a", "3");
+            assertThat(r1.join(), is("a:1"));
+            assertThat(r2.join(), is("a:2"));
+            assertThat(r3.join(), is("a:3"));
+            assertThat(batches, contains(List.of("1", "2", "3")));
+        }
+    }
+
+    @Test
+    void testBatchIsSentAfterWindow() {
+        try (RequestBatcher<String, String, String> batcher = new RequestBatcher<>("test", Duration.ofMillis(10), 100, this::echo)) {
+            CompletableFuture<String> r1 = batcher.submit("a", "1");
+            CompletableFuture<String> r2 = batcher.submit("b", "2");
+            assertThat(r1.join(), is("a:1"));
+            assertThat(r2.join(), is("b:2"));
+            // One batch per key
+            assertThat(batches, containsInAnyOrder(List.of("1"), List.of("2")));
+        }
+    }
+
+    @Test
+    void testPendingRequestsAreSentOnClose() {
+        RequestBatcher<String, String, String> batcher = new RequestBatcher<>("test", Duration.ofHours(1), 100, this::echo);
+        CompletableFuture<String> r1 = batcher.submit("a", "1");
+        batcher.close();
+        assertThat(r1.join(), is("a:1"));
+        CompletableFuture<String> r2 = batcher.submit("a", "2");
+        CompletionException e = assertThrows(CompletionException.class, r2::join);
+        assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    void testDispatcherFailureCompletesTheBatch() {
+        try (RequestBatcher<String, String, String> batcher = new RequestBatcher<>("test", Duration.ofHours(1), 2,
+                (key, batch) -> { throw new IllegalArgumentException("boom"); })) {
+            CompletableFuture<String> r1 = batcher.submit("a", "1");
+            CompletableFuture<String> r2 = batcher.submit("a", "2");
+            assertThat(assertThrows(CompletionException.class, r1::join).getCause(), instanceOf(IllegalArgumentException.class));
+            assertThat(assertThrows(CompletionException.class, r2::join).getCause(), instanceOf(IllegalArgumentException.class));
+        }
+        assertThat(batches, hasSize(0));
+    }
+}
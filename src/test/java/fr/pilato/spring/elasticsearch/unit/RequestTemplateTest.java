@@ -0,0 +1,118 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import fr.pilato.spring.elasticsearch.request.RequestTemplate;
+import fr.pilato.spring.elasticsearch.vector.VectorModule;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestTemplateTest {
+
+    private final JsonpMapper mapper = new JacksonJsonpMapper();
+
+    private String render(RequestTemplate template, Map<String, ?> params) {
+        return new String(template.render(params, mapper), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPlaceholders() {
+        RequestTemplate template = RequestTemplate.of("POST", "/products/_search",
+                "{\"query\":{\"term\":{\"category\":\"{{category}}\"}},\"size\":{{size}},\"track\":\"{{track}}\"}");
+        assertThat(template.parameters(), is(Set.of("category", "size", "track")));
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("category", "bo\"oks\n");
+        params.put("size", 10);
+        params.put("track", null);
+        assertThat(render(template, params),
+                is("{\"query\":{\"term\":{\"category\":\"bo\\\"oks\\n\"}},\"size\":10,\"track\":null}"));
+    }
+
+    @Test
+    void testObjectParameter() {
+        RequestTemplate template = RequestTemplate.of("POST", "/products/_search", "{\"query\":{{query}}}");
+        Query query = Query.of(q -> q.matchAll(m -> m));
+        assertThat(render(template, Map.of("query", query)), is("{\"query\":{\"match_all\":{}}}"));
+    }
+
+    @Test
+    void testStringsAreKept() {
+        RequestTemplate template = RequestTemplate.of("POST", "/products/_search",
+                "{\"query\":{\"term\":{\"category\":\"\\\"{{not a placeholder\"}}}");
+        assertThat(template.parameters().isEmpty(), is(true));
+        assertThat(render(template, Collections.emptyMap()),
+                is("{\"query\":{\"term\":{\"category\":\"\\\"{{not a placeholder\"}}}"));
+    }
+
+    @Test
+    void testInvalidTemplates() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RequestTemplate.of("POST", "/_search", "{\"query\":\"hello {{name}}\"}"));
+        RequestTemplate template = RequestTemplate.of("POST", "/_search", "{\"size\":{{size}}}");
+        assertThrows(IllegalArgumentException.class, () -> render(template, Collections.emptyMap()));
+    }
+
+    @Test
+    void testFromRequest() {
+        RequestTemplate template = RequestTemplate.of(SearchRequest._ENDPOINT, SearchRequest.of(s -> s
+                .index("products")
+                .query(q -> q.term(t -> t.field("category").value("{{category}}")))), mapper);
+        assertThat(template.parameters(), is(Set.of("category")));
+        assertThat(render(template, Map.of("category", "books")), containsString("\"books\""));
+    }
+
+    @Test
+    void testVectors() {
+        RequestTemplate template = RequestTemplate.of("POST", "/products/_search",
+                "{\"knn\":{\"field\":\"embedding\",\"query_vector\":{{vector}},\"k\":10}}");
+        assertThat(render(template, Map.of("vector", new float[]{0.1f, -2.5f, 1e-5f})),
+                is("{\"knn\":{\"field\":\"embedding\",\"query_vector\":[0.1,-2.5,1.0E-5],\"k\":10}}"));
+        assertThat(render(template, Map.of("vector", new byte[]{0, 7, -128, 127, 42})),
+                is("{\"knn\":{\"field\":\"embedding\",\"query_vector\":[0,7,-128,127,42],\"k\":10}}"));
+        assertThrows(IllegalArgumentException.class, () -> render(template, Map.of("vector", new float[]{Float.NaN})));
+    }
+
+    @Test
+    void testByteVectorDocuments() {
+        JacksonJsonpMapper vectors = new JacksonJsonpMapper();
+        vectors.objectMapper().registerModule(new VectorModule());
+        RequestTemplate template = RequestTemplate.of("PUT", "/products/_doc/1", "{{document}}");
+        Map<String, Object> document = Map.of("embedding", new byte[]{1, -2, 3});
+        assertThat(new String(template.render(Map.of("document", document), vectors), StandardCharsets.UTF_8),
+                is("{\"embedding\":[1,-2,3]}"));
+        // Without the module, Jackson writes base64
+        assertThat(render(template, Map.of("document", document)), is("{\"embedding\":\"Af4D\"}"));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.metrics.TransportMetrics;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import fr.pilato.spring.elasticsearch.transport.DelegatingTransport;
+import fr.pilato.spring.elasticsearch.transport.SharedRestClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class SharedRestClientTest {
+
+    private ElasticsearchStub stub;
+    private SharedRestClient shared;
+
+    @BeforeEach
+    void start() throws Exception {
+        stub = new ElasticsearchStub();
+        shared = new SharedRestClient.Builder()
+                .nodes(stub.url())
+                .username("elastic")
+                .password("changeme")
+                .build();
+    }
+
+    @AfterEach
+    void stop() {
+        shared.close();
+        stub.close();
+    }
+
+    @Test
+    void testFactoriesShareTheClient() throws Exception {
+        ElasticsearchClientFactoryBean factory1 = factory("/models/root/multiple-clients/client1");
+        ElasticsearchClientFactoryBean factory2 = factory("/models/root/multiple-clients/client2");
+        RestClient restClient = restClient(factory1.getObject());
+        assertThat(restClient(factory2.getObject()), sameInstance(restClient));
+        assertThat(shared.references(), is(2));
+        // Each factory ran its own bootstrap
+        assertThat(stub.indices(), hasItem("twitter"));
+
+        factory1.destroy();
+        assertThat(shared.references(), is(1));
+        assertThat(restClient.isRunning(), is(true));
+        assertThat(factory2.getObject().info().clusterName(), notNullValue());
+
+        factory2.destroy();
+        assertThat(shared.references(), is(0));
+        assertThat(restClient.isRunning(), is(false));
+    }
+
+    @Test
+    void testClientIsStartedAgain() throws Exception {
+        ElasticsearchClientFactoryBean factory = factory("/models/root/multiple-clients/client1");
+        RestClient first = restClient(factory.getObject());
+        factory.destroy();
+
+        factory = factory("/models/root/multiple-clients/client1");
+        RestClient second = restClient(factory.getObject());
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.isRunning(), is(true));
+        factory.destroy();
+        // Releasing twice does nothing
+        factory.destroy();
+        assertThat(shared.references(), is(0));
+    }
+
+    @Test
+    void testSharedClientIsInstrumented() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        SharedRestClient instrumented = new SharedRestClient.Builder()
+                .nodes(stub.url())
+                .username("elastic")
+                .password("changeme")
+                .transportMetrics(new TransportMetrics.Builder(registry).build())
+                .build();
+        ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+        factory.setSharedRestClient(instrumented);
+        factory.setAutoscan(false);
+        factory.afterPropertiesSet();
+        factory.getObject().info();
+        factory.destroy();
+
+        assertThat(registry.find("elasticsearch.client.requests").tags("endpoint", "info").timer().count(), is(1L));
+        // The HTTP interceptor found the call, so the header was removed before the request was sent
+        assertThat(registry.find("elasticsearch.http.requests").tags("endpoint", "info").timer().count(), is(1L));
+    }
+
+    @Test
+    void testFactoryInstrumentationIsRejected() {
+        ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+        factory.setSharedRestClient(shared);
+        factory.setAutoscan(false);
+        factory.setTransportMetrics(new TransportMetrics.Builder(new SimpleMeterRegistry()).build());
+        assertThrows(IllegalStateException.class, factory::afterPropertiesSet);
+        assertThat(shared.references(), is(0));
+    }
+
+    private ElasticsearchClientFactoryBean factory(String classpathRoot) throws Exception {
+        ElasticsearchClientFactoryBean factory = new ElasticsearchClientFactoryBean();
+        factory.setSharedRestClient(shared);
+        factory.setClasspathRoot(classpathRoot);
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    private static RestClient restClient(ElasticsearchClient client) {
+        return DelegatingTransport.unwrap(client._transport(), RestClientTransport.class).restClient();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import fr.pilato.spring.elasticsearch.cache.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsAreExecutedOnce() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                results.add(executor.submit(() -> flights.execute("key", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "value";
+                })));
+            }
+            // Wait for the leader to be running
+            while (calls.get() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get(), is("value"));
+            }
+            assertThat(calls.get(), is(1));
+            assertThat(flights.inFlight(), is(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testNextCallIsExecutedAgain() throws IOException {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        assertThat(flights.execute("key", calls::incrementAndGet), is(1));
+        assertThat(flights.execute("key", calls::incrementAndGet), is(2));
+    }
+
+    @Test
+    void testFailureIsPropagated() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        assertThrows(IOException.class, () -> flights.execute("key", () -> {
+            throw new IOException("boom");
+        }));
+        assertThat(flights.inFlight(), is(0));
+    }
+
+    @Test
+    void testAsyncCallsAreExecutedOnce() {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> r1 = flights.executeAsync("key", () -> {
+            calls.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<String> r2 = flights.executeAsync("key", () -> {
+            calls.incrementAndGet();
+            return response;
+        });
+        assertThat(flights.inFlight(), is(1));
+        response.complete("value");
+        assertThat(r1.join(), is("value"));
+        assertThat(r2.join(), is("value"));
+        assertThat(calls.get(), is(1));
+        assertThat(flights.inFlight(), is(0));
+    }
+}
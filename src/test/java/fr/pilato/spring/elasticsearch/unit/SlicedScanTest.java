@@ -0,0 +1,140 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import fr.pilato.spring.elasticsearch.search.SlicedScan;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SlicedScanTest extends AbstractStubTest {
+
+    private ElasticsearchClient client;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void start() throws Exception {
+        client = startClient();
+        client.bulk(br -> {
+            for (int i = 0; i < 250; i++) {
+                String id = Integer.toString(i);
+                br.operations(o -> o.index(io -> io.index("twitter").id(id).document(Map.of("number", id))));
+            }
+            return br;
+        });
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testEachSliceReadsAllItsPages() throws Exception {
+        // Each slice has more than one page, read with the default prefetch
+        SlicedScan<Map> scan = new SlicedScan.Builder<>(client, Map.class)
+                .index("twitter")
+                .slices(4)
+                .pageSize(20)
+                .executor(executor)
+                .build();
+
+        Map<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        long total = scan.forEach((slice, hit) -> {
+            counts.computeIfAbsent(slice, s -> new LongAdder()).increment();
+            ids.add(hit.id());
+        }).get(10, TimeUnit.SECONDS);
+
+        assertThat(total, is(250L));
+        assertThat(ids, hasSize(250));
+        // The stub puts the document n in the slice n % 4
+        assertThat(counts.get(0).sum(), is(63L));
+        assertThat(counts.get(1).sum(), is(63L));
+        assertThat(counts.get(2).sum(), is(62L));
+        assertThat(counts.get(3).sum(), is(62L));
+        assertThat(stub.pointsInTime(), empty());
+    }
+
+    @Test
+    void testFailedSliceCancelsTheQueuedSlices() throws Exception {
+        // More slices than threads: the slices 1 to 3 wait for the slice 0
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            SlicedScan<Map> scan = new SlicedScan.Builder<>(client, Map.class)
+                    .index("twitter")
+                    .slices(4)
+                    .pageSize(20)
+                    .executor(single)
+                    .build();
+
+            Set<Integer> slices = ConcurrentHashMap.newKeySet();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> scan.forEach((slice, hit) -> {
+                slices.add(slice);
+                if (slice == 0) {
+                    throw new IllegalStateException("failed on purpose");
+                }
+            }).get(10, TimeUnit.SECONDS));
+
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            assertThat(slices, contains(0));
+            assertThat(stub.pointsInTime(), empty());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void testStream() throws Exception {
+        SlicedScan<Map> scan = new SlicedScan.Builder<>(client, Map.class)
+                .index("twitter")
+                .slices(4)
+                .pageSize(20)
+                .build();
+
+        try (Stream<Hit<Map>> hits = scan.stream()) {
+            assertThat(hits.map(Hit::id).collect(Collectors.toSet()), hasSize(250));
+        }
+        assertThat(stub.pointsInTime(), empty());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import fr.pilato.spring.elasticsearch.slowlog.SlowRequestLog;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class SlowRequestLogTest {
+
+    private ElasticsearchStub stub;
+    private RestClient restClient;
+    private final List<SlowRequestLog.SlowRequest> slowRequests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        stub = new ElasticsearchStub();
+        SlowRequestLog slowLog = new SlowRequestLog.Builder()
+                .threshold(Duration.ofMillis(100))
+                .bodySampleRate(1)
+                .maxBodyLength(10)
+                .handler(slowRequests::add)
+                .build();
+        restClient = RestClient.builder(stub.host())
+                .setHttpClientConfigCallback(hcb -> {
+                    slowLog.instrument(hcb);
+                    return hcb;
+                })
+                .build();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        restClient.close();
+        stub.close();
+    }
+
+    @Test
+    void testLowLevelRequest() throws IOException {
+        // Not slow enough
+        restClient.performRequest(new Request("PUT", "/twitter"));
+        assertThat(slowRequests, hasSize(0));
+
+        stub.latency(Duration.ofMillis(200));
+        Request request = new Request("POST", "/twitter/_search");
+        request.setEntity(new NStringEntity("{\"query\":{\"match_all\":{}}}", ContentType.APPLICATION_JSON));
+        restClient.performRequest(request);
+        assertThat(slowRequests, hasSize(1));
+        SlowRequestLog.SlowRequest slow = slowRequests.get(0);
+        assertThat(slow.endpoint(), is("search"));
+        assertThat(slow.index(), is("twitter"));
+        assertThat(slow.node(), is(stub.host().toHostString()));
+        assertThat(slow.status(), is(200));
+        assertThat(slow.took(), nullValue());
+        assertThat(slow.duration(), greaterThanOrEqualTo(200L));
+        assertThat(slow.body(), is("{\"query\":{... [16 more bytes]"));
+    }
+}
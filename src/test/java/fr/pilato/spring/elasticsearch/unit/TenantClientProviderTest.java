@@ -0,0 +1,107 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import fr.pilato.spring.elasticsearch.tenant.TenantClientProvider;
+import fr.pilato.spring.elasticsearch.tenant.TenantClientProvider.Credentials;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TenantClientProviderTest extends AbstractStubTest {
+
+    private static final Map<String, Credentials> CREDENTIALS = Map.of(
+            "acme", Credentials.basic("acme", "secret"),
+            "globex", Credentials.apiKey("id", "key"));
+
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        client = startClient();
+    }
+
+    private TenantClientProvider.Builder provider() {
+        return new TenantClientProvider.Builder(client).credentials(CREDENTIALS::get);
+    }
+
+    @Test
+    void testCredentialsAreSent() throws Exception {
+        TenantClientProvider tenants = provider().build();
+        tenants.client("acme").info();
+        tenants.client("globex").info();
+
+        assertThat(stub.requests("GET", "/").stream().map(ElasticsearchStub.RecordedRequest::authorization).toList(),
+                contains("Basic YWNtZTpzZWNyZXQ=", "ApiKey aWQ6a2V5"));
+    }
+
+    @Test
+    void testClientsAreCached() {
+        TenantClientProvider tenants = provider().build();
+        ElasticsearchClient acme = tenants.client("acme");
+        assertThat(tenants.client("acme"), sameInstance(acme));
+        assertThat(tenants.client("globex"), not(sameInstance(acme)));
+        assertThat(tenants.stats(), is(new TenantClientProvider.Stats(1, 2, 0, 2)));
+
+        tenants.evict("acme");
+        assertThat(tenants.client("acme"), not(sameInstance(acme)));
+        assertThat(tenants.stats(), is(new TenantClientProvider.Stats(1, 3, 1, 2)));
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        TenantClientProvider tenants = provider().maxTenants(1).build();
+        ElasticsearchClient acme = tenants.client("acme");
+        tenants.client("globex");
+        assertThat(tenants.stats().tenants(), is(1));
+        assertThat(tenants.stats().evictions(), is(1L));
+        assertThat(tenants.client("acme"), not(sameInstance(acme)));
+    }
+
+    @Test
+    void testIdleTenantsAreEvicted() throws Exception {
+        TenantClientProvider tenants = provider().idleTimeout(Duration.ofMillis(50)).build();
+        tenants.client("acme");
+        tenants.client("globex");
+        Thread.sleep(100);
+        tenants.evictIdle();
+        assertThat(tenants.stats().tenants(), is(0));
+        assertThat(tenants.stats().evictions(), is(2L));
+    }
+
+    @Test
+    void testUnknownTenant() {
+        TenantClientProvider tenants = provider().build();
+        assertThrows(IllegalArgumentException.class, () -> tenants.client("initech"));
+        assertThat(tenants.stats().tenants(), is(0));
+    }
+}
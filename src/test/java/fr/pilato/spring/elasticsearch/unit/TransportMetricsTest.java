@@ -0,0 +1,125 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import fr.pilato.spring.elasticsearch.ElasticsearchClientFactoryBean;
+import fr.pilato.spring.elasticsearch.metrics.TransportMetrics;
+import fr.pilato.spring.elasticsearch.stub.AbstractStubTest;
+import fr.pilato.spring.elasticsearch.transport.SharedRestClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.elasticsearch.client.RestClientBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class TransportMetricsTest extends AbstractStubTest {
+
+    private static final String THREAD_PREFIX = "elasticsearch-rest-client-";
+
+    private MeterRegistry registry;
+    private ElasticsearchClientFactoryBean first;
+    private ElasticsearchClientFactoryBean second;
+    private SharedRestClient shared;
+
+    @BeforeEach
+    void start() throws Exception {
+        registry = new SimpleMeterRegistry();
+        first = startFactory(factory -> factory.setTransportMetrics(
+                new TransportMetrics.Builder(registry).clientName("first").build()));
+        // A pool given to the metrics
+        PoolingNHttpClientConnectionManager connectionManager =
+                new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+        connectionManager.setMaxTotal(5);
+        connectionManager.setDefaultMaxPerRoute(5);
+        shared = new SharedRestClient.Builder()
+                .nodes(stub.url())
+                .username("elastic")
+                .password("changeme")
+                .transportMetrics(new TransportMetrics.Builder(registry).clientName("second")
+                        .connectionManager(connectionManager).build())
+                .build();
+        second = startFactory(factory -> factory.setSharedRestClient(shared));
+    }
+
+    @AfterEach
+    void stop() {
+        shared.close();
+    }
+
+    @Test
+    void testPoolGauges() throws Exception {
+        // The pool created with the defaults of the low level client
+        first.getObject().info();
+        assertThat(registry.find("elasticsearch.client.pool.max").tags("client", "first").gauge().value(),
+                is((double) RestClientBuilder.DEFAULT_MAX_CONN_TOTAL));
+        assertThat(registry.find("elasticsearch.client.pool.pending").tags("client", "first").gauge().value(), is(0.0));
+        // The pool given to the metrics
+        assertThat(registry.find("elasticsearch.client.pool.max").tags("client", "second").gauge().value(), is(5.0));
+    }
+
+    @Test
+    void testHttpClientSettingsAreKept() throws Exception {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        try (SharedRestClient configured = new SharedRestClient.Builder()
+                .nodes(stub.url())
+                .username("elastic")
+                .password("changeme")
+                .httpClientConfigCallback(hcb -> hcb.setDefaultIOReactorConfig(
+                        IOReactorConfig.custom().setIoThreadCount(3).build()))
+                .transportMetrics(new TransportMetrics.Builder(registry).clientName("third").build())
+                .build()) {
+            startFactory(factory -> factory.setSharedRestClient(configured)).getObject().info();
+
+            // The I/O reactor thread and the 3 dispatchers of the last client, named
+            // elasticsearch-rest-client-<client>-thread-<n> by the thread factory of the RestClient
+            TreeMap<Integer, Long> threadsPerClient = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> !before.contains(thread))
+                    .map(Thread::getName)
+                    .filter(name -> name.startsWith(THREAD_PREFIX) && name.contains("-thread-"))
+                    .collect(Collectors.groupingBy(
+                            name -> Integer.valueOf(name.substring(THREAD_PREFIX.length(), name.indexOf("-thread-"))),
+                            TreeMap::new, Collectors.counting()));
+            assertThat(threadsPerClient.lastEntry().getValue(), is(4L));
+        }
+    }
+
+    @Test
+    void testEachClientHasItsOwnMetrics() throws Exception {
+        first.getObject().info();
+        second.getObject().info();
+        second.getObject().info();
+
+        assertThat(registry.find("elasticsearch.client.requests").tags("client", "first", "endpoint", "info")
+                .timer().count(), is(1L));
+        assertThat(registry.find("elasticsearch.http.requests").tags("client", "second", "endpoint", "info")
+                .timer().count(), is(2L));
+    }
+}
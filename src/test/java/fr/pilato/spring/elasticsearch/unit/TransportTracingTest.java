@@ -0,0 +1,118 @@
+/*
+ * Licensed to David Pilato (the "Author") under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Author licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package fr.pilato.spring.elasticsearch.unit;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import fr.pilato.spring.elasticsearch.stub.ElasticsearchStub;
+import fr.pilato.spring.elasticsearch.tracing.TransportTracing;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+class TransportTracingTest {
+
+    private ElasticsearchStub first;
+    private ElasticsearchStub second;
+    private InMemorySpanExporter exporter;
+    private RestClient restClient;
+    private ElasticsearchClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        first = new ElasticsearchStub();
+        second = new ElasticsearchStub();
+        exporter = InMemorySpanExporter.create();
+        TransportTracing tracing = new TransportTracing.Builder(OpenTelemetrySdk.builder()
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                        .build())
+                .build()).build();
+        // A new low level client calls the nodes in order
+        restClient = RestClient.builder(first.host(), second.host())
+                .setHttpClientConfigCallback(hcb -> {
+                    tracing.instrument(hcb);
+                    return hcb;
+                })
+                .build();
+        client = new ElasticsearchClient(tracing.instrument(new RestClientTransport(restClient, new JacksonJsonpMapper())));
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        restClient.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void testRetryOnAnotherNode() throws IOException {
+        first.failNext(503, 1);
+        client.info();
+
+        assertThat(first.requests(), hasSize(1));
+        assertThat(second.requests(), hasSize(1));
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertThat(spans, hasSize(1));
+        SpanData info = spans.get(0);
+        assertThat(info.getAttributes().get(AttributeKey.longKey("elasticsearch.attempts")), is(2L));
+        // The attempt which answered
+        assertThat(info.getAttributes().get(AttributeKey.longKey("server.port")), is((long) second.host().getPort()));
+        assertThat(info.getAttributes().get(AttributeKey.longKey("http.response.status_code")), is(200L));
+        // The call id header is never sent
+        assertThat(first.requests().get(0).headers(), not(hasItem("x-spring-elasticsearch-call")));
+        assertThat(second.requests().get(0).headers(), not(hasItem("x-spring-elasticsearch-call")));
+    }
+
+    @Test
+    void testLowLevelRequest() throws IOException {
+        restClient.performRequest(new Request("POST", "/_search"));
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertThat(spans, hasSize(1));
+        SpanData search = spans.get(0);
+        assertThat(search.getName(), is("search"));
+        assertThat(search.getKind(), is(SpanKind.CLIENT));
+        assertThat(search.getAttributes().get(AttributeKey.longKey("http.response.status_code")), is(200L));
+        assertThat(first.requests().get(0).headers(), hasItem("traceparent"));
+    }
+}